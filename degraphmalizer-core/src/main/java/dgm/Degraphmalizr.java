@@ -11,4 +11,9 @@ import java.util.concurrent.Future;
 public interface Degraphmalizr
 {
     Future<DegraphmalizeResult> degraphmalize(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, DegraphmalizeCallback callback) throws DegraphmalizerException;
+
+    /**
+     * Number of requests that are queued or running
+     */
+    int pending();
 }
\ No newline at end of file
@@ -2,8 +2,7 @@ package dgm;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.*;
 import com.tinkerpop.blueprints.*;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jVertexIterable;
@@ -36,6 +35,14 @@ public final class GraphUtilities
 
     public static final int RESERVED_COUNT = 8;
 
+    /**
+     * Marks a string property that holds an encoded value instead of plain text. The character after the tag
+     * gives the type of the value, see {@link #toPropertyValue(JsonNode)}.
+     */
+    public static final char TYPE_TAG  = '\u0000';
+    public static final char TYPE_TEXT = 's';
+    public static final char TYPE_JSON = 'j';
+
     private GraphUtilities() {}
 
 	/**
@@ -103,80 +110,150 @@ public final class GraphUtilities
     /**
      * Set the property of an element to a json value.
      *
-     * If the value is an object the property is set to the JSON string, otherwise the property is set to the native
-     * value represented by the JsonNode.
-     *
-     * <ul>
-     * <li>So "'foo'" is stored as a String "foo"
-     * <li>A boolean "true" is stored as Boolean.TRUE, etc.
-     * <li>But "{'foo':123}" is stored as a String "{'foo':123}"
-     * </ul>
-     *
-     * Normally you would just store (JSON) values, not objects or arrays.
-     *
      * @param elt The node or edge of which to set the property
      * @param property Property name
      * @param value Property value
+     * @see #toPropertyValue(JsonNode)
      */
     public static void setProperty(Element elt, String property, JsonNode value)
     {
-        // TODO use com.tinkerpop.blueprints.Features , supportsBooleanProperty, etc...
         checkPropertyName(property);
 
-        // values are directly inserted as strings
-        if(value.isValueNode())
+        elt.setProperty(property, toPropertyValue(value));
+    }
+
+    /**
+     * The representation of a json value as it is stored in a property.
+     *
+     * <ul>
+     * <li>Booleans and numbers are stored as native Boolean, Integer, Long and Double values
+     * <li>Text is stored as a String "foo"
+     * <li>Everything else (objects, arrays, null, big numbers) is stored as the JSON string, prefixed by
+     * {@link #TYPE_TAG} and {@link #TYPE_JSON}
+     * <li>Text that happens to start with {@link #TYPE_TAG} is prefixed by {@link #TYPE_TAG} and {@link #TYPE_TEXT}
+     * </ul>
+     *
+     * So the type of a property can always be determined without parsing it.
+     */
+    public static Object toPropertyValue(JsonNode value)
+    {
+        if(value.isTextual())
         {
-            elt.setProperty(property, value.asText());
-            return;
+            final String text = value.textValue();
+            if(isTagged(text))
+                return new StringBuilder(text.length() + 2).append(TYPE_TAG).append(TYPE_TEXT).append(text).toString();
+
+            return text;
         }
 
-        // objects are inserted as json strings
-        elt.setProperty(property, value.toString());
-    }
+        if(value.isBoolean())
+            return value.booleanValue();
 
-    public static JsonNode getProperty(ObjectMapper om, Element elt, String property)
-    {
-        checkPropertyName(property);
+        if(value.isInt())
+            return value.intValue();
 
-        final Object obj = elt.getProperty(property);
+        if(value.isLong())
+            return value.longValue();
 
-        if(! (obj instanceof String))
-            throw new RuntimeException("Property " + property + " is not in the expected format (String), it's a "
-                    + obj.getClass().getSimpleName());
+        if(value.isDouble())
+            return value.doubleValue();
 
-        final String s = String.valueOf(obj);
+        return new StringBuilder().append(TYPE_TAG).append(TYPE_JSON).append(value.toString()).toString();
+    }
 
-        try
-        {
-            return om.readTree(s);
-        }
-        catch (IOException z)
+    /**
+     * Convert a property value written by {@link #toPropertyValue(JsonNode)} back to json.
+     */
+    public static JsonNode fromPropertyValue(ObjectMapper om, String property, Object obj)
+    {
+        if(obj instanceof String)
         {
-            try
-            {
-                // TODO this is very shady.. anything that doesn't parse as JSON is read as string...
-                return om.readTree("\"" + s + "\"");
-            }
-            catch (IOException e)
+            final String s = (String)obj;
+            if(!isTagged(s))
+                return TextNode.valueOf(s);
+
+            switch(s.length() > 1 ? s.charAt(1) : TYPE_TAG)
             {
-                throw new RuntimeException("Failed to parse property " + property + " from '" + s +"'", z);
+                case TYPE_TEXT:
+                    return TextNode.valueOf(s.substring(2));
+
+                case TYPE_JSON:
+                    try
+                    {
+                        return om.readTree(s.substring(2));
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException("Failed to parse property " + property + " from '" + s.substring(2) + "'", e);
+                    }
+
+                default:
+                    throw new RuntimeException("Property " + property + " has an unknown type tag");
             }
         }
+
+        if(obj instanceof Boolean)
+            return BooleanNode.valueOf((Boolean)obj);
+
+        if(obj instanceof Integer)
+            return IntNode.valueOf((Integer)obj);
+
+        if(obj instanceof Long)
+            return LongNode.valueOf((Long)obj);
+
+        if(obj instanceof Double)
+            return DoubleNode.valueOf((Double)obj);
+
+        throw new RuntimeException("Property " + property + " is not in the expected format, it's a "
+                + (obj == null ? "null" : obj.getClass().getSimpleName()));
+    }
+
+    private static boolean isTagged(String s)
+    {
+        return !s.isEmpty() && s.charAt(0) == TYPE_TAG;
+    }
+
+    public static JsonNode getProperty(ObjectMapper om, Element elt, String property)
+    {
+        checkPropertyName(property);
+
+        return fromPropertyValue(om, property, elt.getProperty(property));
     }
 
     /**
-     * This method removes all properties (except the id and owner ones) and sets new properties.
+     * This method makes the properties (except the id and owner ones) of the element equal to the given properties.
+     *
+     * Only properties that are new, have a different value or are no longer present are written, so saving an
+     * unchanged subgraph doesn't touch the graph at all.
+     *
+     * @return The number of properties that were set or removed
      */
-    public static void setProperties(Element element, Map<String, JsonNode> properties)
+    public static int setProperties(Element element, Map<String, JsonNode> properties)
     {
+        int written = 0;
+
         for (String key : element.getPropertyKeys())
         {
-            if (! key.startsWith(GraphUtilities.PREFIX))
+            if (! key.startsWith(GraphUtilities.PREFIX) && ! properties.containsKey(key))
+            {
                 element.removeProperty(key);
+                written++;
+            }
         }
 
         for (Map.Entry<String, JsonNode> e : properties.entrySet())
-            setProperty(element, e.getKey(), e.getValue());
+        {
+            checkPropertyName(e.getKey());
+
+            final Object value = toPropertyValue(e.getValue());
+            if (value.equals(element.getProperty(e.getKey())))
+                continue;
+
+            element.setProperty(e.getKey(), value);
+            written++;
+        }
+
+        return written;
     }
 
     public static void checkPropertyName(String name)
@@ -201,14 +278,18 @@ public final class GraphUtilities
         return e;
     }
 
-    private static String getStringRepresentation(ObjectMapper om, final EdgeID edgeID)
+    /**
+     * The identifier of an edge only uses the symbolic IDs of head and tail, so it doesn't change when either of
+     * them gets a new version. The version of the subgraph that created the edge is kept in the owner.
+     */
+    public static String getStringRepresentation(ObjectMapper om, final EdgeID edgeID)
     {
         final StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(toJSON(om, edgeID.tail()).toString())
+        stringBuilder.append(toJSON(om, getSymbolicID(edgeID.tail())).toString())
                      .append("--")
                      .append(edgeID.label())
                      .append("->")
-                     .append(toJSON(om, edgeID.head()).toString());
+                     .append(toJSON(om, getSymbolicID(edgeID.head())).toString());
         return stringBuilder.toString();
     }
 
@@ -458,17 +539,7 @@ public final class GraphUtilities
         setID(om, vertex, symbolicID);
         setOwner(om, vertex, symbolicID);
 
-        for (Edge edge : vertex.getEdges(Direction.IN)) {
-            EdgeID id = getEdgeID(om, edge);
-            EdgeID idWithSymbolicHead = new EdgeID(id.tail(), id.label(), symbolicID);
-            setEdgeId(om, idWithSymbolicHead, edge);
-        }
-
-        for (Edge edge : vertex.getEdges(Direction.OUT)) {
-            EdgeID id = getEdgeID(om, edge);
-            EdgeID idWithSymbolicHead = new EdgeID(symbolicID, id.label(), id.head());
-            setEdgeId(om, idWithSymbolicHead, edge);
-        }
+        // edge identifiers don't contain versions, so the incident edges stay as they are
     }
 
     public static ArrayNode toJSON(ObjectMapper om, ID id)
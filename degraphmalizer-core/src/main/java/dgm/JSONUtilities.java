@@ -3,13 +3,12 @@ package dgm;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import dgm.configuration.javascript.JsonBridge;
 import org.apache.commons.lang3.StringUtils;
-import org.mozilla.javascript.Callable;
 import org.mozilla.javascript.Context;
-import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
-
-import java.io.IOException;
+import org.mozilla.javascript.json.JsonParser;
 
 /**
  * Some helper functions to convert between Object (coming from Rhino) and {@link JsonNode}
@@ -21,29 +20,26 @@ public final class JSONUtilities
     }
 
     /**
-     * Transform a JSON string into a JS Object
+     * Transform a JSON string into a JS Object, use {@link JsonBridge#toScript} if the JSON is already parsed.
      */
     public static Object toJSONObject(Context cx, Scriptable scope, String json)
     {
-        // TODO compile and cache the reviver function once
-
-        // we can use the reviver to convert date strings to date objects (if needed)
-        final String reviverjs = "(function(key,value) { return value; })";
-        final Callable reviver = (Callable) cx.evaluateString(scope, reviverjs, "reviver", 0, null);
-
-        return NativeJSON.parse(cx, scope, json, reviver);
+        try
+        {
+            return new JsonParser(cx, scope).parseValue(json);
+        }
+        catch (JsonParser.ParseException e)
+        {
+            throw ScriptRuntime.constructError("SyntaxError", e.getMessage());
+        }
     }
 
     /**
-     * Parse JS Object back into a JsonNode
+     * Convert a JS Object into a JsonNode
      */
-    public static JsonNode fromJSONObject(ObjectMapper om, Context cx, Scriptable scope, Object obj) throws IOException
+    public static JsonNode fromJSONObject(ObjectMapper om, Object obj)
     {
-        // convert javascript object to JSON string
-        final String objectJson = (String) NativeJSON.stringify(cx, scope, obj, null, null);
-
-        // convert JSON string to JsonNode
-        return om.readTree(objectJson);
+        return JsonBridge.toJson(om.getNodeFactory(), obj);
     }
 
     public static ID fromJSON(JsonNode n)
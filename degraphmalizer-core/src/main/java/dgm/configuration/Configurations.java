@@ -1,47 +1,61 @@
 package dgm.configuration;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.List;
 
 public class Configurations
 {
     final static private Logger log = LoggerFactory.getLogger(Configurations.class);
 
+    // configurations don't change once loaded, so the table is built once per configuration
+    private static final LoadingCache<Configuration, RoutingTable> tables = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Configuration, RoutingTable>()
+            {
+                @Override
+                public RoutingTable load(Configuration cfg)
+                {
+                    return new RoutingTable(cfg);
+                }
+            });
+
+    /**
+     * The routing table of a configuration, built on first use. Call this when a configuration is loaded to build the
+     * table before the first request comes in.
+     */
+    public static RoutingTable routingTable(Configuration cfg)
+    {
+        return tables.getUnchecked(cfg);
+    }
+
     /**
      * Find all TypeConfigs with specified source index and source type
      */
-    public static Iterable<TypeConfig> configsFor(Configuration cfg, String srcIndex, String srcType)
+    public static List<TypeConfig> configsFor(Configuration cfg, String srcIndex, String srcType)
     {
-        StringBuilder logMessage = null;
+        final List<TypeConfig> configs = routingTable(cfg).configsFor(srcIndex, srcType);
 
         if(log.isDebugEnabled())
         {
-            logMessage = new StringBuilder("Matching request for /");
+            final StringBuilder logMessage = new StringBuilder("Matching request for /");
             logMessage.append(srcIndex).append("/").append(srcType);
             logMessage.append(" to [");
-        }
-
-        final ArrayList<TypeConfig> configs = new ArrayList<TypeConfig>();
 
-        // find all matching configs
-        for(IndexConfig i : cfg.indices().values())
-            for(TypeConfig t : i.types().values())
-                if (srcIndex.equals(t.sourceIndex()) && (srcType == null || srcType.equals(t.sourceType()))) {
-                    if((logMessage != null))
-                    {
-                        logMessage.append(" /").append(t.targetIndex());
-                        logMessage.append("/").append(t.targetType());
-                        logMessage.append(", ");
-                    }
+            for(TypeConfig t : configs)
+            {
+                logMessage.append(" /").append(t.targetIndex());
+                logMessage.append("/").append(t.targetType());
+                logMessage.append(", ");
+            }
 
-                    configs.add(t);
-                }
-
-        if(logMessage != null)
             log.debug(logMessage.append("]").toString());
+        }
 
         return configs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package dgm.configuration;
+
+import dgm.graphs.EdgeAggregate;
+
+/**
+ * A walk property that is an aggregate over the edges of the document's vertex in the direction of the walk.
+ * <p/>
+ * The aggregate is maintained on the vertex when subgraphs are committed, so computing the property needs neither a
+ * graph walk nor fetching the documents of the walk.
+ */
+public interface EdgeAggregateConfig extends PropertyConfig
+{
+    EdgeAggregate aggregate();
+}
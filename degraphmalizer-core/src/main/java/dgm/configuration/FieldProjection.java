@@ -0,0 +1,252 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.collect.ImmutableSortedSet;
+import dgm.configuration.reducers.SourceFields;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The fields of a document that a configuration reads.
+ * <p/>
+ * Fields are paths from the root of the document like {@code "author.name"}. A projection copies these fields from a
+ * document source and skips everything else while parsing, so the rest of the document is never turned into a tree
+ * or handed to javascript. Paths through arrays apply to each object in the array. {@link #ALL} keeps the complete
+ * document, which is what you get when a configuration does not declare its fields.
+ */
+public final class FieldProjection
+{
+    public static final FieldProjection ALL = new FieldProjection(null);
+
+    // null for all fields
+    private final SortedSet<String> paths;
+    private final Node root;
+
+    private FieldProjection(SortedSet<String> paths)
+    {
+        this.paths = paths;
+        this.root = paths == null ? null : new Node();
+
+        if(paths != null)
+            for(String path : paths)
+                root.add(path.split("\\."), 0);
+    }
+
+    public static FieldProjection of(Iterable<String> paths)
+    {
+        for(String path : paths)
+            if(path.isEmpty() || path.startsWith(".") || path.endsWith(".") || path.contains(".."))
+                throw new IllegalArgumentException("Invalid field '" + path + "'");
+
+        return new FieldProjection(ImmutableSortedSet.copyOf(paths));
+    }
+
+    public static FieldProjection of(String... paths)
+    {
+        return of(Arrays.asList(paths));
+    }
+
+    /**
+     * The fields read by any of the projections
+     */
+    public static FieldProjection union(Iterable<FieldProjection> projections)
+    {
+        final List<String> paths = new ArrayList<String>();
+        for(FieldProjection p : projections)
+        {
+            if(p.isAll())
+                return ALL;
+
+            paths.addAll(p.paths);
+        }
+
+        return of(paths);
+    }
+
+    public boolean isAll()
+    {
+        return paths == null;
+    }
+
+    /**
+     * @return The declared fields, empty for {@link #ALL}
+     */
+    public Set<String> paths()
+    {
+        if(paths == null)
+            return Collections.emptySet();
+
+        return paths;
+    }
+
+    /**
+     * Project a document source, the source itself is returned for {@link #ALL}
+     */
+    public BytesReference apply(ObjectMapper om, BytesReference source) throws IOException
+    {
+        if(isAll())
+            return source;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(source.length(), 1024));
+        final JsonGenerator generator = om.getJsonFactory().createJsonGenerator(out);
+        project(om, source, generator);
+        generator.close();
+
+        return new BytesArray(out.toByteArray());
+    }
+
+    /**
+     * Parse the projection of a document source
+     */
+    public JsonNode read(ObjectMapper om, BytesReference source) throws IOException
+    {
+        if(isAll())
+            return SourceFields.readAll(om, source);
+
+        final TokenBuffer buffer = new TokenBuffer(om);
+        project(om, source, buffer);
+
+        final JsonParser parser = buffer.asParser(om);
+        try
+        {
+            return om.readTree(parser);
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    private void project(ObjectMapper om, BytesReference source, JsonGenerator generator) throws IOException
+    {
+        final JsonParser parser = SourceFields.parser(om, source);
+        try
+        {
+            if(parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Document source is not an object");
+
+            copyObject(parser, generator, root);
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Copy the fields of the current object, the parser is on the start of the object
+     */
+    private static void copyObject(JsonParser parser, JsonGenerator generator, Node node) throws IOException
+    {
+        generator.writeStartObject();
+        while(parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            final Node child = node.children.get(name);
+
+            if(child == null)
+                parser.skipChildren();
+            else if(child.whole)
+            {
+                generator.writeFieldName(name);
+                generator.copyCurrentStructure(parser);
+            }
+            else if(value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY)
+            {
+                generator.writeFieldName(name);
+                copyValue(parser, generator, child);
+            }
+            // a scalar where we look for fields inside an object
+            else
+                parser.skipChildren();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void copyValue(JsonParser parser, JsonGenerator generator, Node node) throws IOException
+    {
+        if(parser.getCurrentToken() == JsonToken.START_OBJECT)
+        {
+            copyObject(parser, generator, node);
+            return;
+        }
+
+        // the fields are taken from every object in the array, other elements are left out
+        generator.writeStartArray();
+        JsonToken element;
+        while((element = parser.nextToken()) != JsonToken.END_ARRAY)
+        {
+            if(element == JsonToken.START_OBJECT || element == JsonToken.START_ARRAY)
+                copyValue(parser, generator, node);
+            else
+                parser.skipChildren();
+        }
+        generator.writeEndArray();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof FieldProjection))
+            return false;
+
+        final FieldProjection p = (FieldProjection) o;
+        return paths == null ? p.paths == null : paths.equals(p.paths);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return paths == null ? 0 : paths.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return paths == null ? "*" : paths.toString();
+    }
+
+    /**
+     * Tree of field names
+     */
+    private static final class Node
+    {
+        final Map<String, Node> children = new HashMap<String, Node>();
+
+        // select the complete value
+        boolean whole = false;
+
+        void add(String[] path, int depth)
+        {
+            // a shorter path already selects everything below it
+            if(whole)
+                return;
+
+            if(depth == path.length)
+            {
+                whole = true;
+                children.clear();
+                return;
+            }
+
+            Node child = children.get(path[depth]);
+            if(child == null)
+            {
+                child = new Node();
+                children.put(path[depth], child);
+            }
+
+            child.add(path, depth + 1);
+        }
+    }
+}
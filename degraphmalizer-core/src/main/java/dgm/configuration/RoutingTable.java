@@ -0,0 +1,96 @@
+package dgm.configuration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.*;
+
+/**
+ * The type configurations of a {@link Configuration} by source index and source type.
+ * <p/>
+ * The table is built once for a configuration, looking up the configurations of a document is then two hash lookups
+ * that return a shared immutable list.
+ */
+public final class RoutingTable
+{
+    // source index -> source type -> configs
+    private final ImmutableMap<String, ImmutableMap<String, ImmutableList<TypeConfig>>> byType;
+
+    // source index -> configs for all types
+    private final ImmutableMap<String, ImmutableList<TypeConfig>> byIndex;
+
+    RoutingTable(Configuration cfg)
+    {
+        final Map<String, Map<String, List<TypeConfig>>> types = new HashMap<String, Map<String, List<TypeConfig>>>();
+        final Map<String, List<TypeConfig>> indices = new HashMap<String, List<TypeConfig>>();
+
+        for(IndexConfig i : cfg.indices().values())
+            for(TypeConfig t : i.types().values())
+            {
+                if(t.sourceIndex() == null)
+                    continue;
+
+                add(indices, t.sourceIndex(), t);
+
+                Map<String, List<TypeConfig>> index = types.get(t.sourceIndex());
+                if(index == null)
+                {
+                    index = new HashMap<String, List<TypeConfig>>();
+                    types.put(t.sourceIndex(), index);
+                }
+
+                if(t.sourceType() != null)
+                    add(index, t.sourceType(), t);
+            }
+
+        final ImmutableMap.Builder<String, ImmutableMap<String, ImmutableList<TypeConfig>>> byType = ImmutableMap.builder();
+        for(Map.Entry<String, Map<String, List<TypeConfig>>> index : types.entrySet())
+            byType.put(index.getKey(), freeze(index.getValue()));
+
+        this.byType = byType.build();
+        this.byIndex = freeze(indices);
+    }
+
+    /**
+     * Find all type configurations with the source index and source type
+     *
+     * @param srcType The source type, or {@code null} for all types in the index
+     */
+    public List<TypeConfig> configsFor(String srcIndex, String srcType)
+    {
+        if(srcType == null)
+            return orEmpty(byIndex.get(srcIndex));
+
+        final ImmutableMap<String, ImmutableList<TypeConfig>> index = byType.get(srcIndex);
+        if(index == null)
+            return ImmutableList.of();
+
+        return orEmpty(index.get(srcType));
+    }
+
+    private static ImmutableList<TypeConfig> orEmpty(ImmutableList<TypeConfig> configs)
+    {
+        return configs == null ? ImmutableList.<TypeConfig>of() : configs;
+    }
+
+    private static void add(Map<String, List<TypeConfig>> map, String key, TypeConfig t)
+    {
+        List<TypeConfig> configs = map.get(key);
+        if(configs == null)
+        {
+            configs = new ArrayList<TypeConfig>();
+            map.put(key, configs);
+        }
+
+        configs.add(t);
+    }
+
+    private static ImmutableMap<String, ImmutableList<TypeConfig>> freeze(Map<String, List<TypeConfig>> map)
+    {
+        final ImmutableMap.Builder<String, ImmutableList<TypeConfig>> builder = ImmutableMap.builder();
+        for(Map.Entry<String, List<TypeConfig>> e : map.entrySet())
+            builder.put(e.getKey(), ImmutableList.copyOf(e.getValue()));
+
+        return builder.build();
+    }
+}
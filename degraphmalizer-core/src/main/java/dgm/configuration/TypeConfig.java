@@ -32,6 +32,12 @@ public interface TypeConfig
      * @return
      */
 	boolean filter(JsonNode document);
+
+    /**
+     * The fields of the source document that {@link #extract(JsonNode)} reads, only these are parsed and passed to
+     * it. {@link FieldProjection#ALL} if the document is needed as a whole.
+     */
+    FieldProjection fields();
 	
 	/**
 	 * A type is always part of a {@link IndexConfig}
@@ -0,0 +1,21 @@
+package dgm.configuration;
+
+/**
+ * Service provider interface for type configurations written in Java.
+ * <p/>
+ * Javascript configuration functions pay for converting every document between Jackson and Rhino. For types with
+ * heavy traffic you can implement {@link TypeConfig}, {@link WalkConfig} and {@link PropertyConfig} in Java instead.
+ * Put the classes in a jar in the directory of the target index, and list the providers in
+ * {@code META-INF/services/dgm.configuration.TypeConfigProvider} of that jar. The types are loaded next to the
+ * {@code .conf.js} files of the index, and reloaded like them when the jar changes.
+ */
+public interface TypeConfigProvider
+{
+    /**
+     * Create the configuration for a type.
+     *
+     * @param index The index the type is configured in, it should be returned by {@link TypeConfig#index()}
+     * @return The configuration, its {@link TypeConfig#name()} is the target type
+     */
+    TypeConfig typeConfig(IndexConfig index);
+}
@@ -0,0 +1,186 @@
+package dgm.configuration;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import dgm.exceptions.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+/**
+ * Loads the {@link TypeConfigProvider}s from the jars in an index configuration directory.
+ * <p/>
+ * The jars are loaded from temporary copies. A reload of the configuration reuses the class loader and copies of a
+ * directory while its jars are unchanged, so only an edited jar costs a new class loader. The configuration in use
+ * keeps its class loader until the new configuration replaced it, see {@link #release(File)}.
+ */
+@Singleton
+public class TypeConfigProviders
+{
+    private static final Logger log = LoggerFactory.getLogger(TypeConfigProviders.class);
+
+    // latest class loader of every index directory with jars, by canonical directory
+    private final Map<File, Jars> loaded = new HashMap<File, Jars>();
+
+    // class loaders that were replaced, but may still be used by the current configuration
+    private final Map<File, List<Jars>> replaced = new HashMap<File, List<Jars>>();
+
+    /**
+     * @return Mapping of type name to the configuration of all Java types of the index
+     */
+    public final Map<String, TypeConfig> load(File directory, IndexConfig index) throws IOException
+    {
+        final File[] jars = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(".jar");
+            }
+        });
+
+        final Map<String, TypeConfig> types = new HashMap<String, TypeConfig>();
+        final ClassLoader loader = loader(directory, jars == null ? new File[0] : jars);
+        if(loader == null)
+            return types;
+
+        try
+        {
+            for(TypeConfigProvider provider : ServiceLoader.load(TypeConfigProvider.class, loader))
+            {
+                final TypeConfig type = provider.typeConfig(index);
+                if(types.put(type.name(), type) != null)
+                    throw new ConfigurationException("Type " + type.name() + " in index " + index.name() + " is provided twice");
+
+                log.debug("Found Java configuration {} for type [{}] in index [{}]", new Object[]{provider.getClass().getName(), type.name(), index.name()});
+            }
+        }
+        catch (ServiceConfigurationError e)
+        {
+            throw new ConfigurationException("Cannot load Java type configuration from " + directory + ": " + e.getMessage());
+        }
+
+        return types;
+    }
+
+    /**
+     * Remove the copies of the jars of class loaders of the directory that were replaced. Call when the configuration
+     * loaded last for the directory is in use.
+     */
+    public final void release(File directory) throws IOException
+    {
+        final List<Jars> unused;
+        synchronized (loaded)
+        {
+            unused = replaced.remove(directory.getCanonicalFile());
+        }
+
+        if(unused != null)
+            for(Jars jars : unused)
+                jars.delete();
+    }
+
+    /**
+     * The class loader over the jars of the directory. It is reused as long as the jars do not change, otherwise the
+     * previous class loader is kept until {@link #release(File)}.
+     *
+     * @return {@code null} if there are no jars
+     */
+    final ClassLoader loader(File directory, File[] jars) throws IOException
+    {
+        final File key = directory.getCanonicalFile();
+        final String hash = jars.length == 0 ? null : hash(jars);
+
+        synchronized (loaded)
+        {
+            final Jars previous = loaded.get(key);
+            if(previous != null && previous.hash.equals(hash))
+                return previous.loader;
+
+            if(previous != null)
+            {
+                loaded.remove(key);
+                if(!replaced.containsKey(key))
+                    replaced.put(key, new ArrayList<Jars>());
+                replaced.get(key).add(previous);
+            }
+
+            if(hash == null)
+                return null;
+
+            // a reloaded configuration needs a new class loader, the JVM caches opened jars by their URL so we load a copy
+            final List<File> copies = new ArrayList<File>();
+            final URL[] urls = new URL[jars.length];
+            for(int i = 0; i < jars.length; i++)
+            {
+                copies.add(copy(jars[i]));
+                urls[i] = copies.get(i).toURI().toURL();
+            }
+
+            final ClassLoader loader = new URLClassLoader(urls, TypeConfigProviders.class.getClassLoader())
+            {
+                // only find service files in the jars, not on the class path of the degraphmalizer
+                @Override
+                public Enumeration<URL> getResources(String name) throws IOException
+                {
+                    return findResources(name);
+                }
+            };
+
+            loaded.put(key, new Jars(hash, copies, loader));
+            return loader;
+        }
+    }
+
+    private static String hash(File[] jars) throws IOException
+    {
+        final File[] sorted = jars.clone();
+        Arrays.sort(sorted);
+
+        final Hasher hasher = Hashing.md5().newHasher();
+        for(File jar : sorted)
+            hasher.putString(jar.getName()).putString(Files.hash(jar, Hashing.md5()).toString());
+
+        return hasher.hash().toString();
+    }
+
+    private static File copy(File jar) throws IOException
+    {
+        final File copy = File.createTempFile(jar.getName().replaceFirst("\\.jar$", "") + "-", ".jar");
+        copy.deleteOnExit();
+        Files.copy(jar, copy);
+        return copy;
+    }
+
+    /**
+     * Class loader over copies of the jars of one directory
+     */
+    private static final class Jars
+    {
+        final String hash;
+        final List<File> copies;
+        final ClassLoader loader;
+
+        Jars(String hash, List<File> copies, ClassLoader loader)
+        {
+            this.hash = hash;
+            this.copies = copies;
+            this.loader = loader;
+        }
+
+        void delete()
+        {
+            for(File copy : copies)
+                if(!copy.delete())
+                    log.debug("Could not remove jar copy {}, it is removed on exit", copy);
+        }
+    }
+}
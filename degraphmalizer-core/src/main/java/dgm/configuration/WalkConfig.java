@@ -45,6 +45,14 @@ public interface WalkConfig {
      */
     Map<String, ? extends PropertyConfig> properties();
 
+    /**
+     * The fields of the walked documents that the properties read, only these are parsed and passed to
+     * {@link PropertyConfig#reduce}. {@link FieldProjection#ALL} if the documents are needed as a whole.
+     *
+     * @return
+     */
+    FieldProjection fields();
+
     /**
      * Name of the walk
      */
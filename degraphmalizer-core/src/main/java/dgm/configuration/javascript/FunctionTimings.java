@@ -0,0 +1,81 @@
+package dgm.configuration.javascript;
+
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution time of the javascript configuration functions ({@code filter}, {@code extract}, {@code transform} and
+ * {@code reduce}), per index, type and function.
+ */
+@Singleton
+public class FunctionTimings implements FunctionTimingsMBean
+{
+    private final ConcurrentMap<String, Timing> timings = new ConcurrentHashMap<String, Timing>();
+
+    static final class Timing
+    {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+    }
+
+    /**
+     * Register a function call that started at {@code startNanos} (as returned by {@link System#nanoTime()})
+     */
+    public final void record(String function, long startNanos)
+    {
+        final long elapsed = System.nanoTime() - startNanos;
+
+        Timing t = timings.get(function);
+        if(t == null)
+        {
+            final Timing n = new Timing();
+            t = timings.putIfAbsent(function, n);
+            if(t == null)
+                t = n;
+        }
+
+        t.calls.incrementAndGet();
+        t.nanos.addAndGet(elapsed);
+    }
+
+    /**
+     * Number of calls and total time in nanoseconds per function
+     */
+    public final Map<String, long[]> snapshot()
+    {
+        final Map<String, long[]> s = new TreeMap<String, long[]>();
+        for(Map.Entry<String, Timing> e : timings.entrySet())
+            s.put(e.getKey(), new long[]{e.getValue().calls.get(), e.getValue().nanos.get()});
+
+        return s;
+    }
+
+    @Override
+    public final String getReport()
+    {
+        final StringBuilder sb = new StringBuilder();
+        for(Map.Entry<String, long[]> e : snapshot().entrySet())
+        {
+            final long calls = e.getValue()[0];
+            final long nanos = e.getValue()[1];
+
+            sb.append(e.getKey())
+                    .append(": ").append(calls).append(" calls, ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms total, ")
+                    .append(calls == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos / calls)).append(" us average\n");
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public final void reset()
+    {
+        timings.clear();
+    }
+}
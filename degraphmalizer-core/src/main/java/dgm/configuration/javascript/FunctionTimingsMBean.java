@@ -0,0 +1,14 @@
+package dgm.configuration.javascript;
+
+public interface FunctionTimingsMBean
+{
+    /**
+     * Per configuration function the number of calls, total and average execution time.
+     */
+    String getReport();
+
+    /**
+     * Start measuring from scratch, for instance after changing the optimization level.
+     */
+    void reset();
+}
@@ -1,18 +1,23 @@
 package dgm.configuration.javascript;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Optional;
 import com.tinkerpop.blueprints.*;
-import dgm.JSONUtilities;
 import dgm.configuration.*;
+import dgm.configuration.reducers.AggregatePropertyConfig;
+import dgm.configuration.reducers.Reducer;
+import dgm.configuration.reducers.ReducerPropertyConfig;
+import dgm.configuration.reducers.Reducers;
+import dgm.configuration.reducers.SourceFields;
 import dgm.modules.elasticsearch.ResolvedPathElement;
 import dgm.exceptions.ConfigurationException;
 import dgm.Subgraph;
+import dgm.graphs.EdgeAggregate;
 import dgm.graphs.Subgraphs;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.mozilla.javascript.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,20 +25,35 @@ import dgm.trees.Tree;
 import dgm.trees.Trees;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static dgm.GraphUtilities.toJSON;
 
 /**
  * Load configuration from javascript files in a directory
+ * <p/>
+ * A configuration does not change once it is loaded. When the files of an index change, {@link #reload(String)}
+ * creates a new configuration in which only that index is loaded again.
  */
 public class JavascriptConfiguration implements Configuration
 {
     public static final String FIXTURES_DIR_NAME = "fixtures";
 
-    private final Map<String,JavascriptIndexConfig> indices = new HashMap<String,JavascriptIndexConfig>();
-    private JavascriptFixtureConfiguration fixtureConfig;
+    private final Map<String,JavascriptIndexConfig> indices;
+    private final JavascriptFixtureConfiguration fixtureConfig;
+
+    // needed to load indices again
+    private final ObjectMapper om;
+    private final ScriptCompiler compiler;
+    private final FunctionTimings timings;
+    private final ScriptContexts contexts;
+    private final TypeConfigProviders providers;
+    private final File directory;
+    private final File[] libraries;
 
     private static final Logger log = LoggerFactory.getLogger(JavascriptConfiguration.class);
 
@@ -41,11 +61,34 @@ public class JavascriptConfiguration implements Configuration
 
     public JavascriptConfiguration(ObjectMapper om, File directory, File... libraries) throws IOException
     {
+        this(om, new ScriptCompiler(), new FunctionTimings(), new ScriptContexts(), new TypeConfigProviders(), directory, libraries);
+    }
+
+    /**
+     * @param compiler Compiles the configuration scripts
+     * @param timings Records the execution time of the configuration functions
+     * @param contexts Rhino contexts and scopes of the threads that run the configuration functions
+     * @param providers Loads the Java type configurations from the jars of an index
+     */
+    public JavascriptConfiguration(ObjectMapper om, ScriptCompiler compiler, FunctionTimings timings, ScriptContexts contexts,
+                                   TypeConfigProviders providers, File directory, File... libraries) throws IOException
+    {
+        this.om = om;
+        this.compiler = compiler;
+        this.timings = timings;
+        this.contexts = contexts;
+        this.providers = providers;
+        this.directory = directory;
+        this.libraries = libraries;
+
         final File[] directories = directory.listFiles();
         if (directories == null)
             throw new ConfigurationException("Configuration directory " + directory.getCanonicalPath() + " does not exist");
 
-        for(File dir : directory.listFiles())
+        final Map<String,JavascriptIndexConfig> indices = new HashMap<String,JavascriptIndexConfig>();
+        JavascriptFixtureConfiguration fixtureConfig = null;
+
+        for(File dir : directories)
         {
             // skip non directories
             if(!dir.isDirectory())
@@ -59,8 +102,56 @@ public class JavascriptConfiguration implements Configuration
                 log.debug(fixtureConfig.toString());
             }
             else
-                indices.put(dirname, new JavascriptIndexConfig(om, dirname, dir, libraries));
+                indices.put(dirname, loadIndex(dirname, dir));
         }
+
+        this.indices = Collections.unmodifiableMap(indices);
+        this.fixtureConfig = fixtureConfig;
+    }
+
+    private JavascriptConfiguration(JavascriptConfiguration previous, Map<String,JavascriptIndexConfig> indices,
+                                    JavascriptFixtureConfiguration fixtureConfig)
+    {
+        this.om = previous.om;
+        this.compiler = previous.compiler;
+        this.timings = previous.timings;
+        this.contexts = previous.contexts;
+        this.providers = previous.providers;
+        this.directory = previous.directory;
+        this.libraries = previous.libraries;
+
+        this.indices = Collections.unmodifiableMap(indices);
+        this.fixtureConfig = fixtureConfig;
+    }
+
+    private JavascriptIndexConfig loadIndex(String index, File dir) throws IOException
+    {
+        return new JavascriptIndexConfig(om, compiler, timings, contexts, providers, index, dir, libraries);
+    }
+
+    /**
+     * Load a single index directory again. The other indices are taken over from this configuration as they are, this
+     * configuration itself is not changed.
+     *
+     * @param dirname The directory of the index that changed, it is removed from the configuration if it is gone
+     * @return A new configuration
+     * @throws ConfigurationException If the index can not be loaded
+     */
+    public JavascriptConfiguration reload(String dirname) throws IOException
+    {
+        final File dir = new File(directory, dirname);
+        final boolean exists = dir.isDirectory();
+
+        if (FIXTURES_DIR_NAME.equals(dirname))
+            return new JavascriptConfiguration(this, indices, exists ? new JavascriptFixtureConfiguration(dir) : null);
+
+        final Map<String,JavascriptIndexConfig> reloaded = new HashMap<String,JavascriptIndexConfig>(indices);
+        if (exists)
+            reloaded.put(dirname, loadIndex(dirname, dir));
+        else
+            reloaded.remove(dirname);
+
+        return new JavascriptConfiguration(this, reloaded, fixtureConfig);
     }
 
     @Override
@@ -83,7 +174,8 @@ class JavascriptIndexConfig implements IndexConfig
 
 	final String index;
 	final Scriptable scope;
-	final Map<String,JavascriptTypeConfig> types = new HashMap<String,JavascriptTypeConfig>();
+    final ScriptCompiler compiler;
+	final Map<String,TypeConfig> types = new HashMap<String,TypeConfig>();
 	
 	
 	/**
@@ -93,14 +185,18 @@ class JavascriptIndexConfig implements IndexConfig
 	 * @param directory Directory to watch for files
 	 * @throws IOException
 	 */
-	public JavascriptIndexConfig(ObjectMapper om, String index, File directory, File... libraries) throws IOException
+	public JavascriptIndexConfig(ObjectMapper om, ScriptCompiler compiler, FunctionTimings timings, ScriptContexts contexts,
+                                 TypeConfigProviders providers, String index, File directory, File... libraries) throws IOException
     {
         this.index = index;
+        this.compiler = compiler;
         Scriptable scope = null;
 
+        final Context cx = Context.enter();
         try
         {
-            final Context cx = Context.enter();
+            // the context is sealed before the configuration files are compiled, so set the optimization level now
+            cx.setOptimizationLevel(compiler.optimizationLevel());
 
             // create standard ECMA scope
             scope = cx.initStandardObjects();
@@ -123,6 +219,9 @@ class JavascriptIndexConfig implements IndexConfig
                 {
                     if(name.endsWith(".conf.js"))
                         return true;
+                    // jars with Java type configurations
+                    if(name.endsWith(".jar"))
+                        return false;
                     log.error("File [{}] in config dir [{}] has wrong name format and is ignored. Proper format: [target type].conf.js", name, dir.getAbsolutePath());
                     return false;
                 }
@@ -140,9 +239,21 @@ class JavascriptIndexConfig implements IndexConfig
 
                 final Scriptable typeConfig = (Scriptable) compile(cx, scope, reader, fn);
 
-                types.put(type, new JavascriptTypeConfig(om, type, scope, typeConfig, this));
+                types.put(type, new JavascriptTypeConfig(om, timings, contexts, type, scope, typeConfig, this));
+            }
+
+            for(Map.Entry<String,TypeConfig> javaType : providers.load(directory, this).entrySet())
+            {
+                if(types.containsKey(javaType.getKey()))
+                    throw new ConfigurationException("Type [" + javaType.getKey() + "] in index [" + index + "] has both a javascript and a Java configuration");
+
+                types.put(javaType.getKey(), javaType.getValue());
             }
         } finally {
+            // the context can stay with this thread to run the configuration functions, see ScriptContexts
+            if(cx.isSealed())
+                cx.unseal(scope);
+
             Context.exit();
         }
 
@@ -168,7 +279,7 @@ class JavascriptIndexConfig implements IndexConfig
 	private Object compile(Context cx, Scriptable scope, Reader reader, String fn) throws IOException
 	{
 		// compile and execute into the scope
-		return cx.compileReader(reader, fn, 0, null).exec(cx, scope);
+		return compiler.compile(cx, reader, fn).exec(cx, scope);
 	}
 
     private Object loadLibFromResource(Context cx, Scriptable scope, Class<?> cls, String fn) throws IOException
@@ -208,12 +319,19 @@ class JavascriptTypeConfig implements TypeConfig
     final String sourceType;
 
     final ObjectMapper objectMapper;
+    final FunctionTimings timings;
+    final ScriptContexts contexts;
+    final Scriptable rootScope;
 
     final Map<String,WalkConfig> walks = new HashMap<String, WalkConfig>();
+    final FieldProjection fields;
 
-    public JavascriptTypeConfig(ObjectMapper objectMapper, String type, Scriptable scope, Scriptable script, IndexConfig indexConfig) throws IOException
+    public JavascriptTypeConfig(ObjectMapper objectMapper, FunctionTimings timings, ScriptContexts contexts, String type, Scriptable scope, Scriptable script, IndexConfig indexConfig) throws IOException
     {
         this.objectMapper = objectMapper;
+        this.timings = timings;
+        this.contexts = contexts;
+        this.rootScope = scope;
         this.type = type;
         this.script = script;
         this.indexConfig = indexConfig;
@@ -233,6 +351,8 @@ class JavascriptTypeConfig implements TypeConfig
             sourceIndex = ScriptableObject.getTypedProperty(script, "sourceIndex", String.class);
             sourceType = ScriptableObject.getTypedProperty(script, "sourceType", String.class);
 
+            fields = fields(script);
+
             // add the walks
             final Scriptable walks = (Scriptable) fetchObjectOrNull("walks");
             if (walks != null)
@@ -248,7 +368,7 @@ class JavascriptTypeConfig implements TypeConfig
 
                     final Scriptable properties = (Scriptable) ScriptableObject.getProperty(walk, "properties");
 
-                    final JavascriptWalkConfig walkCfg = new JavascriptWalkConfig(objectMapper,  walkName, direction, this, scope, properties);
+                    final JavascriptWalkConfig walkCfg = new JavascriptWalkConfig(objectMapper, timings, contexts, walkName, direction, fields(walk), this, scope, properties);
 
                     this.walks.put(walkName, walkCfg);
                 }
@@ -263,6 +383,32 @@ class JavascriptTypeConfig implements TypeConfig
         }
     }
 
+    /**
+     * The fields declared in the {@code fields} array of a type or walk, all fields if there is none
+     */
+    static FieldProjection fields(Scriptable object) throws ConfigurationException
+    {
+        final Object fields = ScriptableObject.getProperty(object, "fields");
+        if(fields == UniqueTag.NOT_FOUND || fields == null || fields == Undefined.instance)
+            return FieldProjection.ALL;
+
+        if(!(fields instanceof NativeArray))
+            throw new ConfigurationException("'fields' should be an array of field names");
+
+        final List<String> paths = new ArrayList<String>();
+        for(Object field : ((NativeArray) fields).toArray())
+            paths.add(Context.toString(field));
+
+        try
+        {
+            return FieldProjection.of(paths);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException(e.getMessage());
+        }
+    }
+
     private Object fetchObjectOrNull(String field)
     {
         final Object obj = ScriptableObject.getProperty(script, field);
@@ -293,16 +439,25 @@ class JavascriptTypeConfig implements TypeConfig
             return Subgraphs.EMPTY_SUBGRAPH;
         }
 
-        final Context cx = Context.enter();
+        final long start = System.nanoTime();
+        final Context cx = contexts.enter();
+        try
+        {
+            final Scriptable scope = contexts.scope(cx, rootScope);
 
-        // extract graph components
-        final JavascriptSubgraph sg = new JavascriptSubgraph(objectMapper, cx, script);
+            // extract graph components
+            final JavascriptSubgraph sg = new JavascriptSubgraph(objectMapper, cx, scope);
 
-        final Object obj = JSONUtilities.toJSONObject(cx, script, document.toString());
-        extract.call(cx, script, null, new Object[]{obj, sg});
-        Context.exit();
+            final Object obj = JsonBridge.toScript(cx, scope, document);
+            extract.call(cx, scope, null, new Object[]{obj, sg});
 
-        return sg.subgraph;
+            return sg.subgraph;
+        }
+        finally
+        {
+            contexts.exit();
+            timings.record(functionName("extract"), start);
+        }
     }
 
 	@Override
@@ -313,15 +468,18 @@ class JavascriptTypeConfig implements TypeConfig
 
 		boolean result = false;
 
+        final long start = System.nanoTime();
 		try
 		{
-			final Context cx = Context.enter();
-			final Object doc = JSONUtilities.toJSONObject(cx, script, document.toString());
-			result = Context.toBoolean(filter.call(cx, script, null, new Object[]{doc}));
+			final Context cx = contexts.enter();
+            final Scriptable scope = contexts.scope(cx, rootScope);
+			final Object doc = JsonBridge.toScript(cx, scope, document);
+			result = Context.toBoolean(filter.call(cx, scope, null, new Object[]{doc}));
 		}
 		finally
 		{
-			Context.exit();
+			contexts.exit();
+            timings.record(functionName("filter"), start);
 		}
 		
 	    return result;
@@ -337,24 +495,30 @@ class JavascriptTypeConfig implements TypeConfig
             return document;
         }
 
+        final long start = System.nanoTime();
         try
         {
-            final Context cx = Context.enter();
-            final Object doc = JSONUtilities.toJSONObject(cx, script, document.toString());
-            final Object result = transform.call(cx, script, null, new Object[]{doc});
-            return JSONUtilities.fromJSONObject(objectMapper, cx, script, result);
-        }
-        catch (IOException e)
-        {
-            //TODO: and what about error handling???
-            throw new RuntimeException("Could not transform the input document." , e);
+            final Context cx = contexts.enter();
+            final Scriptable scope = contexts.scope(cx, rootScope);
+            final Object doc = JsonBridge.toScript(cx, scope, document);
+            final Object result = transform.call(cx, scope, null, new Object[]{doc});
+            return JsonBridge.toJson(objectMapper.getNodeFactory(), result);
         }
         finally
         {
-            Context.exit();
+            contexts.exit();
+            timings.record(functionName("transform"), start);
         }
     }
 
+    /**
+     * Name of a function of this configuration as reported in the {@link FunctionTimings}
+     */
+    final String functionName(String function)
+    {
+        return indexConfig.name() + "/" + type + "." + function;
+    }
+
 	@Override
     public IndexConfig index()
     {
@@ -390,22 +554,30 @@ class JavascriptTypeConfig implements TypeConfig
     {
 	    return walks;
     }
+
+    @Override
+    public FieldProjection fields()
+    {
+        return fields;
+    }
 }
 
 class JavascriptWalkConfig implements WalkConfig
 {
     final String walkName;
     final Direction direction;
+    final FieldProjection fields;
     final TypeConfig typeCfg;
 
     // TODO use guava immutables
-    final Map<String, JavascriptPropertyConfig> properties = new HashMap<String,JavascriptPropertyConfig>();
+    final Map<String, PropertyConfig> properties = new HashMap<String,PropertyConfig>();
 
 
-    public JavascriptWalkConfig(ObjectMapper om, String walkName, Direction direction, TypeConfig typeCfg, Scriptable scope, Scriptable propertyScriptable)
+    public JavascriptWalkConfig(ObjectMapper om, FunctionTimings timings, ScriptContexts contexts, String walkName, Direction direction, FieldProjection fields, JavascriptTypeConfig typeCfg, Scriptable scope, Scriptable propertyScriptable)
     {
         this.walkName = walkName;
         this.direction = direction;
+        this.fields = fields;
         this.typeCfg = typeCfg;
 
         try
@@ -418,10 +590,29 @@ class JavascriptWalkConfig implements WalkConfig
                 final String propertyName = id.toString();
                 final Scriptable property = (Scriptable)ScriptableObject.getProperty(propertyScriptable, propertyName);
 
+                // built-in reducers run without javascript
+                final Object reducer = ScriptableObject.getProperty(property, "reducer");
+                if(reducer != UniqueTag.NOT_FOUND)
+                {
+                    this.properties.put(propertyName, new ReducerPropertyConfig(propertyName, reducer(om, property, reducer.toString()), this));
+                    continue;
+                }
+
+                // aggregates maintained on the vertex
+                final Object aggregate = ScriptableObject.getProperty(property, "aggregate");
+                if(aggregate != UniqueTag.NOT_FOUND)
+                {
+                    final EdgeAggregate a = AggregatePropertyConfig.aggregate(this, aggregate.toString(),
+                            stringOrNull(property, "label"), stringOrNull(property, "field"));
+                    this.properties.put(propertyName, new AggregatePropertyConfig(om, propertyName, a, this));
+                    continue;
+                }
+
                 final Function reduce = (Function)ScriptableObject.getProperty(property, "reduce");
                 final boolean nested = ScriptableObject.getProperty(property, "nested").toString().equals("true");
 
-                this.properties.put(propertyName, new JavascriptPropertyConfig(om, propertyName, nested, reduce, scope, this));
+                final String functionName = typeCfg.functionName(walkName + "." + propertyName + ".reduce");
+                this.properties.put(propertyName, new JavascriptPropertyConfig(om, timings, contexts, functionName, propertyName, nested, reduce, scope, this));
             }
         }
         finally
@@ -430,6 +621,21 @@ class JavascriptWalkConfig implements WalkConfig
         }
     }
 
+    private static Reducer reducer(ObjectMapper om, Scriptable property, String type)
+    {
+        final Object size = ScriptableObject.getProperty(property, "size");
+
+        return Reducers.reducer(om, type, stringOrNull(property, "field"),
+                size == UniqueTag.NOT_FOUND ? 1 : (int) Context.toNumber(size),
+                "desc".equals(stringOrNull(property, "order")));
+    }
+
+    private static String stringOrNull(Scriptable property, String name)
+    {
+        final Object value = ScriptableObject.getProperty(property, name);
+        return value == UniqueTag.NOT_FOUND ? null : value.toString();
+    }
+
     @Override
     public Direction direction()
     {
@@ -448,6 +654,12 @@ class JavascriptWalkConfig implements WalkConfig
 	    return properties;
     }
 
+    @Override
+    public FieldProjection fields()
+    {
+        return fields;
+    }
+
     @Override
     public String name()
     {
@@ -464,10 +676,16 @@ class JavascriptPropertyConfig implements PropertyConfig
 	final Scriptable scope;
 	final WalkConfig walkConfig;
     final ObjectMapper om;
+    final FunctionTimings timings;
+    final ScriptContexts contexts;
+    final String functionName;
 
-    public JavascriptPropertyConfig(ObjectMapper om, String name, boolean nested, Function reduce, Scriptable scope, WalkConfig walkConfig)
+    public JavascriptPropertyConfig(ObjectMapper om, FunctionTimings timings, ScriptContexts contexts, String functionName, String name, boolean nested, Function reduce, Scriptable scope, WalkConfig walkConfig)
 	{
         this.om = om;
+        this.timings = timings;
+        this.contexts = contexts;
+        this.functionName = functionName;
         this.nested = nested;
 		this.name = name;
 		this.reduce = reduce;
@@ -498,10 +716,10 @@ class JavascriptPropertyConfig implements PropertyConfig
 
                     if(getResponse.isPresent())
                     {
-                        final String getResponseString = getResponse.get().getSourceAsString();
+                        final Optional<BytesReference> source = input.source();
 
                         n.put("exists", true);
-                        n.put("value", om.readTree(getResponseString));
+                        n.put("value", source.isPresent() ? SourceFields.readAll(om, source.get()) : null);
                     }
                     else
                     {
@@ -528,39 +746,26 @@ class JavascriptPropertyConfig implements PropertyConfig
         };
 
         final Tree<JsonNode> jsonTree = Trees.map(resultToString, tree);
-		
+
+        final long start = System.nanoTime();
 		try
 		{
-			final Context cx = Context.enter();
+			final Context cx = contexts.enter();
+            final Scriptable threadScope = contexts.scope(cx, scope);
 
             final JsonNode jtree = Trees.toJsonTree(om, jsonTree);
 
-            final Object jsobject = JSONUtilities.toJSONObject(cx, scope, jtree.toString());
+            final Object jsobject = JsonBridge.toScript(cx, threadScope, jtree);
 
             // call our "reduction" function
-			final Object obj = reduce.call(cx, scope, null, new Object[] { jsobject });
-			
-			// TODO this is inefficient and silly...
-			
-			// convert javascript object to JSON string
-			final String objectJson = (String) NativeJSON.stringify(cx, scope, obj, null, null);
-			
-			// convert JSON string to JsonNode
-			result = om.readTree(objectJson);
-		}
-		catch (JsonProcessingException e)
-		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		catch (IOException e)
-		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			final Object obj = reduce.call(cx, threadScope, null, new Object[] { jsobject });
+
+			result = JsonBridge.toJson(om.getNodeFactory(), obj);
 		}
 		finally
 		{
-			Context.exit();
+			contexts.exit();
+            timings.record(functionName, start);
 		}
 
 		return result;
@@ -7,7 +7,6 @@ import dgm.graphs.MutableSubgraph;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Scriptable;
 
-import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -29,7 +28,7 @@ public class JavascriptSubgraph
         this.scope = scope;
     }
 
-    public final void addEdge(String label, String index, String type, String id, boolean inwards, Map<String, Object> properties) throws IOException
+    public final void addEdge(String label, String index, String type, String id, boolean inwards, Map<String, Object> properties)
     {
         final ID other = new ID(index, type, id, 0);
 
@@ -46,17 +45,17 @@ public class JavascriptSubgraph
         for(Map.Entry<String,Object> p : properties.entrySet())
         {
             // convert into JsonNode
-            final JsonNode result = JSONUtilities.fromJSONObject(om, cx, scope, p.getValue());
+            final JsonNode result = JsonBridge.toJson(om.getNodeFactory(), p.getValue());
 
             // Store it
             e.property(p.getKey(), result);
         }
     }
 
-    public final void setProperty(String key, Object value) throws IOException
+    public final void setProperty(String key, Object value)
     {
         // convert into JsonNode
-        final JsonNode result = JSONUtilities.fromJSONObject(om, cx, scope, value);
+        final JsonNode result = JsonBridge.toJson(om.getNodeFactory(), value);
         subgraph.property(key, result);
     }
 }
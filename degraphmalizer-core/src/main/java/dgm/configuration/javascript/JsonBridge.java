@@ -0,0 +1,418 @@
+package dgm.configuration.javascript;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mozilla.javascript.*;
+
+import java.util.*;
+
+/**
+ * Converts between Jackson trees and Rhino values without going through JSON text.
+ * <p/>
+ * JSON objects are handed to scripts as lazy views: a field is only converted when the script reads it, so a large
+ * document costs work in proportion to the fields that are used. Script results are converted straight into
+ * {@link JsonNode}s following the rules of {@code JSON.stringify}; untouched parts of a view are taken over from
+ * the original tree as they are.
+ */
+public final class JsonBridge
+{
+    private JsonBridge() {}
+
+    /**
+     * Convert a JSON value to a value that can be passed to a script
+     */
+    public static Object toScript(Context cx, Scriptable scope, JsonNode node)
+    {
+        if(node == null || node.isNull() || node.isMissingNode())
+            return null;
+
+        if(node.isObject())
+            return new JsonObjectView(scope, (ObjectNode) node);
+
+        if(node.isArray())
+        {
+            final Object[] elements = new Object[node.size()];
+            for(int i = 0; i < elements.length; i++)
+                elements[i] = toScript(cx, scope, node.get(i));
+
+            return cx.newArray(scope, elements);
+        }
+
+        if(node.isTextual())
+            return node.textValue();
+
+        if(node.isBoolean())
+            return node.booleanValue();
+
+        if(node.isInt())
+            return node.intValue();
+
+        if(node.isNumber())
+            return node.doubleValue();
+
+        // binary and POJO nodes
+        return node.asText();
+    }
+
+    /**
+     * Convert a value returned by a script to a JSON value, {@code undefined} and functions become {@code null}.
+     * <p/>
+     * The result may share nested objects that the script didn't change with the input, but never its top level
+     * object: callers can add fields to the result without changing the input.
+     */
+    public static JsonNode toJson(JsonNodeFactory factory, Object value)
+    {
+        final JsonNode node = convert(factory, value, "", new IdentityHashMap<Object, Boolean>());
+        if(node == null)
+            return factory.nullNode();
+
+        // an unchanged view is converted to its own input node
+        if(value instanceof JsonObjectView && ((JsonObjectView) value).unchanged())
+            return factory.objectNode().putAll((ObjectNode) node);
+
+        return node;
+    }
+
+    /**
+     * @return {@code null} for values that {@code JSON.stringify} leaves out
+     */
+    static JsonNode convert(JsonNodeFactory factory, Object value, Object key, Map<Object, Boolean> ancestors)
+    {
+        if(value == null)
+            return factory.nullNode();
+
+        if(value instanceof Wrapper)
+            value = ((Wrapper) value).unwrap();
+
+        if(value == Undefined.instance || value instanceof Function)
+            return null;
+
+        if(value instanceof CharSequence)
+            return factory.textNode(value.toString());
+
+        if(value instanceof Boolean)
+            return factory.booleanNode((Boolean) value);
+
+        if(value instanceof Number)
+            return number(factory, (Number) value);
+
+        if(value instanceof JsonObjectView)
+            return ((JsonObjectView) value).toJson(factory, ancestors);
+
+        if(value instanceof Scriptable)
+        {
+            final Scriptable s = (Scriptable) value;
+
+            // dates and other objects that know how to represent themselves
+            final Object toJSON = ScriptableObject.getProperty(s, "toJSON");
+            if(toJSON instanceof Function)
+                return convert(factory, ScriptableObject.callMethod(s, "toJSON", new Object[]{key}), key, ancestors);
+
+            if(ancestors.put(s, Boolean.TRUE) != null)
+                throw new IllegalArgumentException("Cannot convert a cyclic structure to JSON");
+
+            try
+            {
+                if(s instanceof NativeArray)
+                    return array(factory, (NativeArray) s, ancestors);
+
+                final ObjectNode result = factory.objectNode();
+                for(Object id : s.getIds())
+                    putField(factory, result, id.toString(), property(s, id), ancestors);
+
+                return result;
+            }
+            finally
+            {
+                ancestors.remove(s);
+            }
+        }
+
+        // some other Java object
+        return factory.textNode(value.toString());
+    }
+
+    static void putField(JsonNodeFactory factory, ObjectNode target, String name, Object value, Map<Object, Boolean> ancestors)
+    {
+        final JsonNode n = convert(factory, value, name, ancestors);
+        if(n != null)
+            target.put(name, n);
+    }
+
+    static Object property(Scriptable s, Object id)
+    {
+        if(id instanceof Integer)
+            return ScriptableObject.getProperty(s, (Integer) id);
+
+        return ScriptableObject.getProperty(s, id.toString());
+    }
+
+    private static ArrayNode array(JsonNodeFactory factory, NativeArray a, Map<Object, Boolean> ancestors)
+    {
+        final ArrayNode result = factory.arrayNode();
+        final long length = a.getLength();
+        for(int i = 0; i < length; i++)
+        {
+            final Object element = ScriptableObject.getProperty(a, i);
+            final JsonNode n = element == Scriptable.NOT_FOUND ? null : convert(factory, element, i, ancestors);
+
+            result.add(n == null ? factory.nullNode() : n);
+        }
+
+        return result;
+    }
+
+    private static JsonNode number(JsonNodeFactory factory, Number n)
+    {
+        if(n instanceof Integer || n instanceof Short || n instanceof Byte)
+            return factory.numberNode(n.intValue());
+
+        if(n instanceof Long)
+            return factory.numberNode(n.longValue());
+
+        final double d = n.doubleValue();
+        if(Double.isNaN(d) || Double.isInfinite(d))
+            return factory.nullNode();
+
+        // javascript has no integers, but JSON.stringify writes integral numbers without a fraction
+        if(d == Math.rint(d))
+        {
+            if(d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE)
+                return factory.numberNode((int) d);
+
+            if(d >= Long.MIN_VALUE && d <= Long.MAX_VALUE)
+                return factory.numberNode((long) d);
+        }
+
+        return factory.numberNode(d);
+    }
+}
+
+/**
+ * Script view on a JSON object. Fields are converted and copied into the property slots of this object the first
+ * time they are looked up; writes and deletes go to the slots only, the underlying tree is never changed.
+ */
+final class JsonObjectView extends ScriptableObject
+{
+    private final ObjectNode node;
+
+    // fields that were copied into the slots, or deleted or written by the script
+    private final Set<String> materialized = new HashSet<String>();
+    private boolean modified = false;
+    private boolean complete = false;
+
+    JsonObjectView(Scriptable scope, ObjectNode node)
+    {
+        super(scope, ScriptableObject.getObjectPrototype(scope));
+        this.node = node;
+    }
+
+    @Override
+    public String getClassName()
+    {
+        return "Object";
+    }
+
+    private void materialize(String name)
+    {
+        if(!materialized.add(name))
+            return;
+
+        final JsonNode child = node.get(name);
+        if(child == null)
+            return;
+
+        final Object value = JsonBridge.toScript(Context.getCurrentContext(), getParentScope(), child);
+        final int index = index(name);
+        if(index >= 0)
+            super.put(index, this, value);
+        else
+            super.put(name, this, value);
+    }
+
+    private void materializeAll()
+    {
+        if(complete)
+            return;
+
+        final Iterator<String> names = node.fieldNames();
+        while(names.hasNext())
+            materialize(names.next());
+
+        complete = true;
+    }
+
+    @Override
+    public Object get(String name, Scriptable start)
+    {
+        materialize(name);
+        return super.get(name, start);
+    }
+
+    @Override
+    public Object get(int index, Scriptable start)
+    {
+        materialize(Integer.toString(index));
+        return super.get(index, start);
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start)
+    {
+        materialize(name);
+        return super.has(name, start);
+    }
+
+    @Override
+    public boolean has(int index, Scriptable start)
+    {
+        materialize(Integer.toString(index));
+        return super.has(index, start);
+    }
+
+    @Override
+    public void put(String name, Scriptable start, Object value)
+    {
+        materialized.add(name);
+        modified = true;
+        super.put(name, start, value);
+    }
+
+    @Override
+    public void put(int index, Scriptable start, Object value)
+    {
+        materialized.add(Integer.toString(index));
+        modified = true;
+        super.put(index, start, value);
+    }
+
+    @Override
+    public void delete(String name)
+    {
+        materialized.add(name);
+        modified = true;
+        super.delete(name);
+    }
+
+    @Override
+    public void delete(int index)
+    {
+        materialized.add(Integer.toString(index));
+        modified = true;
+        super.delete(index);
+    }
+
+    @Override
+    public Object[] getIds()
+    {
+        materializeAll();
+        return super.getIds();
+    }
+
+    @Override
+    public Object[] getAllIds()
+    {
+        materializeAll();
+        return super.getAllIds();
+    }
+
+    /**
+     * True if the script did not change this object or any object or array it read from it
+     */
+    final boolean unchanged()
+    {
+        if(modified)
+            return false;
+
+        for(String name : materialized)
+        {
+            final Object value = slot(name);
+            if(value instanceof JsonObjectView && !((JsonObjectView) value).unchanged())
+                return false;
+
+            // arrays are copied to native arrays, we cannot tell if they were changed
+            if(value instanceof NativeArray)
+                return false;
+        }
+
+        return true;
+    }
+
+    private Object slot(String name)
+    {
+        final int index = index(name);
+        if(index >= 0)
+            return super.get(index, this);
+
+        return super.get(name, this);
+    }
+
+    JsonNode toJson(JsonNodeFactory factory, Map<Object, Boolean> ancestors)
+    {
+        if(unchanged())
+            return node;
+
+        if(ancestors.put(this, Boolean.TRUE) != null)
+            throw new IllegalArgumentException("Cannot convert a cyclic structure to JSON");
+
+        try
+        {
+            final ObjectNode result = factory.objectNode();
+
+            // keep the field order of the original object, fields the script never looked at are taken over as is
+            final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while(fields.hasNext())
+            {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                final String name = field.getKey();
+
+                if(!materialized.contains(name))
+                    result.put(name, field.getValue());
+                else
+                {
+                    final Object value = slot(name);
+                    if(value != NOT_FOUND)
+                        JsonBridge.putField(factory, result, name, value, ancestors);
+                }
+            }
+
+            // fields added by the script
+            for(Object id : super.getIds())
+            {
+                final String name = id.toString();
+                if(!node.has(name))
+                    JsonBridge.putField(factory, result, name, JsonBridge.property(this, id), ancestors);
+            }
+
+            return result;
+        }
+        finally
+        {
+            ancestors.remove(this);
+        }
+    }
+
+    /**
+     * Rhino stores properties named like an array index in index slots
+     */
+    private static int index(String name)
+    {
+        final int length = name.length();
+        if(length == 0 || length > 10 || (length > 1 && name.charAt(0) == '0'))
+            return -1;
+
+        long value = 0;
+        for(int i = 0; i < length; i++)
+        {
+            final char c = name.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+}
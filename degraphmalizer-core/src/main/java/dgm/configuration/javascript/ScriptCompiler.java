@@ -0,0 +1,240 @@
+package dgm.configuration.javascript;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CharStreams;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+
+/**
+ * Compiles configuration scripts with a configurable Rhino optimization level.
+ * <p/>
+ * With an optimization level of 0 or higher Rhino compiles scripts to Java classes. If a cache directory is given,
+ * the class files are stored there, keyed by a hash of the source, file name, optimization level and Rhino
+ * version. Unchanged scripts are then loaded from the cache instead of being compiled again on a restart or
+ * configuration reload. The cache holds one entry per script file and optimization level, the entry of the previous
+ * version of an edited script is removed when the new version is stored.
+ */
+public class ScriptCompiler
+{
+    private static final Logger log = LoggerFactory.getLogger(ScriptCompiler.class);
+
+    /**
+     * Optimization level to run scripts in the interpreter, nothing is cached at this level
+     */
+    public static final int INTERPRETED = -1;
+
+    private static final String CLASS_PREFIX = "dgm.configuration.javascript.compiled.Script";
+
+    private final int optimizationLevel;
+    private final File cacheDirectory;
+
+    /**
+     * Compile at Rhino's default optimization level without caching.
+     */
+    public ScriptCompiler()
+    {
+        this(0, null);
+    }
+
+    /**
+     * @param optimizationLevel Rhino optimization level, -1 (interpreted) to 9
+     * @param cacheDirectory Directory to store compiled scripts, or {@code null} to disable caching
+     */
+    public ScriptCompiler(int optimizationLevel, File cacheDirectory)
+    {
+        Context.checkOptimizationLevel(optimizationLevel);
+
+        this.optimizationLevel = optimizationLevel;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public final int optimizationLevel()
+    {
+        return optimizationLevel;
+    }
+
+    /**
+     * Compile a script, the context is switched to the configured optimization level.
+     */
+    public final Script compile(Context cx, Reader reader, String sourceName) throws IOException
+    {
+        if(cx.getOptimizationLevel() != optimizationLevel)
+            cx.setOptimizationLevel(optimizationLevel);
+
+        final String source;
+        try
+        {
+            source = CharStreams.toString(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if(optimizationLevel == INTERPRETED || cacheDirectory == null)
+            return cx.compileString(source, sourceName, 0, null);
+
+        final String key = cacheKey(cx, source, sourceName);
+        final String prefix = entryPrefix(sourceName);
+        final File cacheFile = new File(cacheDirectory, prefix + key + ".jsclass");
+
+        Object[] classFiles = null;
+        if(cacheFile.isFile())
+            classFiles = readClassFiles(cacheFile);
+
+        if(classFiles == null)
+        {
+            final CompilerEnvirons env = new CompilerEnvirons();
+            env.initFromContext(cx);
+
+            classFiles = new ClassCompiler(env).compileToClassFiles(source, sourceName, 0, CLASS_PREFIX + key);
+            writeClassFiles(cacheFile, classFiles);
+            removeOtherEntries(prefix, cacheFile);
+
+            log.debug("Compiled {} and stored it in the script cache as {}", sourceName, cacheFile);
+        }
+        else
+            log.debug("Loaded {} from the script cache", sourceName);
+
+        return loadScript(cx, classFiles);
+    }
+
+    private String cacheKey(Context cx, String source, String sourceName)
+    {
+        final String s = cx.getImplementationVersion() + '\u0000' + optimizationLevel + '\u0000' + sourceName + '\u0000' + source;
+        return Hashing.sha1().hashBytes(s.getBytes(Charsets.UTF_8)).toString();
+    }
+
+    /**
+     * All entries of a script file at this optimization level start with this prefix
+     */
+    private String entryPrefix(String sourceName)
+    {
+        final String s = optimizationLevel + "\u0000" + sourceName;
+        return Hashing.sha1().hashBytes(s.getBytes(Charsets.UTF_8)).toString() + ".";
+    }
+
+    /**
+     * Remove the entries of earlier versions of the script
+     */
+    private void removeOtherEntries(final String prefix, final File current)
+    {
+        final File[] entries = cacheDirectory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(prefix) && name.endsWith(".jsclass") && !name.equals(current.getName());
+            }
+        });
+
+        if(entries == null)
+            return;
+
+        for(File entry : entries)
+            if(!entry.delete())
+                log.warn("Could not remove old script cache file {}", entry);
+    }
+
+    /**
+     * The first class is the script itself, the other classes are the functions defined in the script.
+     */
+    private static Script loadScript(Context cx, Object[] classFiles)
+    {
+        final GeneratedClassLoader loader = cx.createClassLoader(ScriptCompiler.class.getClassLoader());
+
+        Class<?> scriptClass = null;
+        for(int i = 0; i < classFiles.length; i += 2)
+        {
+            final Class<?> c = loader.defineClass((String) classFiles[i], (byte[]) classFiles[i + 1]);
+            if(scriptClass == null)
+                scriptClass = c;
+        }
+
+        loader.linkClass(scriptClass);
+
+        try
+        {
+            return (Script) scriptClass.newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException("Cannot instantiate compiled script " + scriptClass.getName(), e);
+        }
+    }
+
+    private static Object[] readClassFiles(File file)
+    {
+        try
+        {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                final Object[] classFiles = new Object[in.readInt() * 2];
+                for(int i = 0; i < classFiles.length; i += 2)
+                {
+                    classFiles[i] = in.readUTF();
+
+                    final byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    classFiles[i + 1] = bytes;
+                }
+
+                return classFiles;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Ignoring unreadable script cache file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeClassFiles(File file, Object[] classFiles)
+    {
+        // write to a temporary file first, so concurrent readers never see a partial file
+        final File tmp = new File(file.getPath() + ".tmp");
+        try
+        {
+            if(!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+                throw new IOException("Cannot create directory " + cacheDirectory);
+
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try
+            {
+                out.writeInt(classFiles.length / 2);
+                for(int i = 0; i < classFiles.length; i += 2)
+                {
+                    final byte[] bytes = (byte[]) classFiles[i + 1];
+                    out.writeUTF((String) classFiles[i]);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if(!tmp.renameTo(file))
+                throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not write script cache file {}: {}", file, e.getMessage());
+            tmp.delete();
+        }
+    }
+}
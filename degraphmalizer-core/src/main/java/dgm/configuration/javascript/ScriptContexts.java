@@ -0,0 +1,133 @@
+package dgm.configuration.javascript;
+
+import com.google.common.collect.MapMaker;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rhino contexts and scopes for running configuration functions from many threads at once.
+ * <p/>
+ * A Rhino context belongs to a single thread, so every thread that runs scripts gets its own context. It is entered
+ * the first time the thread runs a script and stays entered, later calls reuse it. Each thread also gets its own
+ * child scope of the sealed root scope of a configuration, so no script state is shared between threads. Scopes are
+ * only held weakly, so the root scope of a replaced configuration can be collected.
+ * <p/>
+ * Use as:
+ * <pre>
+ *     final Context cx = contexts.enter();
+ *     try { ... } finally { contexts.exit(); }
+ * </pre>
+ */
+@Singleton
+public class ScriptContexts implements ScriptContextsMBean
+{
+    private final ThreadLocal<ConcurrentMap<Scriptable, Scriptable>> scopes = new ThreadLocal<ConcurrentMap<Scriptable, Scriptable>>()
+    {
+        @Override
+        protected ConcurrentMap<Scriptable, Scriptable> initialValue()
+        {
+            // the child scope refers to its root as prototype, so a strong value would keep the root of a replaced
+            // configuration reachable. With weak values a scope may be created again after a collection.
+            return new MapMaker().weakKeys().weakValues().makeMap();
+        }
+    };
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong contexts = new AtomicLong();
+    private final AtomicLong childScopes = new AtomicLong();
+
+    /**
+     * Get the context of the current thread and register the start of a script execution.
+     */
+    public final Context enter()
+    {
+        Context cx = Context.getCurrentContext();
+        if(cx == null)
+        {
+            // not exited again, the context stays with this thread
+            cx = Context.enter();
+            contexts.incrementAndGet();
+        }
+
+        executions.incrementAndGet();
+
+        final int running = active.incrementAndGet();
+        int max = peak.get();
+        while(running > max && !peak.compareAndSet(max, running))
+            max = peak.get();
+
+        return cx;
+    }
+
+    /**
+     * Register the end of a script execution started with {@link #enter()}
+     */
+    public final void exit()
+    {
+        active.decrementAndGet();
+    }
+
+    /**
+     * The scope of the current thread for running functions defined in {@code root}
+     */
+    public final Scriptable scope(Context cx, Scriptable root)
+    {
+        final ConcurrentMap<Scriptable, Scriptable> threadScopes = scopes.get();
+
+        Scriptable scope = threadScopes.get(root);
+        if(scope == null)
+        {
+            scope = cx.newObject(root);
+            scope.setPrototype(root);
+            scope.setParentScope(null);
+
+            threadScopes.put(root, scope);
+            childScopes.incrementAndGet();
+        }
+
+        return scope;
+    }
+
+    @Override
+    public final int getActiveExecutions()
+    {
+        return active.get();
+    }
+
+    @Override
+    public final int getPeakExecutions()
+    {
+        return peak.get();
+    }
+
+    @Override
+    public final long getExecutions()
+    {
+        return executions.get();
+    }
+
+    @Override
+    public final long getContexts()
+    {
+        return contexts.get();
+    }
+
+    @Override
+    public final long getScopes()
+    {
+        return childScopes.get();
+    }
+
+    @Override
+    public final void resetPeak()
+    {
+        peak.set(active.get());
+    }
+}
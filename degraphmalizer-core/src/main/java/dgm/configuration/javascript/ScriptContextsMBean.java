@@ -0,0 +1,34 @@
+package dgm.configuration.javascript;
+
+public interface ScriptContextsMBean
+{
+    /**
+     * Number of configuration functions running right now
+     */
+    int getActiveExecutions();
+
+    /**
+     * Highest number of configuration functions that ran at the same time
+     */
+    int getPeakExecutions();
+
+    /**
+     * Total number of configuration function calls
+     */
+    long getExecutions();
+
+    /**
+     * Number of threads that got a Rhino context
+     */
+    long getContexts();
+
+    /**
+     * Number of per thread scopes created
+     */
+    long getScopes();
+
+    /**
+     * Start measuring the peak from the current number of running functions.
+     */
+    void resetPeak();
+}
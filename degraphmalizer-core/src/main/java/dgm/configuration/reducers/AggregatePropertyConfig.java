@@ -0,0 +1,87 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dgm.configuration.EdgeAggregateConfig;
+import dgm.configuration.WalkConfig;
+import dgm.exceptions.ConfigurationException;
+import dgm.graphs.EdgeAggregate;
+import dgm.modules.elasticsearch.ResolvedPathElement;
+import dgm.trees.Tree;
+
+/**
+ * Walk property read from an {@link EdgeAggregate} of the vertex of the document.
+ * <p/>
+ * Declared in a walk with an {@code aggregate} of {@code count}, {@code sum} or {@code set}, an edge property
+ * {@code field} for sum and set, and an optional edge {@code label}:
+ * <pre>
+ * properties: {
+ *     "children": { aggregate: "count", label: "child" },
+ *     "weight":   { aggregate: "sum", field: "weight" },
+ *     "roles":    { aggregate: "set", field: "role" }
+ * }
+ * </pre>
+ */
+public class AggregatePropertyConfig implements EdgeAggregateConfig
+{
+    final ObjectMapper om;
+    final String name;
+    final EdgeAggregate aggregate;
+    final WalkConfig walkConfig;
+
+    public AggregatePropertyConfig(ObjectMapper om, String name, EdgeAggregate aggregate, WalkConfig walkConfig)
+    {
+        this.om = om;
+        this.name = name;
+        this.aggregate = aggregate;
+        this.walkConfig = walkConfig;
+    }
+
+    /**
+     * Create the aggregate for a walk from its declaration
+     */
+    public static EdgeAggregate aggregate(WalkConfig walk, String kind, String label, String field)
+    {
+        final EdgeAggregate.Kind k;
+        try
+        {
+            k = EdgeAggregate.Kind.valueOf(kind.toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException("Unknown aggregate " + kind);
+        }
+
+        if(k != EdgeAggregate.Kind.COUNT && field == null)
+            throw new ConfigurationException("Aggregate " + kind + " needs a field");
+
+        return new EdgeAggregate(k, walk.direction(), label, field);
+    }
+
+    @Override
+    public EdgeAggregate aggregate()
+    {
+        return aggregate;
+    }
+
+    @Override
+    public String name()
+    {
+        return name;
+    }
+
+    /**
+     * Computed from the edges, the recomputer reads the maintained state through the {@link dgm.graphs.EdgeAggregates}
+     */
+    @Override
+    public JsonNode reduce(Tree<ResolvedPathElement> tree)
+    {
+        return aggregate.read(om, tree.value().vertex(), null);
+    }
+
+    @Override
+    public WalkConfig walk()
+    {
+        return walkConfig;
+    }
+}
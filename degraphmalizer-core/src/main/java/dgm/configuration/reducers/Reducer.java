@@ -0,0 +1,17 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+
+/**
+ * A built-in reduction over the documents found by a walk, see {@link Reducers}.
+ */
+public interface Reducer
+{
+    /**
+     * @param sources The sources of the documents found by the walk, the document that is walked from is not included
+     */
+    JsonNode reduce(Iterable<BytesReference> sources) throws IOException;
+}
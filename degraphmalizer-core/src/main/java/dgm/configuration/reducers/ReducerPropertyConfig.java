@@ -0,0 +1,75 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Optional;
+import dgm.configuration.PropertyConfig;
+import dgm.configuration.WalkConfig;
+import dgm.modules.elasticsearch.ResolvedPathElement;
+import dgm.trees.Tree;
+import dgm.trees.Trees;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Walk property computed by a built-in {@link Reducer} over all documents found by the walk.
+ */
+public class ReducerPropertyConfig implements PropertyConfig
+{
+    private static final Logger log = LoggerFactory.getLogger(ReducerPropertyConfig.class);
+
+    final String name;
+    final Reducer reducer;
+    final WalkConfig walkConfig;
+
+    public ReducerPropertyConfig(String name, Reducer reducer, WalkConfig walkConfig)
+    {
+        this.name = name;
+        this.reducer = reducer;
+        this.walkConfig = walkConfig;
+    }
+
+    @Override
+    public String name()
+    {
+        return name;
+    }
+
+    @Override
+    public JsonNode reduce(Tree<ResolvedPathElement> tree)
+    {
+        final List<BytesReference> sources = new ArrayList<BytesReference>();
+
+        // skip the root, that is the document itself
+        final Iterator<ResolvedPathElement> elements = Trees.bfsWalk(tree).iterator();
+        elements.next();
+
+        while(elements.hasNext())
+        {
+            final Optional<BytesReference> source = elements.next().source();
+            if(source.isPresent())
+                sources.add(source.get());
+        }
+
+        try
+        {
+            return reducer.reduce(sources);
+        }
+        catch (IOException e)
+        {
+            log.error("Could not reduce property {}: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public WalkConfig walk()
+    {
+        return walkConfig;
+    }
+}
@@ -0,0 +1,260 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import dgm.exceptions.ConfigurationException;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Built-in reducers for walk properties that need no javascript.
+ * <p/>
+ * A property is declared with a {@code reducer} instead of a {@code reduce} function:
+ * <pre>
+ * properties: {
+ *     "children":     { reducer: "count" },
+ *     "names":        { reducer: "collect", field: "name" },
+ *     "tags":         { reducer: "distinct", field: "labels.tags" },
+ *     "lowest-price": { reducer: "min", field: "price" },
+ *     "newest":       { reducer: "first", field: "date", order: "desc", size: 3 }
+ * }
+ * </pre>
+ * <ul>
+ * <li>{@code count}: the number of documents</li>
+ * <li>{@code collect}: a list with the values of the field, array values are added element by element</li>
+ * <li>{@code distinct}: like collect, but every value only once</li>
+ * <li>{@code min}, {@code max}, {@code sum}: of the numeric values of the field, {@code null} (or 0 for sum) if there are none</li>
+ * <li>{@code first}: the {@code size} documents (default 1) with the lowest value of the field, or the highest if
+ * {@code order} is {@code "desc"}. Documents without the field come last.</li>
+ * </ul>
+ * Fields of nested objects are addressed with dots.
+ */
+public final class Reducers
+{
+    private Reducers() {}
+
+    /**
+     * @param field Field of the documents the reducer uses, may be {@code null} for count
+     * @param size Number of documents for first
+     * @param descending Sort order for first
+     */
+    public static Reducer reducer(ObjectMapper om, String type, String field, int size, boolean descending)
+    {
+        if("count".equals(type))
+            return new Count(om);
+
+        if(field == null)
+            throw new ConfigurationException("Reducer " + type + " needs a field");
+
+        final String[] path = field.split("\\.");
+
+        if("collect".equals(type))
+            return new Collect(om, path, false);
+        if("distinct".equals(type))
+            return new Collect(om, path, true);
+        if("min".equals(type))
+            return new Numeric(om, path, Numeric.MIN);
+        if("max".equals(type))
+            return new Numeric(om, path, Numeric.MAX);
+        if("sum".equals(type))
+            return new Numeric(om, path, Numeric.SUM);
+
+        if("first".equals(type))
+        {
+            if(size < 1)
+                throw new ConfigurationException("Reducer first needs a size of at least 1");
+
+            return new First(om, path, size, descending);
+        }
+
+        throw new ConfigurationException("Unknown reducer " + type);
+    }
+
+    static boolean missing(JsonNode value)
+    {
+        return value == null || value.isNull();
+    }
+
+    static final class Count implements Reducer
+    {
+        final ObjectMapper om;
+
+        Count(ObjectMapper om)
+        {
+            this.om = om;
+        }
+
+        @Override
+        public JsonNode reduce(Iterable<BytesReference> sources)
+        {
+            int count = 0;
+            for(BytesReference ignored : sources)
+                count++;
+
+            return om.getNodeFactory().numberNode(count);
+        }
+    }
+
+    static final class Collect implements Reducer
+    {
+        final ObjectMapper om;
+        final String[] path;
+        final boolean distinct;
+
+        Collect(ObjectMapper om, String[] path, boolean distinct)
+        {
+            this.om = om;
+            this.path = path;
+            this.distinct = distinct;
+        }
+
+        @Override
+        public JsonNode reduce(Iterable<BytesReference> sources) throws IOException
+        {
+            final ArrayNode result = om.createArrayNode();
+            final Set<JsonNode> seen = new HashSet<JsonNode>();
+
+            for(BytesReference source : sources)
+            {
+                final JsonNode value = SourceFields.read(om, source, path);
+                if(missing(value))
+                    continue;
+
+                if(value.isArray())
+                    for(JsonNode element : value)
+                        add(result, seen, element);
+                else
+                    add(result, seen, value);
+            }
+
+            return result;
+        }
+
+        private void add(ArrayNode result, Set<JsonNode> seen, JsonNode value)
+        {
+            if(!distinct || seen.add(value))
+                result.add(value);
+        }
+    }
+
+    static final class Numeric implements Reducer
+    {
+        static final int MIN = 0;
+        static final int MAX = 1;
+        static final int SUM = 2;
+
+        final ObjectMapper om;
+        final String[] path;
+        final int operation;
+
+        Numeric(ObjectMapper om, String[] path, int operation)
+        {
+            this.om = om;
+            this.path = path;
+            this.operation = operation;
+        }
+
+        @Override
+        public JsonNode reduce(Iterable<BytesReference> sources) throws IOException
+        {
+            JsonNode result = null;
+            double sum = 0;
+            boolean integral = true;
+
+            for(BytesReference source : sources)
+            {
+                final JsonNode value = SourceFields.read(om, source, path);
+                if(missing(value))
+                    continue;
+
+                for(JsonNode n : value.isArray() ? value : Collections.singletonList(value))
+                {
+                    if(!n.isNumber())
+                        continue;
+
+                    if(operation == SUM)
+                    {
+                        sum += n.doubleValue();
+                        integral &= n.isIntegralNumber();
+                    }
+                    else if(result == null
+                            || (operation == MIN && n.doubleValue() < result.doubleValue())
+                            || (operation == MAX && n.doubleValue() > result.doubleValue()))
+                        result = n;
+                }
+            }
+
+            if(operation == SUM)
+                return integral ? om.getNodeFactory().numberNode((long) sum) : om.getNodeFactory().numberNode(sum);
+
+            return result == null ? om.getNodeFactory().nullNode() : result;
+        }
+    }
+
+    static final class First implements Reducer
+    {
+        final ObjectMapper om;
+        final String[] path;
+        final int size;
+        final boolean descending;
+
+        First(ObjectMapper om, String[] path, int size, boolean descending)
+        {
+            this.om = om;
+            this.path = path;
+            this.size = size;
+            this.descending = descending;
+        }
+
+        @Override
+        public JsonNode reduce(Iterable<BytesReference> sources) throws IOException
+        {
+            // first find the sort keys, only the documents that end up in the result are parsed completely
+            final List<Keyed> keyed = new ArrayList<Keyed>();
+            for(BytesReference source : sources)
+                keyed.add(new Keyed(SourceFields.read(om, source, path), source));
+
+            Collections.sort(keyed, new Comparator<Keyed>()
+            {
+                @Override
+                public int compare(Keyed a, Keyed b)
+                {
+                    if(missing(a.key) || missing(b.key))
+                        return (missing(a.key) ? 1 : 0) - (missing(b.key) ? 1 : 0);
+
+                    final int c = compareValues(a.key, b.key);
+                    return descending ? -c : c;
+                }
+            });
+
+            final ArrayNode result = om.createArrayNode();
+            for(Keyed k : keyed.subList(0, Math.min(size, keyed.size())))
+                result.add(SourceFields.readAll(om, k.source));
+
+            return result;
+        }
+
+        static int compareValues(JsonNode a, JsonNode b)
+        {
+            if(a.isNumber() && b.isNumber())
+                return Double.compare(a.doubleValue(), b.doubleValue());
+
+            return a.asText().compareTo(b.asText());
+        }
+
+        static final class Keyed
+        {
+            final JsonNode key;
+            final BytesReference source;
+
+            Keyed(JsonNode key, BytesReference source)
+            {
+                this.key = key;
+                this.source = source;
+            }
+        }
+    }
+}
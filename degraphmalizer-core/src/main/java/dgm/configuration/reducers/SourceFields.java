@@ -0,0 +1,87 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+
+/**
+ * Read single fields from a document source without parsing the complete document.
+ */
+public final class SourceFields
+{
+    private SourceFields() {}
+
+    /**
+     * Read the value of a (nested) field, everything before and next to the field is skipped by the parser.
+     *
+     * @param path Field names from the root of the document, "a.b" is {"a","b"}
+     * @return The value, or {@code null} if the document doesn't have the field
+     */
+    public static JsonNode read(ObjectMapper om, BytesReference source, String[] path) throws IOException
+    {
+        final JsonParser parser = parser(om, source);
+        try
+        {
+            if(parser.nextToken() != JsonToken.START_OBJECT)
+                return null;
+
+            int depth = 0;
+            while(parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                if(!name.equals(path[depth]))
+                {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                if(depth == path.length - 1)
+                    return om.readTree(parser);
+
+                if(value != JsonToken.START_OBJECT)
+                    return null;
+
+                depth++;
+            }
+
+            return null;
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Parse the complete document
+     */
+    public static JsonNode readAll(ObjectMapper om, BytesReference source) throws IOException
+    {
+        final JsonParser parser = parser(om, source);
+        try
+        {
+            return om.readTree(parser);
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Parser on a document source, without copying the bytes if possible
+     */
+    public static JsonParser parser(ObjectMapper om, BytesReference source) throws IOException
+    {
+        if(source.hasArray())
+            return om.getJsonFactory().createJsonParser(source.array(), source.arrayOffset(), source.length());
+
+        return om.getJsonFactory().createJsonParser(source.streamInput());
+    }
+}
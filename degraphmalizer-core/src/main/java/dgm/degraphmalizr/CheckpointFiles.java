@@ -0,0 +1,53 @@
+package dgm.degraphmalizr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+/**
+ * Storage of the checkpoints of long running jobs, such as reindexes and rebuilds, as small JSON files in a directory
+ * of their own.
+ */
+public final class CheckpointFiles
+{
+    private CheckpointFiles()
+    {
+    }
+
+    /**
+     * Write a checkpoint, the old checkpoint is only replaced when the new one has been written completely
+     */
+    public static void write(ObjectMapper om, File file, JsonNode json) throws IOException
+    {
+        final File tmp = new File(file.getPath() + ".tmp");
+        om.writeValue(tmp, json);
+
+        if(!tmp.renameTo(file))
+        {
+            // not atomic, but some platforms don't rename over an existing file
+            file.delete();
+            if(!tmp.renameTo(file))
+                throw new IOException("Could not write checkpoint " + file);
+        }
+    }
+
+    /**
+     * The checkpoints in the directory, none if the directory doesn't exist
+     */
+    public static File[] list(File directory)
+    {
+        final File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(".json");
+            }
+        });
+
+        return files == null ? new File[0] : files;
+    }
+}
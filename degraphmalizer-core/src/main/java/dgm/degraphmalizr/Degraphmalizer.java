@@ -15,18 +15,23 @@ import com.tinkerpop.blueprints.Vertex;
 import dgm.*;
 import dgm.configuration.Configuration;
 import dgm.configuration.Configurations;
+import dgm.configuration.FieldProjection;
+import dgm.configuration.RoutingTable;
 import dgm.configuration.TypeConfig;
 import dgm.degraphmalizr.degraphmalize.*;
 import dgm.degraphmalizr.recompute.RecomputeCallback;
 import dgm.degraphmalizr.recompute.RecomputeRequest;
 import dgm.degraphmalizr.recompute.RecomputeResult;
 import dgm.degraphmalizr.recompute.Recomputer;
+import dgm.degraphmalizr.reindex.ReindexCheckpoint;
 import dgm.exceptions.*;
 import dgm.graphs.BlueprintsSubgraphManager;
+import dgm.graphs.EdgeAggregates;
 import dgm.graphs.Subgraphs;
 import dgm.modules.bindingannotations.Degraphmalizes;
 import dgm.modules.bindingannotations.Fetches;
 import dgm.modules.bindingannotations.Recomputes;
+import dgm.modules.bindingannotations.Reindexes;
 import dgm.modules.elasticsearch.QueryFunction;
 import dgm.trees.Pair;
 import dgm.trees.Tree;
@@ -38,12 +43,17 @@ import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestScope.DOCUMENT;
 
@@ -58,6 +68,7 @@ public class Degraphmalizer implements Degraphmalizr
     protected final SubgraphManager subgraphmanager;
 
     protected final ExecutorService degraphmalizeQueue;
+    protected final ExecutorService reindexQueue;
     protected final ExecutorService recomputeQueue;
     protected final ExecutorService fetchQueue;
 
@@ -65,22 +76,38 @@ public class Degraphmalizer implements Degraphmalizr
     protected final Recomputer recomputer;
 
     protected final Provider<Configuration> cfgProvider;
+    protected final EdgeAggregates edgeAggregates;
+
+    // documents of an index or type request in flight at the same time, and where their progress is kept
+    private final int reindexWindow;
+    private final String reindexCheckpoints;
 
     final ObjectMapper objectMapper;
 
+    // requests submitted to the queue that have not finished yet
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // seconds a client should wait when the queue is full
+    private static final int RETRY_AFTER = 1;
+
     @Inject
     public Degraphmalizer(Client client, SubgraphManager subgraphmanager, Graph graph,
                           @Degraphmalizes ExecutorService degraphmalizeQueue,
+                          @Reindexes ExecutorService reindexQueue,
                           @Fetches ExecutorService fetchQueue,
                           @Recomputes ExecutorService recomputeQueue,
                           QueryFunction queryFunction,
                           ObjectMapper objectMapper,
                           Recomputer recomputer,
-                          Provider<Configuration> configProvider)
+                          Provider<Configuration> configProvider,
+                          EdgeAggregates edgeAggregates,
+                          @Named("reindexWindow") int reindexWindow,
+                          @Named("reindexCheckpoints") String reindexCheckpoints)
 	{
         this.fetchQueue = fetchQueue;
         this.recomputeQueue = recomputeQueue;
         this.degraphmalizeQueue = degraphmalizeQueue;
+        this.reindexQueue = reindexQueue;
         this.graph = graph;
         this.subgraphmanager = subgraphmanager;
         this.client = client;
@@ -88,23 +115,49 @@ public class Degraphmalizer implements Degraphmalizr
         this.cfgProvider = configProvider;
         this.queryFn = queryFunction;
         this.objectMapper = objectMapper;
+        this.edgeAggregates = edgeAggregates;
+        this.reindexWindow = reindexWindow;
+        this.reindexCheckpoints = reindexCheckpoints;
 	}
 
     @Override
     public final Future<DegraphmalizeResult> degraphmalize(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, DegraphmalizeCallback callback)
     {
+        final Configuration cfg = cfgProvider.get();
+
+        // start maintaining the edge aggregates of a new configuration before its first commit
+        edgeAggregates.update(cfg);
+
         // find all matching configurations
-        final Iterable<TypeConfig> configs = Configurations.configsFor(cfgProvider.get(), id.index(), id.type());
+        final Iterable<TypeConfig> configs = Configurations.configsFor(cfg, id.index(), id.type());
 
         // we cannot handle this request!
         if(Iterables.isEmpty(configs))
             throw new NoConfiguration(id);
 
         // construct the action object
-        final DegraphmalizeRequest action = new DegraphmalizeRequest(requestType, requestScope, id, configs);
+        final DegraphmalizeRequest action = new DegraphmalizeRequest(requestType, requestScope, id, configs, cfg);
+
+        // whole indices and types are walked in the background, documents go straight to the degraphmalize thread
+        final ExecutorService queue = Lane.of(requestScope) == Lane.BACKGROUND ? reindexQueue : degraphmalizeQueue;
 
         // convert object into task and queue
-        return degraphmalizeQueue.submit(degraphmalizeJob(action, callback));
+        pending.incrementAndGet();
+        try
+        {
+            return queue.submit(degraphmalizeJob(action, callback));
+        }
+        catch (RejectedExecutionException e)
+        {
+            pending.decrementAndGet();
+            throw new Overloaded(pending.get(), RETRY_AFTER);
+        }
+    }
+
+    @Override
+    public final int pending()
+    {
+        return pending.get();
     }
 
     private Callable<DegraphmalizeResult> degraphmalizeJob(final DegraphmalizeRequest action, final DegraphmalizeCallback callback)
@@ -158,6 +211,10 @@ public class Degraphmalizer implements Degraphmalizr
                     callback.failed(we);
                     throw we;
                 }
+                finally
+                {
+                    pending.decrementAndGet();
+                }
             }
         };
     }
@@ -197,15 +254,17 @@ public class Degraphmalizer implements Degraphmalizr
         {
             case INDEX:
                 Iterable<Vertex> vertexIterator = GraphUtilities.findVerticesInIndex(graph, action.id().index());
-                results = updateDocuments(vertexIterator, action);
+                reindex(vertexIterator, action);
+                results = Collections.emptyList();
                 break;
             case TYPE_IN_INDEX:
                 Iterable<Vertex> vertexIterator2 = GraphUtilities.findVerticesInIndex(graph, action.id().index(), action.id().type());
-                results = updateDocuments(vertexIterator2, action);
+                reindex(vertexIterator2, action);
+                results = Collections.emptyList();
                 break;
             case DOCUMENT_ANY_VERSION:
                 Vertex vertex = GraphUtilities.resolveVertex(objectMapper, graph, action.id());
-                results = updateDocument(createDocumentRequestForVertex(action.type(), vertex));
+                results = updateDocument(createDocumentRequestForVertex(action, vertex));
                 break;
             case DOCUMENT:
                 results = updateDocument(action);
@@ -216,14 +275,189 @@ public class Degraphmalizer implements Degraphmalizr
         return new DegraphmalizeResult(action.id(), results);
     }
 
-    private List<Future<RecomputeResult>> updateDocuments(Iterable<Vertex> iterator, DegraphmalizeRequest action) throws ExecutionException, InterruptedException, IOException
+    /**
+     * Update or delete every vertex of an index or type.
+     * <p/>
+     * The ids of the vertices are read from the graph and sorted in {@link ReindexCheckpoint#ORDER}, at most
+     * {@code reindexWindow} documents are in flight at the same time. The results of a document are dropped as soon
+     * as they are counted, and after every window the last finished document is written to a {@link ReindexCheckpoint}
+     * so an interrupted reindex continues where it stopped.
+     */
+    private void reindex(Iterable<Vertex> vertices, DegraphmalizeRequest action) throws Exception
     {
-        final List<Future<RecomputeResult>> results = new ArrayList<Future<RecomputeResult>>();
-        for (Vertex vertex : iterator)
+        ReindexCheckpoint checkpoint = readCheckpoint(action);
+
+        // a delete removes the vertices it is done with, so there is nothing to skip
+        final boolean resume = action.type() == DegraphmalizeRequestType.UPDATE && checkpoint.last() != null;
+        if(resume)
+            log.info("Continuing {}", checkpoint);
+
+        final List<ID> ids = new ArrayList<ID>();
+        for(Vertex vertex : vertices)
         {
-            results.addAll(updateDocument(createDocumentRequestForVertex(action.type(), vertex)));
+            final ID id = GraphUtilities.getID(objectMapper, vertex);
+            if(id != null && !(resume && checkpoint.isDone(id)))
+                ids.add(id);
+        }
+        Collections.sort(ids, ReindexCheckpoint.ORDER);
+
+        final Deque<Future<List<Future<RecomputeResult>>>> window = new ArrayDeque<Future<List<Future<RecomputeResult>>>>();
+        final Deque<ID> inFlight = new ArrayDeque<ID>();
+        long done = checkpoint.done();
+        long failed = 0;
+
+        for(ID id : ids)
+        {
+            window.add(submitInBackground(documentJob(createDocumentRequest(action, id))));
+            inFlight.add(id);
+            if(window.size() < reindexWindow)
+                continue;
+
+            // wait for the oldest document, so the finished documents are always the first ones
+            if(!completed(window.poll()))
+                failed++;
+            final ID last = inFlight.poll();
+            done++;
+
+            if(done % reindexWindow == 0)
+            {
+                checkpoint = checkpoint.done(done, last);
+                writeCheckpoint(checkpoint);
+            }
+        }
+
+        while(!window.isEmpty())
+        {
+            if(!completed(window.poll()))
+                failed++;
+            done++;
+        }
+
+        if(!reindexCheckpoints.isEmpty())
+            checkpoint.delete(new File(reindexCheckpoints));
+
+        log.info("Finished {} of {} documents for {}, {} failed", new Object[]{action.type(), done, action.id(), failed});
+    }
+
+    private Callable<List<Future<RecomputeResult>>> documentJob(final DegraphmalizeRequest request)
+    {
+        return new Callable<List<Future<RecomputeResult>>>()
+        {
+            @Override
+            public List<Future<RecomputeResult>> call() throws Exception
+            {
+                switch (request.type())
+                {
+                    case UPDATE:
+                        return updateDocument(request);
+                    case DELETE:
+                        return deleteDocument(request);
+                    default:
+                        throw new UnreachableCodeReachedException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Submit a document of a reindex to the degraphmalize thread, in the background lane. Subgraph commits stay single
+     * threaded, and interactive requests wait for at most one document of the reindex.
+     */
+    private <T> Future<T> submitInBackground(Callable<T> job) throws InterruptedException
+    {
+        while(true)
+        {
+            try
+            {
+                return degraphmalizeQueue.submit(job);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the queue is full of interactive requests
+                Thread.sleep(TimeUnit.SECONDS.toMillis(RETRY_AFTER));
+            }
+        }
+    }
+
+    /**
+     * Wait for a document of a reindex and all its recomputes. Errors stop the reindex, like they fail a single request.
+     *
+     * @return {@code false} if the document or one of its recomputes failed
+     */
+    private boolean completed(Future<List<Future<RecomputeResult>>> document) throws Exception
+    {
+        try
+        {
+            boolean ok = true;
+            for(Future<RecomputeResult> recompute : document.get())
+                ok &= recomputed(recompute);
+
+            return ok;
+        }
+        catch (ExecutionException e)
+        {
+            return tolerated(e);
+        }
+    }
+
+    private boolean recomputed(Future<RecomputeResult> recompute) throws Exception
+    {
+        try
+        {
+            recompute.get();
+            return true;
+        }
+        catch (ExecutionException e)
+        {
+            return tolerated(e);
+        }
+    }
+
+    private boolean tolerated(ExecutionException e) throws Exception
+    {
+        if(!(e.getCause() instanceof DegraphmalizerException))
+            throw e;
+
+        final DegraphmalizerException de = (DegraphmalizerException) e.getCause();
+        if(de.severity() == DegraphmalizerException.Severity.ERROR)
+            throw de;
+
+        log.debug("Document of reindex failed: {}", de.getMessage());
+        return false;
+    }
+
+    private ReindexCheckpoint readCheckpoint(DegraphmalizeRequest action) throws IOException
+    {
+        final ID id = action.id();
+        final String type = action.scope() == DegraphmalizeRequestScope.INDEX ? null : id.type();
+        final ReindexCheckpoint start = new ReindexCheckpoint(action.type(), id.index(), type, 0, null);
+
+        if(reindexCheckpoints.isEmpty())
+            return start;
+
+        final ReindexCheckpoint checkpoint = ReindexCheckpoint.read(objectMapper, new File(reindexCheckpoints),
+                action.type(), id.index(), type);
+
+        return checkpoint == null ? start : checkpoint;
+    }
+
+    private void writeCheckpoint(ReindexCheckpoint checkpoint)
+    {
+        if(reindexCheckpoints.isEmpty())
+            return;
+
+        try
+        {
+            final File directory = new File(reindexCheckpoints);
+            if(!directory.isDirectory())
+                directory.mkdirs();
+
+            checkpoint.write(objectMapper, directory);
+        }
+        catch (IOException e)
+        {
+            log.warn("Cannot write reindex checkpoint: {}", e.getMessage());
         }
-        return results;
     }
 
     private List<Future<RecomputeResult>> updateDocument(DegraphmalizeRequest action) throws IOException, ExecutionException, InterruptedException
@@ -234,7 +468,7 @@ public class Degraphmalizer implements Degraphmalizr
         }
 
         // Get document from elasticsearch
-        final JsonNode jsonNode = getDocument(action.id());
+        final JsonNode jsonNode = getDocument(action.id(), extractedFields(action.configs()));
 
         // couldn't find source document, so we are done
         if (jsonNode == null)
@@ -276,11 +510,15 @@ public class Degraphmalizer implements Degraphmalizr
         log.info("Degraphmalize request for {} triggered compute of: {}", id, ids);
     }
 
-    private DegraphmalizeRequest createDocumentRequestForVertex(DegraphmalizeRequestType degraphmalizeRequestType, Vertex vertex)
+    private DegraphmalizeRequest createDocumentRequestForVertex(DegraphmalizeRequest action, Vertex vertex)
     {
-        ID id = GraphUtilities.getID(objectMapper, vertex);
-        Iterable<TypeConfig> typeConfigs = Configurations.configsFor(cfgProvider.get(), id.index(), id.type());
-        return new DegraphmalizeRequest(degraphmalizeRequestType, DOCUMENT, id, typeConfigs);
+        return createDocumentRequest(action, GraphUtilities.getID(objectMapper, vertex));
+    }
+
+    private DegraphmalizeRequest createDocumentRequest(DegraphmalizeRequest action, ID id)
+    {
+        Iterable<TypeConfig> typeConfigs = Configurations.configsFor(action.configuration(), id.index(), id.type());
+        return new DegraphmalizeRequest(action.type(), DOCUMENT, id, typeConfigs, action.configuration());
     }
 
     // TODO refactor (dubbeling met doUpdate DGM-44)
@@ -293,15 +531,17 @@ public class Degraphmalizer implements Degraphmalizr
         {
             case INDEX:
                 Iterable<Vertex> vertexIterator = GraphUtilities.findVerticesInIndex(graph, action.id().index());
-                results = deleteDocuments(vertexIterator, action);
+                reindex(vertexIterator, action);
+                results = Collections.emptyList();
                 break;
             case TYPE_IN_INDEX:
                 Iterable<Vertex> vertexIterator2 = GraphUtilities.findVerticesInIndex(graph, action.id().index(), action.id().type());
-                results = deleteDocuments(vertexIterator2, action);
+                reindex(vertexIterator2, action);
+                results = Collections.emptyList();
                 break;
             case DOCUMENT_ANY_VERSION:
                 Vertex vertex = GraphUtilities.resolveVertex(objectMapper, graph, action.id());
-                results = deleteDocument(createDocumentRequestForVertex(action.type(), vertex));
+                results = deleteDocument(createDocumentRequestForVertex(action, vertex));
                 break;
             case DOCUMENT:
                 results = deleteDocument(action);
@@ -312,16 +552,6 @@ public class Degraphmalizer implements Degraphmalizr
         return new DegraphmalizeResult(action.id(), results);
     }
 
-    private List<Future<RecomputeResult>> deleteDocuments(Iterable<Vertex> iterator, DegraphmalizeRequest action) throws ExecutionException, InterruptedException
-    {
-        final List<Future<RecomputeResult>> results = new ArrayList<Future<RecomputeResult>>();
-        for (Vertex vertex : iterator)
-        {
-            results.addAll(deleteDocument(createDocumentRequestForVertex(action.type(), vertex)));
-        }
-        return results;
-    }
-
     private List<Future<RecomputeResult>> deleteDocument(DegraphmalizeRequest action) throws ExecutionException, InterruptedException
     {
         if (!action.scope().equals(DOCUMENT))
@@ -356,7 +586,22 @@ public class Degraphmalizer implements Degraphmalizr
         return requests;
     }
 
-    private JsonNode getDocument(ID id) throws InterruptedException, ExecutionException, IOException
+    /**
+     * The fields read by the extract functions of all configurations
+     */
+    private static FieldProjection extractedFields(Iterable<TypeConfig> configs)
+    {
+        return FieldProjection.union(Iterables.transform(configs, new Function<TypeConfig, FieldProjection>()
+        {
+            @Override
+            public FieldProjection apply(TypeConfig input)
+            {
+                return input.fields();
+            }
+        }));
+    }
+
+    private JsonNode getDocument(ID id, FieldProjection fields) throws InterruptedException, ExecutionException, IOException
     {
         // get the source document from Elasticsearch
         final GetResponse resp = client.prepareGet(id.index(), id.type(), id.id()).execute().get();
@@ -369,7 +614,7 @@ public class Degraphmalizer implements Degraphmalizr
         if (resp.version() != id.version())
             throw new ExpiredException(id.version(resp.version()));
 
-        return objectMapper.readTree(resp.getSourceAsString());
+        return fields.read(objectMapper, resp.sourceRef());
     }
 
     private void generateSubgraph(DegraphmalizeRequest action, JsonNode document)
@@ -435,6 +680,8 @@ public class Degraphmalizer implements Degraphmalizr
         for (TypeConfig c : action.configs())
             recomputeRequests.add(new RecomputeRequest(vid, c));
 
+        final RoutingTable routes = Configurations.routingTable(action.configuration());
+
         // traverse graph in both direction, starting at the root
         log.debug("Computing tree in direction IN, starting at {}", root);
         final Tree<Pair<Edge,Vertex>> up = GraphUtilities.childrenFrom(root, Direction.IN);
@@ -465,7 +712,7 @@ public class Degraphmalizer implements Degraphmalizr
                 continue;
 
             // alright, mark for computation
-            for (TypeConfig c : Configurations.configsFor(cfgProvider.get(), v_id.id().index(), v_id.id().type()))
+            for (TypeConfig c : routes.configsFor(v_id.id().index(), v_id.id().type()))
                 recomputeRequests.add(new RecomputeRequest(v_id, c));
         }
 
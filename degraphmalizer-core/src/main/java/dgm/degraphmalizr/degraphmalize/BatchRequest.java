@@ -0,0 +1,59 @@
+package dgm.degraphmalizr.degraphmalize;
+
+import dgm.ID;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A number of document requests that are sent together.
+ * <p/>
+ * Only the latest change of a document is kept: the request with the highest version, or the delete if an update and
+ * a delete have the same version. The requests keep the order in which their documents first appeared.
+ */
+public class BatchRequest
+{
+    private final Map<String, JobRequest> requests = new LinkedHashMap<String, JobRequest>();
+    private int received = 0;
+
+    public final void add(JobRequest request)
+    {
+        received++;
+
+        final ID id = request.id();
+        final String key = id.index() + "/" + id.type() + "/" + id.id();
+
+        final JobRequest previous = requests.get(key);
+        if(previous == null || supersedes(request, previous))
+            requests.put(key, request);
+    }
+
+    private static boolean supersedes(JobRequest request, JobRequest previous)
+    {
+        final long version = request.id().version();
+        final long previousVersion = previous.id().version();
+
+        if(version != previousVersion)
+            return version > previousVersion;
+
+        return request.actionType() == DegraphmalizeRequestType.DELETE;
+    }
+
+    /**
+     * The requests that remain after removing the superseded ones
+     */
+    public final List<JobRequest> requests()
+    {
+        return new ArrayList<JobRequest>(requests.values());
+    }
+
+    /**
+     * Number of requests added, including the superseded ones
+     */
+    public final int received()
+    {
+        return received;
+    }
+}
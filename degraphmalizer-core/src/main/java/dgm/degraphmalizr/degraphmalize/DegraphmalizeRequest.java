@@ -5,6 +5,7 @@
 package dgm.degraphmalizr.degraphmalize;
 
 import dgm.ID;
+import dgm.configuration.Configuration;
 import dgm.configuration.TypeConfig;
 
 /**
@@ -17,14 +18,20 @@ public class DegraphmalizeRequest
     public final DegraphmalizeRequestScope requestScope;
     public final ID id;
     public final Iterable<TypeConfig> configs;
+    public final Configuration configuration;
 
 
-    public DegraphmalizeRequest(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, Iterable<TypeConfig> configs)
+    /**
+     * @param configuration The configuration used for the whole request, also for the documents it affects
+     */
+    public DegraphmalizeRequest(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id,
+                                Iterable<TypeConfig> configs, Configuration configuration)
     {
         this.requestType = requestType;
         this.requestScope = requestScope;
         this.id = id;
         this.configs = configs;
+        this.configuration = configuration;
     }
 
     public DegraphmalizeRequestType type()
@@ -46,4 +53,9 @@ public class DegraphmalizeRequest
     {
         return configs;
     }
+
+    public Configuration configuration()
+    {
+        return configuration;
+    }
 }
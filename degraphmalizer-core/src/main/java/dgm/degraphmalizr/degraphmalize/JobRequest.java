@@ -7,12 +7,22 @@ public class JobRequest
     private final DegraphmalizeRequestType requestType;
     private final DegraphmalizeRequestScope requestScope;
     private final ID id;
+    private final boolean respondAsync;
 
     public JobRequest(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id)
+    {
+        this(requestType, requestScope, id, false);
+    }
+
+    /**
+     * @param respondAsync The client wants an acknowledgement as soon as the request is queued
+     */
+    public JobRequest(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, boolean respondAsync)
     {
         this.requestType = requestType;
         this.requestScope = requestScope;
         this.id = id;
+        this.respondAsync = respondAsync;
     }
 
     public DegraphmalizeRequestType actionType()
@@ -29,4 +39,9 @@ public class JobRequest
     {
         return id;
     }
+
+    public boolean respondAsync()
+    {
+        return respondAsync;
+    }
 }
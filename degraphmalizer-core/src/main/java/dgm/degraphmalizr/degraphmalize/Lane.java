@@ -0,0 +1,59 @@
+package dgm.degraphmalizr.degraphmalize;
+
+/**
+ * Priority of the work for a request.
+ * <p/>
+ * Changes to single documents are interactive, reindexing a whole index or type runs in the background. Work that is
+ * submitted to an executor while running a task keeps the lane of that task, so fetches and recomputes started by a
+ * reindex are background work as well.
+ */
+public enum Lane
+{
+    INTERACTIVE, BACKGROUND;
+
+    private static final ThreadLocal<Lane> current = new ThreadLocal<Lane>()
+    {
+        @Override
+        protected Lane initialValue()
+        {
+            return INTERACTIVE;
+        }
+    };
+
+    public static Lane of(DegraphmalizeRequestScope scope)
+    {
+        switch (scope)
+        {
+            case INDEX:
+            case TYPE_IN_INDEX:
+                return BACKGROUND;
+            default:
+                return INTERACTIVE;
+        }
+    }
+
+    /**
+     * Lane of the task running in this thread
+     */
+    public static Lane current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Run in this lane until the returned lane is restored with {@link #restore(Lane)}
+     *
+     * @return The lane that was current before
+     */
+    public final Lane enter()
+    {
+        final Lane previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    public static void restore(Lane previous)
+    {
+        current.set(previous);
+    }
+}
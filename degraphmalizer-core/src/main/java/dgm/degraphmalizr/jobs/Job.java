@@ -0,0 +1,100 @@
+package dgm.degraphmalizr.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dgm.degraphmalizr.degraphmalize.JobRequest;
+
+/**
+ * A request that was acknowledged before it was executed, and what became of it
+ */
+public class Job
+{
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final JobRequest request;
+    private final long queued;
+
+    private volatile State state = State.QUEUED;
+    private volatile String message = null;
+    private volatile long started = 0;
+    private volatile long finished = 0;
+
+    Job(String id, JobRequest request)
+    {
+        this.id = id;
+        this.request = request;
+        this.queued = System.currentTimeMillis();
+    }
+
+    public final String id()
+    {
+        return id;
+    }
+
+    public final JobRequest request()
+    {
+        return request;
+    }
+
+    public final State state()
+    {
+        return state;
+    }
+
+    /**
+     * Why the job failed
+     */
+    public final String message()
+    {
+        return message;
+    }
+
+    final void started()
+    {
+        started = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    final void done()
+    {
+        finished = System.currentTimeMillis();
+        state = State.DONE;
+    }
+
+    final void failed(String message)
+    {
+        this.message = message;
+        finished = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+
+    public final ObjectNode toJSON(ObjectMapper om)
+    {
+        final ObjectNode n = om.createObjectNode();
+        n.put("job", id);
+        n.put("state", state.name().toLowerCase());
+        n.put("action", request.actionType().name().toLowerCase());
+        n.put("scope", request.actionScope().name().toLowerCase());
+        n.put("index", request.id().index());
+        n.put("type", request.id().type());
+        n.put("id", request.id().id());
+        n.put("version", request.id().version());
+        n.put("queued", queued);
+
+        if(started > 0)
+            n.put("started", started);
+        if(finished > 0)
+            n.put("finished", finished);
+        if(message != null)
+            n.put("message", message);
+
+        return n;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Job(" + id + ", " + state + ", " + request.id() + ")";
+    }
+}
@@ -0,0 +1,142 @@
+package dgm.degraphmalizr.jobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dgm.ID;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestScope;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestType;
+import dgm.degraphmalizr.degraphmalize.JobRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append only log of the jobs that were acknowledged but have not finished yet.
+ * <p/>
+ * Every job is written as {@code +id request} when it is queued and {@code -id} when it finishes. The journal is
+ * flushed after every line, so it survives a crash of the degraphmalizer (not of the machine). It is truncated whenever
+ * all jobs have finished, so it only grows while there is a backlog.
+ */
+class JobJournal
+{
+    private static final Logger log = LoggerFactory.getLogger(JobJournal.class);
+
+    private final ObjectMapper om;
+    private final File file;
+
+    private Writer writer;
+
+    // jobs in the journal that have not finished
+    private int open = 0;
+
+    JobJournal(ObjectMapper om, File file)
+    {
+        this.om = om;
+        this.file = file;
+    }
+
+    /**
+     * Read the jobs that did not finish, and start a new journal with only those
+     */
+    final synchronized Map<String, JobRequest> open() throws IOException
+    {
+        final Map<String, JobRequest> unfinished = new LinkedHashMap<String, JobRequest>();
+
+        if(file.exists())
+        {
+            for(String line : Files.readLines(file, Charsets.UTF_8))
+            {
+                try
+                {
+                    if(line.startsWith("+"))
+                    {
+                        final int space = line.indexOf(' ');
+                        unfinished.put(line.substring(1, space), fromJSON(om.readTree(line.substring(space + 1))));
+                    }
+                    else if(line.startsWith("-"))
+                        unfinished.remove(line.substring(1));
+                }
+                catch (Exception e)
+                {
+                    // the last line can be incomplete after a crash
+                    log.warn("Skipping invalid line in job journal {}: {}", file, line);
+                }
+            }
+        }
+        else if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        writer = new OutputStreamWriter(new FileOutputStream(file, false), Charsets.UTF_8);
+        for(Map.Entry<String, JobRequest> job : unfinished.entrySet())
+            writer.write("+" + job.getKey() + " " + toJSON(job.getValue()) + "\n");
+        writer.flush();
+
+        open = unfinished.size();
+        return unfinished;
+    }
+
+    final synchronized void queued(String job, JobRequest request) throws IOException
+    {
+        if(writer == null)
+            throw new IOException("Job journal " + file + " is not open");
+
+        writer.write("+" + job + " " + toJSON(request) + "\n");
+        writer.flush();
+        open++;
+    }
+
+    final synchronized void finished(String job) throws IOException
+    {
+        if(writer == null)
+            return;
+
+        open--;
+        if(open > 0)
+        {
+            writer.write("-" + job + "\n");
+            writer.flush();
+            return;
+        }
+
+        // nothing left to remember
+        writer.close();
+        writer = new OutputStreamWriter(new FileOutputStream(file, false), Charsets.UTF_8);
+        open = 0;
+    }
+
+    final synchronized void close() throws IOException
+    {
+        if(writer != null)
+            writer.close();
+    }
+
+    private String toJSON(JobRequest request)
+    {
+        final ObjectNode n = om.createObjectNode();
+        n.put("action", request.actionType().name());
+        n.put("scope", request.actionScope().name());
+        n.put("index", request.id().index());
+        n.put("type", request.id().type());
+        n.put("id", request.id().id());
+        n.put("version", request.id().version());
+        return n.toString();
+    }
+
+    private static JobRequest fromJSON(JsonNode n)
+    {
+        final ID id = new ID(text(n, "index"), text(n, "type"), text(n, "id"), n.get("version").asLong());
+        return new JobRequest(DegraphmalizeRequestType.valueOf(n.get("action").asText()),
+                DegraphmalizeRequestScope.valueOf(n.get("scope").asText()), id);
+    }
+
+    private static String text(JsonNode n, String field)
+    {
+        return n.path(field).isTextual() ? n.get(field).asText() : null;
+    }
+}
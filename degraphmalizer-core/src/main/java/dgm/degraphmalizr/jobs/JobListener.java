@@ -0,0 +1,9 @@
+package dgm.degraphmalizr.jobs;
+
+/**
+ * Receives every change in the state of a job
+ */
+public interface JobListener
+{
+    void jobChanged(Job job);
+}
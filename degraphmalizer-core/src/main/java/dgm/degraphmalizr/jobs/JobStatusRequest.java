@@ -0,0 +1,27 @@
+package dgm.degraphmalizr.jobs;
+
+/**
+ * Ask for the state of a job, or for a stream of all job changes
+ */
+public class JobStatusRequest
+{
+    private final String job;
+
+    /**
+     * @param job Job id, {@code null} to follow all jobs
+     */
+    public JobStatusRequest(String job)
+    {
+        this.job = job;
+    }
+
+    public final String job()
+    {
+        return job;
+    }
+
+    public final boolean isSubscription()
+    {
+        return job == null;
+    }
+}
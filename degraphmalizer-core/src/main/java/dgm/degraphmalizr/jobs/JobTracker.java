@@ -0,0 +1,240 @@
+package dgm.degraphmalizr.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dgm.Degraphmalizr;
+import dgm.Service;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeCallback;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequest;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeResult;
+import dgm.degraphmalizr.degraphmalize.JobRequest;
+import dgm.exceptions.DegraphmalizerException;
+import dgm.exceptions.WrappedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes requests that are acknowledged before they are done, and keeps track of them.
+ * <p/>
+ * A job is written to the {@link JobJournal} before it is acknowledged, and jobs that were not finished are submitted
+ * again on startup. The state of the last {@code capacity} jobs can be looked up by id, and listeners are told about
+ * every change.
+ */
+@Singleton
+public class JobTracker implements Service
+{
+    private static final Logger log = LoggerFactory.getLogger(JobTracker.class);
+
+    private final Degraphmalizr degraphmalizr;
+    private final JobJournal journal;
+
+    private final Map<String, Job> jobs;
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<JobListener>();
+
+    // job ids are unique across restarts
+    private final String prefix = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * @param capacity Number of jobs to remember, the oldest are forgotten first
+     * @param journal Journal file, empty to run without journal
+     */
+    @Inject
+    public JobTracker(ObjectMapper om, Degraphmalizr degraphmalizr,
+                      @Named("jobCapacity") final int capacity,
+                      @Named("jobJournal") String journal)
+    {
+        this.degraphmalizr = degraphmalizr;
+        this.journal = journal.isEmpty() ? null : new JobJournal(om, new File(journal));
+
+        this.jobs = new LinkedHashMap<String, Job>()
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Job> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public void start()
+    {
+        if(journal == null)
+            return;
+
+        try
+        {
+            final Map<String, JobRequest> unfinished = journal.open();
+            if(!unfinished.isEmpty())
+                log.info("Resubmitting {} unfinished jobs from the job journal", unfinished.size());
+
+            for(Map.Entry<String, JobRequest> job : unfinished.entrySet())
+            {
+                try
+                {
+                    execute(new Job(job.getKey(), job.getValue()));
+                }
+                catch (DegraphmalizerException e)
+                {
+                    log.warn("Could not resubmit job {}: {}", job.getKey(), e.getMessage());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("Cannot open job journal", e);
+        }
+    }
+
+    @Override
+    public void stop()
+    {
+        if(journal == null)
+            return;
+
+        try
+        {
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            log.warn("Cannot close job journal: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queue the request, returns as soon as the job is in the journal and on the queue
+     *
+     * @throws DegraphmalizerException If the request could not be queued
+     */
+    public final Job submit(JobRequest request)
+    {
+        final Job job = new Job(prefix + "-" + counter.incrementAndGet(), request);
+
+        if(journal != null)
+        {
+            try
+            {
+                journal.queued(job.id(), request);
+            }
+            catch (IOException e)
+            {
+                throw new WrappedException(e);
+            }
+        }
+
+        return execute(job);
+    }
+
+    /**
+     * The job with this id, {@code null} if it is unknown or has been forgotten
+     */
+    public final Job get(String id)
+    {
+        synchronized (jobs)
+        {
+            return jobs.get(id);
+        }
+    }
+
+    public final void subscribe(JobListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public final void unsubscribe(JobListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    private Job execute(final Job job)
+    {
+        synchronized (jobs)
+        {
+            jobs.put(job.id(), job);
+        }
+
+        final DegraphmalizeCallback callback = new DegraphmalizeCallback()
+        {
+            @Override
+            public void started(DegraphmalizeRequest request)
+            {
+                job.started();
+                changed(job);
+            }
+
+            @Override
+            public void complete(DegraphmalizeResult result)
+            {
+                job.done();
+                finished(job);
+            }
+
+            @Override
+            public void failed(DegraphmalizerException exception)
+            {
+                job.failed(exception.getMessage());
+                finished(job);
+            }
+        };
+
+        changed(job);
+
+        final JobRequest request = job.request();
+        try
+        {
+            degraphmalizr.degraphmalize(request.actionType(), request.actionScope(), request.id(), callback);
+        }
+        catch (DegraphmalizerException e)
+        {
+            job.failed(e.getMessage());
+            finished(job);
+            throw e;
+        }
+
+        return job;
+    }
+
+    private void finished(Job job)
+    {
+        if(journal != null)
+        {
+            try
+            {
+                journal.finished(job.id());
+            }
+            catch (IOException e)
+            {
+                log.warn("Cannot write to job journal: {}", e.getMessage());
+            }
+        }
+
+        changed(job);
+    }
+
+    private void changed(Job job)
+    {
+        for(JobListener listener : listeners)
+        {
+            try
+            {
+                listener.jobChanged(job);
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Job listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package dgm.degraphmalizr.rebuild;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dgm.degraphmalizr.CheckpointFiles;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Progress of the rebuild of a target type, stored as a small JSON file so an interrupted rebuild continues after a
+ * restart.
+ * <p/>
+ * Source documents are rebuilt in the order of their id, {@link #last()} is the id of the last document of the last
+ * finished batch. The checkpoint is only valid for the configuration it was written for, see {@link #fingerprint()}.
+ */
+class RebuildCheckpoint
+{
+    final String index;
+    final String type;
+    final String fingerprint;
+    final String last;
+
+    RebuildCheckpoint(String index, String type, String fingerprint, String last)
+    {
+        this.index = index;
+        this.type = type;
+        this.fingerprint = fingerprint;
+        this.last = last;
+    }
+
+    public final String index()
+    {
+        return index;
+    }
+
+    public final String type()
+    {
+        return type;
+    }
+
+    /**
+     * Fingerprint of the type configuration that is being rebuilt
+     */
+    public final String fingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Id of the last rebuilt source document, {@code null} if nothing was rebuilt yet
+     */
+    public final String last()
+    {
+        return last;
+    }
+
+    public final RebuildCheckpoint last(String last)
+    {
+        return new RebuildCheckpoint(index, type, fingerprint, last);
+    }
+
+    static File file(File directory, String index, String type)
+    {
+        return new File(directory, index + "." + type + ".json");
+    }
+
+    /**
+     * Read a checkpoint, returns {@code null} if it is incomplete
+     */
+    static RebuildCheckpoint read(ObjectMapper om, File file) throws IOException
+    {
+        final JsonNode json = om.readTree(file);
+        final JsonNode index = json.path("index");
+        final JsonNode type = json.path("type");
+        final JsonNode fingerprint = json.path("fingerprint");
+        if(!index.isTextual() || !type.isTextual() || !fingerprint.isTextual())
+            return null;
+
+        final String last = json.path("last").isTextual() ? json.get("last").asText() : null;
+        return new RebuildCheckpoint(index.asText(), type.asText(), fingerprint.asText(), last);
+    }
+
+    /**
+     * Write the checkpoint, see {@link CheckpointFiles#write}
+     */
+    final void write(ObjectMapper om, File directory) throws IOException
+    {
+        final ObjectNode json = om.createObjectNode();
+        json.put("index", index);
+        json.put("type", type);
+        json.put("fingerprint", fingerprint);
+        json.put("last", last);
+
+        CheckpointFiles.write(om, file(directory, index, type), json);
+    }
+
+    final void delete(File directory)
+    {
+        file(directory, index, type).delete();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RebuildCheckpoint(/" + index + "/" + type + ", last=" + last + ")";
+    }
+}
@@ -0,0 +1,407 @@
+package dgm.degraphmalizr.rebuild;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Provider;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import dgm.Degraphmalizr;
+import dgm.ID;
+import dgm.Service;
+import dgm.configuration.Configuration;
+import dgm.configuration.ConfigurationMonitor;
+import dgm.configuration.IndexConfig;
+import dgm.configuration.TypeConfig;
+import dgm.degraphmalizr.CheckpointFiles;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestScope;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestType;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeResult;
+import dgm.degraphmalizr.degraphmalize.Lane;
+import dgm.degraphmalizr.degraphmalize.LoggingDegraphmalizeCallback;
+import dgm.exceptions.DegraphmalizerException;
+import dgm.exceptions.Overloaded;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dgm.GraphUtilities.*;
+
+/**
+ * Re-degraphmalizes the documents of a target type when its configuration changes.
+ * <p/>
+ * When an index configuration is reloaded, the type configurations whose script (or jar, for Java types) changed are
+ * rebuilt by sending an update request for every source document in the graph. Only documents of the source type of
+ * a changed configuration are updated.
+ * <p/>
+ * A rebuild never floods the degraphmalize queue: it submits at most {@code concurrency} requests at a time, at most
+ * {@code rate} per second, in the {@link Lane#BACKGROUND} lane so the queue takes live traffic first. After each batch a {@link RebuildCheckpoint} is written, a rebuild interrupted by a restart continues from
+ * there as long as the configuration didn't change in the meantime.
+ */
+@Singleton
+public class TypeRebuilder implements Service, ConfigurationMonitor
+{
+    private static final Logger log = LoggerFactory.getLogger(TypeRebuilder.class);
+
+    private final ObjectMapper om;
+    private final Graph graph;
+    private final Degraphmalizr degraphmalizr;
+    private final Provider<Configuration> cfgProvider;
+
+    private final File scriptFolder;
+    private final File checkpoints;
+    private final int concurrency;
+    private final RateLimiter limiter;
+
+    private final ExecutorService rebuilds;
+
+    // fingerprint of the configuration of every known "index/type"
+    private final Map<String, String> fingerprints = new HashMap<String, String>();
+
+    private final AtomicLong rebuilt = new AtomicLong();
+
+    @Inject
+    public TypeRebuilder(ObjectMapper om, Graph graph, Degraphmalizr degraphmalizr, Provider<Configuration> cfgProvider,
+                         @Named("scriptFolder") String scriptFolder,
+                         @Named("rebuildRate") double rate,
+                         @Named("rebuildConcurrency") int concurrency,
+                         @Named("rebuildCheckpoints") String checkpoints)
+    {
+        this.om = om;
+        this.graph = graph;
+        this.degraphmalizr = degraphmalizr;
+        this.cfgProvider = cfgProvider;
+        this.scriptFolder = new File(scriptFolder);
+        this.checkpoints = new File(checkpoints);
+        this.concurrency = Math.max(1, concurrency);
+        this.limiter = RateLimiter.create(rate);
+
+        final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("type-rebuilder").setDaemon(true).build();
+
+        this.rebuilds = Executors.newSingleThreadExecutor(namedThreadFactory);
+    }
+
+    @Override
+    public void start()
+    {
+        final Configuration cfg = cfgProvider.get();
+
+        synchronized (fingerprints)
+        {
+            for(IndexConfig index : cfg.indices().values())
+                for(String type : index.types().keySet())
+                    fingerprints.put(key(index.name(), type), fingerprint(index.name(), type));
+        }
+
+        if(!checkpoints.isDirectory() && !checkpoints.mkdirs())
+        {
+            log.error("Cannot create rebuild checkpoint directory {}", checkpoints);
+            return;
+        }
+
+        resume();
+    }
+
+    @Override
+    public void stop()
+    {
+        rebuilds.shutdownNow();
+    }
+
+    @Override
+    public void configurationChanged(String index)
+    {
+        final IndexConfig indexConfig = cfgProvider.get().indices().get(index);
+
+        synchronized (fingerprints)
+        {
+            // forget the types of the index, then add the ones that still exist
+            final Map<String, String> previous = new HashMap<String, String>();
+            final Iterator<Map.Entry<String, String>> entries = fingerprints.entrySet().iterator();
+            while(entries.hasNext())
+            {
+                final Map.Entry<String, String> entry = entries.next();
+                if(entry.getKey().startsWith(index + "/"))
+                {
+                    previous.put(entry.getKey(), entry.getValue());
+                    entries.remove();
+                }
+            }
+
+            if(indexConfig == null)
+                return;
+
+            for(String type : indexConfig.types().keySet())
+            {
+                final String key = key(index, type);
+                final String fingerprint = fingerprint(index, type);
+                fingerprints.put(key, fingerprint);
+
+                if(!fingerprint.equals(previous.get(key)))
+                    schedule(new RebuildCheckpoint(index, type, fingerprint, null));
+            }
+        }
+    }
+
+    /**
+     * Total number of source documents sent for rebuilding
+     */
+    public final long rebuilt()
+    {
+        return rebuilt.get();
+    }
+
+    /**
+     * Wait for all scheduled rebuilds to finish
+     */
+    final void awaitRebuilds() throws InterruptedException, ExecutionException
+    {
+        rebuilds.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }).get();
+    }
+
+    /**
+     * Continue rebuilds that were interrupted, checkpoints of configurations that changed since are dropped
+     */
+    private void resume()
+    {
+        for(File file : CheckpointFiles.list(checkpoints))
+        {
+            try
+            {
+                final RebuildCheckpoint checkpoint = RebuildCheckpoint.read(om, file);
+                if(checkpoint != null && isCurrent(checkpoint))
+                {
+                    log.info("Resuming rebuild of /{}/{} after document {}",
+                            new Object[]{checkpoint.index(), checkpoint.type(), checkpoint.last()});
+                    schedule(checkpoint);
+                }
+                else
+                {
+                    log.info("Dropping outdated rebuild checkpoint {}", file);
+                    file.delete();
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Cannot read rebuild checkpoint {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void schedule(final RebuildCheckpoint checkpoint)
+    {
+        log.info("Scheduling rebuild of /{}/{}", checkpoint.index(), checkpoint.type());
+
+        rebuilds.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final Lane previous = Lane.BACKGROUND.enter();
+                try
+                {
+                    rebuild(checkpoint);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (Exception e)
+                {
+                    log.error("Rebuild of /" + checkpoint.index() + "/" + checkpoint.type() + " failed", e);
+                }
+                finally
+                {
+                    Lane.restore(previous);
+                }
+            }
+        });
+    }
+
+    // the queue is shared with live traffic, so wait for room instead of skipping the document
+    private Future<DegraphmalizeResult> submit(ID id) throws InterruptedException
+    {
+        while(true)
+        {
+            try
+            {
+                return degraphmalizr.degraphmalize(DegraphmalizeRequestType.UPDATE,
+                        DegraphmalizeRequestScope.DOCUMENT, id, new LoggingDegraphmalizeCallback());
+            }
+            catch (Overloaded e)
+            {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(e.retryAfter()));
+            }
+        }
+    }
+
+    private void rebuild(RebuildCheckpoint checkpoint) throws InterruptedException, IOException
+    {
+        // a newer change of the same type is scheduled after this one
+        if(!isCurrent(checkpoint))
+            return;
+
+        final IndexConfig index = cfgProvider.get().indices().get(checkpoint.index());
+        final TypeConfig typeConfig = index == null ? null : index.types().get(checkpoint.type());
+        if(typeConfig == null)
+            return;
+
+        final List<ID> ids = sourceDocuments(typeConfig.sourceIndex(), typeConfig.sourceType(), checkpoint.last());
+        log.info("Rebuilding /{}/{} from {} documents in /{}/{}",
+                new Object[]{checkpoint.index(), checkpoint.type(), ids.size(), typeConfig.sourceIndex(), typeConfig.sourceType()});
+
+        long failed = 0;
+        for(int i = 0; i < ids.size(); i += concurrency)
+        {
+            if(!isCurrent(checkpoint))
+            {
+                log.info("Configuration of /{}/{} changed again, restarting rebuild", checkpoint.index(), checkpoint.type());
+                return;
+            }
+
+            final List<ID> batch = ids.subList(i, Math.min(ids.size(), i + concurrency));
+            final List<Future<DegraphmalizeResult>> results = new ArrayList<Future<DegraphmalizeResult>>();
+            for(ID id : batch)
+            {
+                limiter.acquire();
+                try
+                {
+                    results.add(submit(id));
+                }
+                catch (DegraphmalizerException e)
+                {
+                    // the source type is no longer configured
+                    log.debug("Not rebuilding {}: {}", id, e.getMessage());
+                }
+            }
+
+            for(Future<DegraphmalizeResult> result : results)
+            {
+                try
+                {
+                    result.get();
+                }
+                catch (ExecutionException e)
+                {
+                    // for instance a newer version of the document, which its own update takes care of
+                    failed++;
+                    log.debug("Rebuild request failed: {}", e.getCause().getMessage());
+                }
+            }
+
+            rebuilt.addAndGet(results.size());
+
+            checkpoint = checkpoint.last(batch.get(batch.size() - 1).id());
+            checkpoint.write(om, checkpoints);
+        }
+
+        checkpoint.delete(checkpoints);
+        log.info("Rebuilt /{}/{}, {} of {} documents failed", new Object[]{checkpoint.index(), checkpoint.type(), failed, ids.size()});
+    }
+
+    /**
+     * Non symbolic documents of the source type in id order, starting after {@code last}
+     */
+    private List<ID> sourceDocuments(String index, String type, String last)
+    {
+        Iterable<Vertex> vertices = findVerticesInIndex(graph, index, type);
+        if(vertices == null)
+            vertices = findVerticesInIndex(graph, index);
+
+        final List<ID> ids = new ArrayList<ID>();
+        for(Vertex v : vertices)
+        {
+            final ID id = getID(om, v);
+            if(id == null || id.isSymbolic() || !type.equals(id.type()))
+                continue;
+
+            if(last == null || id.id().compareTo(last) > 0)
+                ids.add(id);
+        }
+
+        Collections.sort(ids, new Comparator<ID>()
+        {
+            @Override
+            public int compare(ID a, ID b)
+            {
+                return a.id().compareTo(b.id());
+            }
+        });
+
+        return ids;
+    }
+
+    private boolean isCurrent(RebuildCheckpoint checkpoint)
+    {
+        final String key = key(checkpoint.index(), checkpoint.type());
+
+        synchronized (fingerprints)
+        {
+            return checkpoint.fingerprint().equals(fingerprints.get(key));
+        }
+    }
+
+    /**
+     * Fingerprint of the files that make up a type configuration: the script of a javascript type, or all jars in the
+     * index directory for a Java type.
+     */
+    private String fingerprint(String index, String type)
+    {
+        final File directory = new File(scriptFolder, index);
+        try
+        {
+            final File script = new File(directory, type + ".conf.js");
+            if(script.isFile())
+                return Files.hash(script, Hashing.md5()).toString();
+
+            final File[] jars = directory.listFiles(new FilenameFilter()
+            {
+                @Override
+                public boolean accept(File dir, String name)
+                {
+                    return name.endsWith(".jar");
+                }
+            });
+
+            final Hasher hasher = Hashing.md5().newHasher();
+            if(jars != null)
+            {
+                Arrays.sort(jars);
+                for(File jar : jars)
+                    hasher.putString(jar.getName()).putString(Files.hash(jar, Hashing.md5()).toString());
+            }
+
+            return hasher.hash().toString();
+        }
+        catch (IOException e)
+        {
+            // unreadable, so always different
+            log.warn("Cannot read configuration of /{}/{}: {}", new Object[]{index, type, e.getMessage()});
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    private static String key(String index, String type)
+    {
+        return index + "/" + type;
+    }
+}
@@ -9,6 +9,7 @@ import com.tinkerpop.blueprints.*;
 import dgm.*;
 import dgm.configuration.*;
 import dgm.exceptions.*;
+import dgm.graphs.EdgeAggregates;
 import dgm.modules.elasticsearch.QueryFunction;
 import dgm.modules.elasticsearch.ResolvedPathElement;
 import dgm.GraphUtilities;
@@ -40,13 +41,15 @@ public class RecomputerFactoryImpl implements Recomputer
     protected final ExecutorService fetchQueue;
     protected final QueryFunction queryFn;
     protected final ObjectMapper objectMapper;
+    protected final EdgeAggregates edgeAggregates;
 
     @Inject
     public RecomputerFactoryImpl(Client client, Graph graph,
                                  @Fetches ExecutorService fetchQueue,
                                  @Recomputes ExecutorService recomputeQueue,
                                  ObjectMapper objectMapper,
-                                 QueryFunction queryFunction)
+                                 QueryFunction queryFunction,
+                                 EdgeAggregates edgeAggregates)
     {
         this.fetchQueue = fetchQueue;
         this.recomputeQueue = recomputeQueue;
@@ -54,6 +57,7 @@ public class RecomputerFactoryImpl implements Recomputer
         this.client = client;
         this.queryFn = queryFunction;
         this.objectMapper = objectMapper;
+        this.edgeAggregates = edgeAggregates;
     }
 
     class Recomputer
@@ -79,6 +83,22 @@ public class RecomputerFactoryImpl implements Recomputer
 
             for (Map.Entry<String, WalkConfig> walkCfg : request.config.walks().entrySet())
             {
+                // aggregates are read from the vertex, so walks with only aggregates don't need the tree
+                boolean onlyAggregates = true;
+                for (final Map.Entry<String, ? extends PropertyConfig> propertyCfg : walkCfg.getValue().properties().entrySet())
+                {
+                    if (propertyCfg.getValue() instanceof EdgeAggregateConfig)
+                    {
+                        final EdgeAggregateConfig aggregateCfg = (EdgeAggregateConfig) propertyCfg.getValue();
+                        walkResults.put(propertyCfg.getKey(), edgeAggregates.read(objectMapper, aggregateCfg.aggregate(), request.root.vertex()));
+                    }
+                    else
+                        onlyAggregates = false;
+                }
+
+                if (onlyAggregates)
+                    continue;
+
                 // walk graph, and fetch all the children in the opposite direction of the walk
                 final Tree<Pair<Edge, Vertex>> tree =
                         GraphUtilities.childrenFrom(request.root.vertex(), walkCfg.getValue().direction());
@@ -91,7 +111,8 @@ public class RecomputerFactoryImpl implements Recomputer
                 }
 
                 // get all documents in the tree from Elasticsearch (in parallel)
-                final Tree<Optional<ResolvedPathElement>> docTree = Trees.pmap(fetchQueue, queryFn, tree);
+                final Tree<Optional<ResolvedPathElement>> docTree =
+                        Trees.pmap(fetchQueue, queryFn.projecting(walkCfg.getValue().fields()), tree);
 
                 // if some value is absent from the tree, abort the computation
                 final Optional<Tree<ResolvedPathElement>> fullTree = Trees.optional(docTree);
@@ -105,7 +126,8 @@ public class RecomputerFactoryImpl implements Recomputer
 
                 // reduce each property to a value based on the walk result
                 for (final Map.Entry<String, ? extends PropertyConfig> propertyCfg : walkCfg.getValue().properties().entrySet())
-                    walkResults.put(propertyCfg.getKey(), propertyCfg.getValue().reduce(fullTree.get()));
+                    if (!(propertyCfg.getValue() instanceof EdgeAggregateConfig))
+                        walkResults.put(propertyCfg.getKey(), propertyCfg.getValue().reduce(fullTree.get()));
             }
 
             // something failed, so we abort the whole re-computation
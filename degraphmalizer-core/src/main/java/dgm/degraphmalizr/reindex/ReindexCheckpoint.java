@@ -0,0 +1,177 @@
+package dgm.degraphmalizr.reindex;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dgm.ID;
+import dgm.degraphmalizr.CheckpointFiles;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestScope;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+
+/**
+ * Progress of an update or delete of a whole index or type, stored as a small JSON file so an interrupted reindex
+ * continues after a restart.
+ * <p/>
+ * Documents are reindexed in {@link #ORDER}, by type and id, because the graph index has no stable order of its own.
+ * {@link #last()} is the last document of which it and all documents before it are finished, so an update continues
+ * with the documents after it. A delete removes the vertices it is done with, so it simply starts again with the
+ * vertices that are left.
+ */
+public class ReindexCheckpoint
+{
+    /**
+     * Order in which the documents of a reindex are processed
+     */
+    public static final Comparator<ID> ORDER = new Comparator<ID>()
+    {
+        @Override
+        public int compare(ID a, ID b)
+        {
+            final int type = a.type().compareTo(b.type());
+            return type != 0 ? type : a.id().compareTo(b.id());
+        }
+    };
+
+    final DegraphmalizeRequestType action;
+    final String index;
+    final String type;
+    final long done;
+    final ID last;
+
+    /**
+     * @param type Type in the index, {@code null} for the whole index
+     * @param done Number of finished documents
+     * @param last Last finished document, {@code null} if none
+     */
+    public ReindexCheckpoint(DegraphmalizeRequestType action, String index, String type, long done, ID last)
+    {
+        this.action = action;
+        this.index = index;
+        this.type = type;
+        this.done = done;
+        this.last = last;
+    }
+
+    public final DegraphmalizeRequestType action()
+    {
+        return action;
+    }
+
+    public final DegraphmalizeRequestScope scope()
+    {
+        return type == null ? DegraphmalizeRequestScope.INDEX : DegraphmalizeRequestScope.TYPE_IN_INDEX;
+    }
+
+    /**
+     * Id of the request for the index or type
+     */
+    public final ID id()
+    {
+        return new ID(index, type, null, 0);
+    }
+
+    /**
+     * Number of documents that are done
+     */
+    public final long done()
+    {
+        return done;
+    }
+
+    /**
+     * The last document that is done, all documents before it in {@link #ORDER} are done too
+     */
+    public final ID last()
+    {
+        return last;
+    }
+
+    /**
+     * Whether the document was finished before this checkpoint was written
+     */
+    public final boolean isDone(ID id)
+    {
+        return last != null && ORDER.compare(id, last) <= 0;
+    }
+
+    public final ReindexCheckpoint done(long done, ID last)
+    {
+        return new ReindexCheckpoint(action, index, type, done, last);
+    }
+
+    static File file(File directory, DegraphmalizeRequestType action, String index, String type)
+    {
+        final String name = action.name().toLowerCase() + "." + index + (type == null ? "" : "." + type);
+        return new File(directory, name + ".json");
+    }
+
+    /**
+     * Read the checkpoint of the request, returns {@code null} if there is none or it is incomplete
+     */
+    public static ReindexCheckpoint read(ObjectMapper om, File directory, DegraphmalizeRequestType action, String index, String type) throws IOException
+    {
+        final File file = file(directory, action, index, type);
+        if(!file.exists())
+            return null;
+
+        return read(om, file);
+    }
+
+    /**
+     * Read a checkpoint, returns {@code null} if it is incomplete
+     */
+    static ReindexCheckpoint read(ObjectMapper om, File file) throws IOException
+    {
+        final JsonNode json = om.readTree(file);
+        final JsonNode action = json.path("action");
+        final JsonNode index = json.path("index");
+        if(!action.isTextual() || !index.isTextual() || !json.path("done").canConvertToLong())
+            return null;
+
+        final String type = json.path("type").isTextual() ? json.get("type").asText() : null;
+
+        // checkpoints without a last document start again from the beginning
+        final JsonNode lastType = json.path("lastType");
+        final JsonNode lastId = json.path("lastId");
+        final ID last = lastType.isTextual() && lastId.isTextual()
+                ? new ID(index.asText(), lastType.asText(), lastId.asText(), 0) : null;
+
+        return new ReindexCheckpoint(DegraphmalizeRequestType.valueOf(action.asText()), index.asText(), type,
+                last == null ? 0 : json.get("done").asLong(), last);
+    }
+
+    /**
+     * Write the checkpoint, see {@link CheckpointFiles#write}
+     */
+    public final void write(ObjectMapper om, File directory) throws IOException
+    {
+        final ObjectNode json = om.createObjectNode();
+        json.put("action", action.name());
+        json.put("index", index);
+        json.put("type", type);
+        json.put("done", done);
+        if(last != null)
+        {
+            json.put("lastType", last.type());
+            json.put("lastId", last.id());
+        }
+
+        CheckpointFiles.write(om, file(directory, action, index, type), json);
+    }
+
+    public final void delete(File directory)
+    {
+        file(directory, action, index, type).delete();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ReindexCheckpoint(" + action + " /" + index + "/" + (type == null ? "" : type) + ", done=" + done
+                + (last == null ? "" : ", last=" + last.type() + "/" + last.id()) + ")";
+    }
+}
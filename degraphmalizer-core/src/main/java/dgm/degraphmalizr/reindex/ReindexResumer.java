@@ -0,0 +1,77 @@
+package dgm.degraphmalizr.reindex;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dgm.Degraphmalizr;
+import dgm.Service;
+import dgm.degraphmalizr.CheckpointFiles;
+import dgm.degraphmalizr.degraphmalize.LoggingDegraphmalizeCallback;
+import dgm.exceptions.DegraphmalizerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Submits the index and type requests that were interrupted by a restart again, they continue from their
+ * {@link ReindexCheckpoint}.
+ */
+@Singleton
+public class ReindexResumer implements Service
+{
+    private static final Logger log = LoggerFactory.getLogger(ReindexResumer.class);
+
+    private final ObjectMapper om;
+    private final Degraphmalizr degraphmalizr;
+    private final String checkpoints;
+
+    @Inject
+    public ReindexResumer(ObjectMapper om, Degraphmalizr degraphmalizr,
+                          @Named("reindexCheckpoints") String checkpoints)
+    {
+        this.om = om;
+        this.degraphmalizr = degraphmalizr;
+        this.checkpoints = checkpoints;
+    }
+
+    @Override
+    public void start()
+    {
+        if(checkpoints.isEmpty())
+            return;
+
+        for(File file : CheckpointFiles.list(new File(checkpoints)))
+        {
+            try
+            {
+                final ReindexCheckpoint checkpoint = ReindexCheckpoint.read(om, file);
+                if(checkpoint == null)
+                {
+                    log.warn("Ignoring incomplete reindex checkpoint {}", file);
+                    continue;
+                }
+
+                log.info("Resuming {}", checkpoint);
+                degraphmalizr.degraphmalize(checkpoint.action(), checkpoint.scope(), checkpoint.id(),
+                        new LoggingDegraphmalizeCallback());
+            }
+            catch (IOException e)
+            {
+                log.warn("Cannot read reindex checkpoint {}: {}", file, e.getMessage());
+            }
+            catch (DegraphmalizerException e)
+            {
+                // for instance the index is no longer configured
+                log.warn("Not resuming reindex of {}: {}", file, e.getMessage());
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public void stop()
+    {}
+}
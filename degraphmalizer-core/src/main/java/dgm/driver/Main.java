@@ -4,16 +4,26 @@ import com.beust.jcommander.JCommander;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.tinkerpop.blueprints.Graph;
 import dgm.driver.handler.HandlerModule;
 import dgm.driver.server.Server;
 import dgm.driver.server.ServerModule;
+import dgm.configuration.javascript.FunctionTimings;
+import dgm.configuration.javascript.ScriptContexts;
 import dgm.fixtures.FixturesModule;
 import dgm.fixtures.FixturesRunner;
+import dgm.graphs.GraphSnapshot;
+import dgm.graphs.SymbolicVertexCollector;
 import dgm.jmx.GraphBuilder;
 import dgm.modules.BlueprintsSubgraphManagerModule;
 import dgm.modules.DegraphmalizerModule;
+import dgm.modules.ExecutorStatistics;
+import dgm.modules.JobTrackerModule;
+import dgm.modules.ScriptCompilerModule;
 import dgm.modules.ServiceRunner;
+import dgm.modules.SymbolicVertexCollectorModule;
 import dgm.modules.ThreadpoolModule;
+import dgm.modules.TypeRebuilderModule;
 import dgm.modules.elasticsearch.CommonElasticSearchModule;
 import dgm.modules.elasticsearch.nodes.LocalES;
 import dgm.modules.elasticsearch.nodes.NodeES;
@@ -28,6 +38,7 @@ import org.slf4j.Logger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
@@ -57,6 +68,13 @@ public final class Main
         if (System.getProperty(LOGBACK_CFG) == null)
             System.setProperty(LOGBACK_CFG, opt.logbackConf);
 
+        // only export the graph and exit
+        if (opt.exportSnapshot != null)
+        {
+            exportSnapshot(opt);
+            return;
+        }
+
         // check if script directory exists
         if (!new File(opt.config).isDirectory())
             exit("Cannot find configuration directory " + opt.config + " Exiting.");
@@ -69,16 +87,18 @@ public final class Main
         // some defaults
         modules.add(new BlueprintsSubgraphManagerModule());
         modules.add(new Slf4jLoggingModule());
-        modules.add(new DegraphmalizerModule());
-        modules.add(new ThreadpoolModule());
+        modules.add(new DegraphmalizerModule(opt.reindexWindow, opt.reindexCheckpoints));
+        modules.add(new ThreadpoolModule(opt.queueLimit, opt.recomputeThreads, opt.fetchThreads, opt.backgroundShare));
 
         // netty part
         modules.add(new ServerModule(opt.bindhost, opt.port));
         modules.add(new HandlerModule());
+        modules.add(new JobTrackerModule(opt.jobCapacity, opt.jobJournal, opt.respondAsync));
 
         // we always run an embedded local graph database
         modules.add(new CommonNeo4j());
-        modules.add(new EmbeddedNeo4J(opt.graphdb));
+        modules.add(new EmbeddedNeo4J(opt.graphdb, opt.snapshot));
+        modules.add(new SymbolicVertexCollectorModule(opt.gcInterval));
 
         // elasticsearch setup
         setupElasticsearch(opt, modules);
@@ -104,6 +124,22 @@ public final class Main
                 final GraphBuilder gb = injector.getInstance(GraphBuilder.class);
                 mbs.registerMBean(gb, name);
                 log.info("JMX bean {} started", name);
+
+                final ObjectName collectorName = new ObjectName("graph.mbeans:type=SymbolicVertexCollector");
+                mbs.registerMBean(injector.getInstance(SymbolicVertexCollector.class), collectorName);
+                log.info("JMX bean {} started", collectorName);
+
+                final ObjectName timingsName = new ObjectName("graph.mbeans:type=FunctionTimings");
+                mbs.registerMBean(injector.getInstance(FunctionTimings.class), timingsName);
+                log.info("JMX bean {} started", timingsName);
+
+                final ObjectName contextsName = new ObjectName("graph.mbeans:type=ScriptContexts");
+                mbs.registerMBean(injector.getInstance(ScriptContexts.class), contextsName);
+                log.info("JMX bean {} started", contextsName);
+
+                final ObjectName executorsName = new ObjectName("graph.mbeans:type=Executors");
+                mbs.registerMBean(injector.getInstance(ExecutorStatistics.class), executorsName);
+                log.info("JMX bean {} started", executorsName);
             } catch (Exception e)
             {
                 // TODO log errors
@@ -148,6 +184,27 @@ public final class Main
         server.startAndWait();
     }
 
+    private void exportSnapshot(Options opt)
+    {
+        final Injector injector = Guice.createInjector(new Slf4jLoggingModule(),
+                new CommonNeo4j(), new EmbeddedNeo4J(opt.graphdb));
+
+        final Graph graph = injector.getInstance(Graph.class);
+        try
+        {
+            final GraphSnapshot.Counts counts = GraphSnapshot.export(graph, new File(opt.exportSnapshot));
+            System.out.println("Exported " + counts + " to " + opt.exportSnapshot);
+        }
+        catch (IOException e)
+        {
+            exit("Could not export graph snapshot: " + e.getMessage());
+        }
+        finally
+        {
+            graph.shutdown();
+        }
+    }
+
     private void setupElasticsearch(Options opt, List<Module> modules)
     {
         modules.add(new CommonElasticSearchModule());
@@ -173,9 +230,18 @@ public final class Main
 
     private void setupConfiguration(Options opt, List<Module> modules)
     {
+        // how to compile the javascript configuration
+        modules.add(new ScriptCompilerModule(opt.jsOptimization, opt.jsCache));
+
         // automatic reloading
         if (opt.reloading)
-            modules.add(new DynamicConfiguration(opt.config, opt.libraries()));
+        {
+            modules.add(new DynamicConfiguration(opt.config, opt.reloadPolling, opt.libraries()));
+
+            // rebuild the documents of changed types
+            if (opt.rebuildRate > 0)
+                modules.add(new TypeRebuilderModule(opt.rebuildRate, opt.rebuildConcurrency, opt.rebuildCheckpoints));
+        }
         else
             modules.add(new StaticConfiguration(opt.config, opt.libraries()));
 
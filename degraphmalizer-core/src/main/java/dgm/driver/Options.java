@@ -25,12 +25,60 @@ public class Options
     @Parameter(names = {"-g", "--graphdb"}, description = "Specify graph DB storage directory")
     String graphdb;
 
+    @Parameter(names = {"-s", "--snapshot"}, description = "Restore this graph snapshot when the graph DB is empty")
+    String snapshot = "";
+
+    @Parameter(names = {"-x", "--export-snapshot"}, description = "Write a snapshot of the graph DB to this file and exit")
+    String exportSnapshot;
+
+    @Parameter(names = {"--gc-interval"}, description = "Seconds between removals of unused symbolic vertices, 0 to disable")
+    long gcInterval;
+
     @Parameter(names = {"-j", "--jmx"}, description = "Enable JMX monitoring bean")
     boolean jmx;
 
     @Parameter(names = {"-r", "--reload"}, description = "Enable automatic configuration reloading")
     boolean reloading;
 
+    @Parameter(names = {"--reload-polling"}, description = "Poll the configuration directory instead of using filesystem events, for network filesystems")
+    boolean reloadPolling;
+
+    @Parameter(names = {"--rebuild-rate"}, description = "Documents per second rebuilt after a configuration change, 0 to disable")
+    double rebuildRate;
+
+    @Parameter(names = {"--rebuild-concurrency"}, description = "Maximum number of rebuild requests queued at the same time")
+    int rebuildConcurrency;
+
+    @Parameter(names = {"--rebuild-checkpoints"}, description = "Directory for the progress of rebuilds after a configuration change")
+    String rebuildCheckpoints;
+
+    @Parameter(names = {"--queue-limit"}, description = "Number of requests that can wait to be degraphmalized, more are refused with 429 Too Many Requests")
+    int queueLimit;
+
+    @Parameter(names = {"--recompute-threads"}, description = "Maximum number of documents recomputed at the same time")
+    int recomputeThreads;
+
+    @Parameter(names = {"--fetch-threads"}, description = "Maximum number of documents fetched from elasticsearch at the same time")
+    int fetchThreads;
+
+    @Parameter(names = {"--background-share"}, description = "Part of the capacity used to reindex a whole index or type while documents are waiting")
+    double backgroundShare;
+
+    @Parameter(names = {"--reindex-window"}, description = "Documents of an index or type request in flight at the same time")
+    int reindexWindow;
+
+    @Parameter(names = {"--reindex-checkpoints"}, description = "Directory for the progress of index and type requests, empty to disable")
+    String reindexCheckpoints;
+
+    @Parameter(names = {"--respond-async"}, description = "Acknowledge every request as soon as it is queued, with 202 Accepted")
+    boolean respondAsync;
+
+    @Parameter(names = {"--job-capacity"}, description = "Number of acknowledged jobs to remember the state of")
+    int jobCapacity;
+
+    @Parameter(names = {"--job-journal"}, description = "Journal of acknowledged jobs that have not finished, empty to disable")
+    String jobJournal;
+
     @Parameter(names = {"-L", "--logback"}, description = "Specify logback configuration file")
     String logbackConf = "logback.xml";
 
@@ -40,6 +88,12 @@ public class Options
     @Parameter(names = {"-l", "--jslib"}, description = "Load Javascript library from this file")
     List<String> libraries = new ArrayList<String>();
 
+    @Parameter(names = {"--js-optimization"}, description = "Rhino optimization level for the configuration scripts, -1 (interpreted) to 9")
+    int jsOptimization;
+
+    @Parameter(names = {"--js-cache"}, description = "Directory to cache compiled configuration scripts, empty to disable")
+    String jsCache;
+
     @Parameter(names = {"-?", "--help"}, description = "Show command line options", help = true)
     boolean help;
 
@@ -58,7 +112,18 @@ public class Options
 
         jmx = Boolean.parseBoolean(properties.getProperty("degraphmalizer.jmx.enabled"));
         reloading = Boolean.parseBoolean(properties.getProperty("degraphmalizer.autoreload"));
+        reloadPolling = Boolean.parseBoolean(properties.getProperty("degraphmalizer.autoreload.polling"));
         fixtures = Boolean.parseBoolean(properties.getProperty("degraphmalizer.fixtures"));
+        gcInterval = Long.parseLong(properties.getProperty("degraphmalizer.gc.interval", "600"));
+        rebuildRate = Double.parseDouble(properties.getProperty("degraphmalizer.rebuild.rate", "50"));
+        rebuildConcurrency = Integer.parseInt(properties.getProperty("degraphmalizer.rebuild.concurrency", "10"));
+        queueLimit = Integer.parseInt(properties.getProperty("degraphmalizer.queue.limit", "10000"));
+        recomputeThreads = Integer.parseInt(properties.getProperty("degraphmalizer.threads.recompute", "16"));
+        fetchThreads = Integer.parseInt(properties.getProperty("degraphmalizer.threads.fetch", "16"));
+        backgroundShare = Double.parseDouble(properties.getProperty("degraphmalizer.background.share", "0.2"));
+        reindexWindow = Integer.parseInt(properties.getProperty("degraphmalizer.reindex.window", "100"));
+        respondAsync = Boolean.parseBoolean(properties.getProperty("degraphmalizer.async"));
+        jobCapacity = Integer.parseInt(properties.getProperty("degraphmalizer.jobs.capacity", "10000"));
 
         // try to set the defaults for a cluster
         transport.add(properties.getProperty("elasticsearch.host", "localhost"));
@@ -67,6 +132,12 @@ public class Options
 
         config = properties.getProperty("paths.config", "conf");
         graphdb = properties.getProperty("paths.graphdb", "data/graphdb");
+        snapshot = properties.getProperty("paths.snapshot", "");
+        jsCache = properties.getProperty("paths.jscache", "data/jscache");
+        rebuildCheckpoints = properties.getProperty("paths.rebuild", "data/rebuild");
+        reindexCheckpoints = properties.getProperty("paths.reindex", "data/reindex");
+        jobJournal = properties.getProperty("paths.jobjournal", "data/jobs.journal");
+        jsOptimization = Integer.parseInt(properties.getProperty("degraphmalizer.js.optimization", "9"));
     }
 
     /**
@@ -1,9 +1,14 @@
 package dgm.driver.handler;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
 import dgm.ID;
+import dgm.degraphmalizr.degraphmalize.BatchRequest;
 import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestScope;
 import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestType;
 import dgm.degraphmalizr.degraphmalize.JobRequest;
+import dgm.degraphmalizr.jobs.JobStatusRequest;
 import dgm.exceptions.DegraphmalizerException;
 import dgm.exceptions.InvalidRequest;
 import org.jboss.netty.channel.Channel;
@@ -12,15 +17,36 @@ import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
 
+import java.io.IOException;
+
 /**
- * Transform a HttpRequest into
+ * Transform a HttpRequest into a {@link JobRequest}, or a {@link BatchRequest} for a batch
  */
 public class DegraphmalizeDecoder extends OneToOneDecoder
 {
+    /**
+     * Path of the endpoint that takes a batch of requests, index names cannot start with an underscore
+     */
+    public static final String BATCH_URI = "/_batch";
+
+    /**
+     * Path of the jobs that were acknowledged before they were done
+     */
+    public static final String JOBS_URI = "/_jobs";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @Override
     protected final Object decode(ChannelHandlerContext channelHandlerContext, Channel channel, Object o) throws DegraphmalizerException
     {
         final HttpRequest request = (HttpRequest) o;
+
+        if (BATCH_URI.equals(request.getUri()))
+            return batchFor(request);
+
+        if (request.getUri().equals(JOBS_URI) || request.getUri().startsWith(JOBS_URI + "/"))
+            return jobStatusFor(request);
+
         final DegraphmalizeRequestType requestType = actionTypeFor(request);
 
         // split url /TYPE/ID/ or fail
@@ -41,7 +67,87 @@ public class DegraphmalizeDecoder extends OneToOneDecoder
 
         }
 
-        return new JobRequest(requestType, actionScopeFor(components), getID(components));
+        return new JobRequest(requestType, actionScopeFor(components), getID(components), respondAsync(request));
+    }
+
+    // Prefer: respond-async (RFC 7240)
+    private static boolean respondAsync(HttpRequest request)
+    {
+        for (String prefer : request.getHeaders("Prefer"))
+            for (String preference : prefer.split(","))
+                if ("respond-async".equalsIgnoreCase(preference.trim()))
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * {@code GET /_jobs/{job}} for the state of a job, {@code GET /_jobs} to follow all jobs
+     */
+    private static JobStatusRequest jobStatusFor(HttpRequest request)
+    {
+        if (!HttpMethod.GET.equals(request.getMethod()))
+            throw new InvalidRequest("Jobs can only be read");
+
+        final String job = request.getUri().substring(JOBS_URI.length());
+        if (job.length() <= 1)
+            return new JobStatusRequest(null);
+
+        return new JobStatusRequest(job.substring(1));
+    }
+
+    /**
+     * One request per line, {@code {"action": "update", "index": ..., "type": ..., "id": ..., "version": ...}}. The action
+     * is optional and defaults to {@code update}.
+     */
+    private BatchRequest batchFor(HttpRequest request)
+    {
+        if (!HttpMethod.POST.equals(request.getMethod()) && !HttpMethod.PUT.equals(request.getMethod()))
+            throw new InvalidRequest("Send batches with POST " + BATCH_URI);
+
+        final BatchRequest batch = new BatchRequest();
+        final String[] lines = request.getContent().toString(Charsets.UTF_8).split("\n");
+        for (int i = 0; i < lines.length; i++)
+        {
+            if (lines[i].trim().isEmpty())
+                continue;
+
+            try
+            {
+                batch.add(batchLine(objectMapper.readTree(lines[i])));
+            }
+            catch (IOException e)
+            {
+                throw new InvalidRequest("Line " + (i + 1) + " of the batch is not valid JSON: " + e.getMessage());
+            }
+            catch (InvalidRequest e)
+            {
+                throw new InvalidRequest("Line " + (i + 1) + " of the batch: " + e.getMessage());
+            }
+        }
+
+        return batch;
+    }
+
+    private static JobRequest batchLine(JsonNode line)
+    {
+        final String action = line.path("action").asText();
+        final DegraphmalizeRequestType requestType;
+        if (action.isEmpty() || "update".equalsIgnoreCase(action))
+            requestType = DegraphmalizeRequestType.UPDATE;
+        else if ("delete".equalsIgnoreCase(action))
+            requestType = DegraphmalizeRequestType.DELETE;
+        else
+            throw new InvalidRequest("Unsupported action: " + action);
+
+        final JsonNode index = line.path("index");
+        final JsonNode type = line.path("type");
+        final JsonNode id = line.path("id");
+        final JsonNode version = line.path("version");
+        if (!index.isTextual() || !type.isTextual() || !id.isTextual() || !version.canConvertToLong())
+            throw new InvalidRequest("A request must have an index, type, id and version");
+
+        return new JobRequest(requestType, DegraphmalizeRequestScope.DOCUMENT, new ID(index.asText(), type.asText(), id.asText(), version.asLong()));
     }
 
     // HTTP.method ? DELETE => anti-degraphmalize it
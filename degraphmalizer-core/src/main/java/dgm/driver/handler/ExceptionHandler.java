@@ -7,6 +7,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
 import dgm.exceptions.DegraphmalizerException;
+import dgm.exceptions.Overloaded;
 import dgm.exceptions.WrappedException;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
@@ -31,13 +32,19 @@ public class ExceptionHandler extends SimpleChannelHandler
         final DegraphmalizerException ex = wrapException(e.getCause());
         final String json = renderExceptionResponse(objectMapper, ex);
 
-        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_0, ex.httpStatusCode());
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, ex.httpStatusCode());
         response.setContent(ChannelBuffers.copiedBuffer(json, Charsets.UTF_8));
+        HttpHeaders.setContentLength(response, response.getContent().readableBytes());
+
+        // tell the client when to try again
+        if(ex instanceof Overloaded)
+            response.setHeader(HttpHeaders.Names.RETRY_AFTER, ((Overloaded) ex).retryAfter());
 
         logException(ex);
 
+        // the pipelining handler closes the connection if needed
         if(c.isOpen() && c.isWritable())
-            c.write(response).addListener(ChannelFutureListener.CLOSE);
+            c.write(response);
     }
 
     // log according to severity
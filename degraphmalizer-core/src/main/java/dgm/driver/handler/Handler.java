@@ -1,17 +1,31 @@
 package dgm.driver.handler;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import dgm.Degraphmalizr;
+import dgm.degraphmalizr.degraphmalize.BatchRequest;
 import dgm.degraphmalizr.degraphmalize.DegraphmalizeCallback;
 import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequest;
 import dgm.degraphmalizr.degraphmalize.DegraphmalizeResult;
 import dgm.degraphmalizr.degraphmalize.JobRequest;
+import dgm.degraphmalizr.jobs.Job;
+import dgm.degraphmalizr.jobs.JobListener;
+import dgm.degraphmalizr.jobs.JobStatusRequest;
+import dgm.degraphmalizr.jobs.JobTracker;
 import dgm.exceptions.DegraphmalizerException;
+import dgm.exceptions.JobNotFound;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.*;
 import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
 
+import java.util.List;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Handler extends SimpleChannelHandler
 {
@@ -19,22 +33,48 @@ public class Handler extends SimpleChannelHandler
     private static Logger log;
 
     private final Degraphmalizr degraphmalizr;
+    private final JobTracker jobs;
+
+    // acknowledge every request as soon as it is queued
+    private final boolean respondAsync;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Inject
-    public Handler(Degraphmalizr degraphmalizr)
+    public Handler(Degraphmalizr degraphmalizr, JobTracker jobs, @Named("respondAsync") boolean respondAsync)
     {
         this.degraphmalizr = degraphmalizr;
+        this.jobs = jobs;
+        this.respondAsync = respondAsync;
     }
 
     @Override
     public final void messageReceived(final ChannelHandlerContext ctx, MessageEvent e) throws Exception
     {
 
+        if (e.getMessage() instanceof BatchRequest)
+        {
+            degraphmalizeBatch(ctx.getChannel(), (BatchRequest) e.getMessage());
+            return;
+        }
+
+        if (e.getMessage() instanceof JobStatusRequest)
+        {
+            jobStatus(ctx.getChannel(), (JobStatusRequest) e.getMessage());
+            return;
+        }
+
         if (!JobRequest.class.isAssignableFrom(e.getMessage().getClass()))
             return;
 
         final JobRequest jobRequest = (JobRequest) e.getMessage();
 
+        if (respondAsync || jobRequest.respondAsync())
+        {
+            acknowledge(ctx.getChannel(), jobs.submit(jobRequest));
+            return;
+        }
+
         final DegraphmalizeCallback callback = new DegraphmalizeCallback()
         {
             @Override
@@ -46,8 +86,8 @@ public class Handler extends SimpleChannelHandler
             @Override
             public void complete(DegraphmalizeResult result)
             {
-                // write completion message and close channel
-                ctx.getChannel().write(result).addListener(ChannelFutureListener.CLOSE);
+                // write completion message, the connection stays open for the next request
+                ctx.getChannel().write(result);
             }
 
             @Override
@@ -61,4 +101,145 @@ public class Handler extends SimpleChannelHandler
 
         final Future<DegraphmalizeResult> result = degraphmalizr.degraphmalize(jobRequest.actionType(), jobRequest.actionScope(), jobRequest.id(), callback);
     }
+
+    /**
+     * Submit all requests of the batch and stream the result of each request as a line of JSON, in order of completion
+     */
+    private void degraphmalizeBatch(final Channel channel, BatchRequest batch)
+    {
+        final List<JobRequest> requests = batch.requests();
+        log.info("Received batch of {} requests, {} after removing superseded requests", batch.received(), requests.size());
+
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setChunked(true);
+        response.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        response.setHeader(HttpHeaders.Names.CONTENT_TYPE, "application/x-ndjson");
+        channel.write(response);
+
+        if (requests.isEmpty())
+        {
+            channel.write(HttpChunk.LAST_CHUNK);
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(requests.size());
+        for (final JobRequest request : requests)
+        {
+            final DegraphmalizeCallback callback = new DegraphmalizeCallback()
+            {
+                @Override
+                public void started(DegraphmalizeRequest started)
+                {
+                }
+
+                @Override
+                public void complete(DegraphmalizeResult result)
+                {
+                    writeBatchResult(channel, request, null, remaining);
+                }
+
+                @Override
+                public void failed(DegraphmalizerException exception)
+                {
+                    writeBatchResult(channel, request, exception, remaining);
+                }
+            };
+
+            try
+            {
+                degraphmalizr.degraphmalize(request.actionType(), request.actionScope(), request.id(), callback);
+            }
+            catch (DegraphmalizerException ex)
+            {
+                // for instance a type without configuration, the rest of the batch continues
+                writeBatchResult(channel, request, ex, remaining);
+            }
+        }
+    }
+
+    private void writeBatchResult(Channel channel, JobRequest request, DegraphmalizerException exception, AtomicInteger remaining)
+    {
+        final ObjectNode line = objectMapper.createObjectNode();
+        line.put("action", request.actionType().name().toLowerCase());
+        line.put("index", request.id().index());
+        line.put("type", request.id().type());
+        line.put("id", request.id().id());
+        line.put("version", request.id().version());
+
+        if (exception == null)
+            line.put("status", "ok");
+        else
+        {
+            line.put("status", "error");
+            line.put("severity", exception.severity().name().toLowerCase());
+            line.put("message", exception.getMessage());
+            line.put("class", exception.getClass().getSimpleName());
+        }
+
+        channel.write(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(line.toString() + "\n", Charsets.UTF_8)));
+
+        // the last result ends the response
+        if (remaining.decrementAndGet() == 0)
+            channel.write(HttpChunk.LAST_CHUNK);
+    }
+
+    /**
+     * The job is queued, tell the client where to find out how it went
+     */
+    private void acknowledge(Channel channel, Job job)
+    {
+        final HttpResponse response = jsonResponse(HttpResponseStatus.ACCEPTED, job.toJSON(objectMapper));
+        response.setHeader(HttpHeaders.Names.LOCATION, DegraphmalizeDecoder.JOBS_URI + "/" + job.id());
+        channel.write(response);
+    }
+
+    private void jobStatus(final Channel channel, JobStatusRequest request)
+    {
+        if (!request.isSubscription())
+        {
+            final Job job = jobs.get(request.job());
+            if (job == null)
+                throw new JobNotFound(request.job());
+
+            channel.write(jsonResponse(HttpResponseStatus.OK, job.toJSON(objectMapper)));
+            return;
+        }
+
+        // stream every change until the client goes away
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setChunked(true);
+        response.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        response.setHeader(HttpHeaders.Names.CONTENT_TYPE, "application/x-ndjson");
+        channel.write(response);
+
+        final JobListener listener = new JobListener()
+        {
+            @Override
+            public void jobChanged(Job job)
+            {
+                // a subscriber that doesn't keep up misses changes, instead of filling our memory
+                if (channel.isWritable())
+                    channel.write(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(job.toJSON(objectMapper).toString() + "\n", Charsets.UTF_8)));
+            }
+        };
+
+        jobs.subscribe(listener);
+        channel.getCloseFuture().addListener(new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete(ChannelFuture future)
+            {
+                jobs.unsubscribe(listener);
+            }
+        });
+    }
+
+    private static HttpResponse jsonResponse(HttpResponseStatus status, ObjectNode json)
+    {
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.setContent(ChannelBuffers.copiedBuffer(json.toString(), Charsets.UTF_8));
+        response.setHeader(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+        HttpHeaders.setContentLength(response, response.getContent().readableBytes());
+        return response;
+    }
 }
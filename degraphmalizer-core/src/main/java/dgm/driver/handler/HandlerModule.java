@@ -3,6 +3,7 @@ package dgm.driver.handler;
 import com.google.inject.*;
 import dgm.configuration.Configuration;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
 import org.jboss.netty.handler.codec.http.HttpServerCodec;
 import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 
@@ -14,6 +15,12 @@ import java.util.concurrent.Executor;
  */
 public class HandlerModule extends AbstractModule
 {
+    // requests read ahead on a connection before reading is suspended
+    private static final int MAX_PIPELINED_REQUESTS = 64;
+
+    // largest batch request
+    private static final int MAX_CONTENT_LENGTH = 16 * 1024 * 1024;
+
     @Override
     protected final void configure()
     {
@@ -36,7 +43,12 @@ public class HandlerModule extends AbstractModule
         final ChannelPipeline pipeline = Channels.pipeline();
 
         pipeline.addLast("http-codec", new HttpServerCodec());
-        //pipeline.addLast("chunk-aggregator", new HttpChunkAggregator(1024 * 1024 * 2));
+
+        // the body of a batch request
+        pipeline.addLast("chunk-aggregator", new HttpChunkAggregator(MAX_CONTENT_LENGTH));
+
+        // keep the connection open and answer pipelined requests in order
+        pipeline.addLast("http-pipelining", new HttpPipeliningHandler(MAX_PIPELINED_REQUESTS));
 
         // convert http request into degraphmalize requests
         pipeline.addLast("degraphmalize-decoder", new DegraphmalizeDecoder());
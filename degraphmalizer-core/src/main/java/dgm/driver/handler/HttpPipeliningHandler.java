@@ -0,0 +1,147 @@
+package dgm.driver.handler;
+
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Keeps connections open between requests and accepts pipelined requests.
+ * <p/>
+ * Requests of a connection are passed on one at a time: the next request goes up the pipeline when the response to
+ * the previous one has been written, so responses are always sent in request order. Degraphmalize requests are
+ * executed one by one anyway, so nothing is lost by waiting.
+ * <p/>
+ * When too many requests are waiting, reading from the connection is suspended until the handler catches up. The
+ * connection is closed after the response to a request that doesn't want to keep it open. A chunked response is
+ * complete when its last chunk has been written.
+ * <p/>
+ * There is one instance of this handler per connection.
+ */
+public class HttpPipeliningHandler extends SimpleChannelHandler
+{
+    private final int maxWaiting;
+
+    private final Queue<MessageEvent> waiting = new LinkedList<MessageEvent>();
+
+    // a request has been passed on and its response has not been written yet
+    private boolean busy = false;
+    private boolean keepAlive = false;
+    private HttpVersion version = HttpVersion.HTTP_1_1;
+
+    /**
+     * @param maxWaiting Stop reading from the connection when this many requests are waiting
+     */
+    public HttpPipeliningHandler(int maxWaiting)
+    {
+        this.maxWaiting = maxWaiting;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception
+    {
+        if(!(e.getMessage() instanceof HttpRequest))
+        {
+            ctx.sendUpstream(e);
+            return;
+        }
+
+        synchronized (this)
+        {
+            if(busy)
+            {
+                waiting.add(e);
+                if(waiting.size() >= maxWaiting)
+                    ctx.getChannel().setReadable(false);
+                return;
+            }
+
+            start((HttpRequest) e.getMessage());
+        }
+
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception
+    {
+        final Object message = e.getMessage();
+
+        if(message instanceof HttpResponse)
+        {
+            final HttpResponse response = (HttpResponse) message;
+            synchronized (this)
+            {
+                response.setProtocolVersion(version);
+                HttpHeaders.setKeepAlive(response, busy && keepAlive);
+
+                ctx.sendDownstream(e);
+            }
+
+            // a chunked response is done after its last chunk
+            if(!response.isChunked())
+                responseWritten(ctx, e);
+
+            return;
+        }
+
+        ctx.sendDownstream(e);
+
+        if(message instanceof HttpChunk && ((HttpChunk) message).isLast())
+            responseWritten(ctx, e);
+    }
+
+    private void responseWritten(ChannelHandlerContext ctx, MessageEvent e)
+    {
+        final MessageEvent next;
+        synchronized (this)
+        {
+            // also close after a response without a request, for instance to a request that could not be parsed
+            if(!busy || !keepAlive)
+            {
+                e.getFuture().addListener(ChannelFutureListener.CLOSE);
+                waiting.clear();
+                busy = false;
+                return;
+            }
+
+            next = waiting.poll();
+            if(next == null)
+            {
+                busy = false;
+                return;
+            }
+
+            start((HttpRequest) next.getMessage());
+
+            if(waiting.size() < maxWaiting && !ctx.getChannel().isReadable())
+                ctx.getChannel().setReadable(true);
+        }
+
+        // responses to the next request are written behind the one we just wrote
+        ctx.sendUpstream(next);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+    {
+        synchronized (this)
+        {
+            waiting.clear();
+        }
+
+        ctx.sendUpstream(e);
+    }
+
+    private void start(HttpRequest request)
+    {
+        busy = true;
+        keepAlive = HttpHeaders.isKeepAlive(request);
+        version = request.getProtocolVersion();
+    }
+}
@@ -0,0 +1,17 @@
+package dgm.exceptions;
+
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+public class JobNotFound extends DegraphmalizerException
+{
+    public JobNotFound(String job)
+    {
+        super("Unknown job " + job + ", it does not exist or has been forgotten", Severity.INFO);
+    }
+
+    @Override
+    public HttpResponseStatus httpStatusCode()
+    {
+        return HttpResponseStatus.NOT_FOUND;
+    }
+}
@@ -0,0 +1,33 @@
+package dgm.exceptions;
+
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * The degraphmalize queue is full, the client should try again later
+ */
+public class Overloaded extends DegraphmalizerException
+{
+    public static final HttpResponseStatus TOO_MANY_REQUESTS = new HttpResponseStatus(429, "Too Many Requests");
+
+    private final int retryAfter;
+
+    /**
+     * @param retryAfter Seconds the client should wait before trying again
+     */
+    public Overloaded(int queued, int retryAfter)
+    {
+        super("Degraphmalize queue is full with " + queued + " requests", Severity.WARN);
+        this.retryAfter = retryAfter;
+    }
+
+    public int retryAfter()
+    {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpResponseStatus httpStatusCode()
+    {
+        return TOO_MANY_REQUESTS;
+    }
+}
@@ -1,11 +1,13 @@
 package dgm.graphs;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
 import dgm.*;
@@ -15,7 +17,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.tinkerpop.blueprints.TransactionalGraph.Conclusion.FAILURE;
 import static com.tinkerpop.blueprints.TransactionalGraph.Conclusion.SUCCESS;
@@ -27,11 +32,26 @@ public class BlueprintsSubgraphManager implements SubgraphManager
 
     private final ObjectMapper om;
     private final TransactionalGraph graph;
+    private final EdgeAggregates aggregates;
+
+    // totals of the properties offered in commits and the properties that actually had to be written
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong propertiesOffered = new AtomicLong();
+    private final AtomicLong propertiesWritten = new AtomicLong();
 
     public BlueprintsSubgraphManager(ObjectMapper om, TransactionalGraph graph)
+    {
+        this(om, graph, new EdgeAggregates());
+    }
+
+    /**
+     * @param aggregates The edge aggregates to update on every commit
+     */
+    public BlueprintsSubgraphManager(ObjectMapper om, TransactionalGraph graph, EdgeAggregates aggregates)
     {
         this.graph = graph;
         this.om = om;
+        this.aggregates = aggregates;
     }
 
     @Override
@@ -46,6 +66,8 @@ public class BlueprintsSubgraphManager implements SubgraphManager
         if(detectNonSymbolicTargets(sg))
             throw new IllegalArgumentException("All edges must link to an identified with version==0");
 
+        final PropertyWrites writes = new PropertyWrites();
+
         boolean success = false;
         try
         {
@@ -54,11 +76,13 @@ public class BlueprintsSubgraphManager implements SubgraphManager
             List<Vertex> verticesToDelete = elementsToDelete.a;
             List<Edge> edgesToDelete = elementsToDelete.b;
 
+            final List<EdgeAggregates.EdgeState> edgesBefore = aggregates.capture(om, edgesToDelete);
+
             // do stuff needed for central vertex...
-            final Vertex center = createOrUpdateCentralVertex(id, sg);
+            final Vertex center = createOrUpdateCentralVertex(id, sg, writes);
 
             // ...and for the edges
-            final Pair<List<Vertex>, List<Edge>> nextVersionElts = createOrUpdateEdges(id, sg);
+            final Pair<List<Vertex>, List<Edge>> nextVersionElts = createOrUpdateEdges(id, sg, writes);
 
             // now make sure everything we touched is not deleted
             verticesToDelete.remove(center);
@@ -68,11 +92,21 @@ public class BlueprintsSubgraphManager implements SubgraphManager
             List<Vertex> danglingVertices = findDanglingVertices(id, edgesToDelete);
             verticesToDelete.addAll(danglingVertices);
 
+            final List<EdgeAggregates.EdgeState> edgesAfter = aggregates.capture(om, nextVersionElts.b);
+
             removeGraphElements(id, verticesToDelete, edgesToDelete);
 
+            aggregates.apply(om, graph, edgesBefore, edgesAfter, verticesToDelete);
+
             // commit changes to graph
             success = true;
             graph.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+
+            commits.incrementAndGet();
+            propertiesOffered.addAndGet(writes.offered);
+            propertiesWritten.addAndGet(writes.written);
+
+            log.debug("Commit of {} wrote {} of {} properties", new Object[]{id, writes.written, writes.offered});
         }
         finally
         {
@@ -82,6 +116,45 @@ public class BlueprintsSubgraphManager implements SubgraphManager
         }
     }
 
+    /**
+     * Number of successfully committed subgraphs
+     */
+    public final long getCommitCount()
+    {
+        return commits.get();
+    }
+
+    /**
+     * Number of vertex and edge properties in all committed subgraphs
+     */
+    public final long getPropertiesOffered()
+    {
+        return propertiesOffered.get();
+    }
+
+    /**
+     * Number of properties that were set or removed, unchanged properties are not written
+     */
+    public final long getPropertiesWritten()
+    {
+        return propertiesWritten.get();
+    }
+
+    /**
+     * Property write counters of a single commit
+     */
+    private static final class PropertyWrites
+    {
+        int offered = 0;
+        int written = 0;
+
+        void set(Element element, Map<String, JsonNode> properties)
+        {
+            offered += properties.size();
+            written += setProperties(element, properties);
+        }
+    }
+
     // TODO it is probably better to ignore all versions in a subgraph (ie. call getSymbolic on all edges.other())
     private boolean detectNonSymbolicTargets(Subgraph sg)
     {
@@ -131,8 +204,12 @@ public class BlueprintsSubgraphManager implements SubgraphManager
             List<Vertex> danglingVertices = findDanglingVertices(id, edgesToDelete);
             verticesToDelete.addAll(danglingVertices);
 
+            final List<EdgeAggregates.EdgeState> edgesBefore = aggregates.capture(om, edgesToDelete);
+
             removeGraphElements(id, verticesToDelete, edgesToDelete);
 
+            aggregates.apply(om, graph, edgesBefore, Collections.<EdgeAggregates.EdgeState>emptyList(), verticesToDelete);
+
             // commit changes to graph
             success = true;
         }
@@ -211,7 +288,7 @@ public class BlueprintsSubgraphManager implements SubgraphManager
         return true;
     }
 
-    private Vertex createOrUpdateCentralVertex(ID id, Subgraph sg) throws DegraphmalizerException
+    private Vertex createOrUpdateCentralVertex(ID id, Subgraph sg, PropertyWrites writes) throws DegraphmalizerException
     {
         // find vertex, doesn't care about version
         Vertex center = resolveVertex(om, graph, id);
@@ -231,10 +308,7 @@ public class BlueprintsSubgraphManager implements SubgraphManager
                 log.warn("Commit version < current version", id, cid);
         }
 
-        setProperties(center, sg.properties());
-
-        //if the 'center' vertex has edges, then the edge id should be updated.
-        updateEdgeIds(center, id);
+        writes.set(center, sg.properties());
 
         // update the identifier (to the latest version)
         setID(om, center, id);
@@ -243,25 +317,6 @@ public class BlueprintsSubgraphManager implements SubgraphManager
         return center;
     }
 
-    private void updateEdgeIds(Vertex center, ID id) throws DegraphmalizerException
-    {
-        for(Edge edge: center.getEdges(Direction.BOTH))
-            setEdgeId(om, updateEdgeId(edge, id), edge);
-    }
-
-    private EdgeID updateEdgeId(Edge edge, ID id) throws DegraphmalizerException
-    {
-        final EdgeID edgeID = getEdgeID(om, edge);
-
-        if (onlyVersionDiffers(edgeID.head(), id))
-            return new EdgeID(edgeID.tail(), edgeID.label(), id);
-
-        if (onlyVersionDiffers(edgeID.tail(), id))
-            return new EdgeID(id, edgeID.label(), edgeID.head());
-
-        throw new IllegalArgumentException("id:" + id + " is not part of edge id:" + edgeID);
-    }
-
     /**
      * This method iterates over the edges declared in the subgraph.
      * if The edge does not exist in the graph yet, create the target (symbolic) Vertex and the edge.
@@ -269,7 +324,7 @@ public class BlueprintsSubgraphManager implements SubgraphManager
      * If so: update the properties of that edge.
      * @return A pair of lists that contain all Edges and All vertices that will be part of the new subgraph.
      */
-    private Pair<List<Vertex>, List<Edge>> createOrUpdateEdges(ID id, Subgraph sg)
+    private Pair<List<Vertex>, List<Edge>> createOrUpdateEdges(ID id, Subgraph sg, PropertyWrites writes)
     {
         List<Vertex> vertexList = new ArrayList<Vertex>();
         List<Edge> edgeList = new ArrayList<Edge>();
@@ -291,7 +346,7 @@ public class BlueprintsSubgraphManager implements SubgraphManager
 
             // claim edge
             setOwner(om, edge, id);
-            setProperties(edge, e.properties());
+            writes.set(edge, e.properties());
             edgeList.add(edge);
         }
         return new Pair<List<Vertex>, List<Edge>>(vertexList, edgeList);
@@ -0,0 +1,251 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import dgm.GraphUtilities;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * An aggregate over the edges of a vertex in one direction, optionally only edges with a certain label.
+ * <p/>
+ * The state of the aggregate is stored in a property of the vertex and kept up to date by {@link EdgeAggregates}
+ * when subgraphs are committed, so reading it does not need a graph walk. The state is stored with the generation of
+ * the {@link EdgeAggregates} that maintains it, state of another generation may have missed changes and is computed
+ * again.
+ * <ul>
+ * <li>{@link Kind#COUNT}: the number of edges</li>
+ * <li>{@link Kind#SUM}: the sum of a numeric edge property</li>
+ * <li>{@link Kind#SET}: the distinct values of an edge property. The state counts the edges per value, so a value
+ * stays in the set until the last edge with that value is gone.</li>
+ * </ul>
+ */
+public final class EdgeAggregate
+{
+    public enum Kind { COUNT, SUM, SET }
+
+    final Kind kind;
+    final Direction direction;
+    final String label;
+    final String field;
+    final String key;
+    final String generationKey;
+
+    /**
+     * @param direction Aggregate over {@code vertex.getEdges(direction)}, this matches the direction of a walk
+     * @param label Only edges with this label, or {@code null} for all edges
+     * @param field Edge property for sum and set, ignored for count
+     */
+    public EdgeAggregate(Kind kind, Direction direction, String label, String field)
+    {
+        if(direction == Direction.BOTH)
+            throw new IllegalArgumentException("An edge aggregate needs direction IN or OUT");
+
+        if(kind != Kind.COUNT && field == null)
+            throw new IllegalArgumentException("Aggregate " + kind + " needs a field");
+
+        this.kind = kind;
+        this.direction = direction;
+        this.label = label;
+        this.field = kind == Kind.COUNT ? null : field;
+        this.key = GraphUtilities.PREFIX + "aggregate:" + kind.name().toLowerCase() + ":" + direction.name() + ":"
+                + (label == null ? "" : label) + ":" + (this.field == null ? "" : this.field);
+        this.generationKey = key + ":generation";
+    }
+
+    /**
+     * Name of the vertex property that holds the state
+     */
+    public String key()
+    {
+        return key;
+    }
+
+    boolean matches(Edge edge)
+    {
+        return label == null || label.equals(edge.getLabel());
+    }
+
+    /**
+     * Read the aggregate of a vertex. If no state of the generation was stored, it is computed from the edges of the
+     * vertex.
+     *
+     * @param generation Generation of the stored state, or {@code null} to always compute from the edges
+     */
+    public JsonNode read(ObjectMapper om, Vertex vertex, String generation)
+    {
+        final JsonNode stored = stored(om, vertex, generation);
+        final JsonNode state = stored == null ? compute(om, vertex) : stored;
+
+        if(kind != Kind.SET)
+            return state;
+
+        final ArrayNode values = om.createArrayNode();
+        final Iterator<String> names = state.fieldNames();
+        while(names.hasNext())
+            values.add(parse(om, names.next()));
+
+        return values;
+    }
+
+    /**
+     * The stored state, {@code null} if there is none of this generation
+     */
+    JsonNode stored(ObjectMapper om, Vertex vertex, String generation)
+    {
+        final Object stored = vertex.getProperty(key);
+        if(stored == null || generation == null || !generation.equals(vertex.getProperty(generationKey)))
+            return null;
+
+        return GraphUtilities.fromPropertyValue(om, key, stored);
+    }
+
+    void store(Vertex vertex, JsonNode state, String generation)
+    {
+        vertex.setProperty(key, GraphUtilities.toPropertyValue(state));
+        vertex.setProperty(generationKey, generation);
+    }
+
+    /**
+     * Compute the state from scratch
+     */
+    JsonNode compute(ObjectMapper om, Vertex vertex)
+    {
+        final Delta delta = new Delta();
+        for(Edge e : vertex.getEdges(direction))
+            if(matches(e))
+                delta.add(value(om, e), 1);
+
+        return delta.applyTo(om, null);
+    }
+
+    /**
+     * Value of the aggregated field of an edge, {@code null} for count or if the edge does not have the field
+     */
+    JsonNode value(ObjectMapper om, Edge edge)
+    {
+        if(field == null || edge.getProperty(field) == null)
+            return null;
+
+        return GraphUtilities.getProperty(om, edge, field);
+    }
+
+    private static JsonNode parse(ObjectMapper om, String json)
+    {
+        try
+        {
+            return om.readTree(json);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Cannot read aggregate value " + json, e);
+        }
+    }
+
+    /**
+     * Change of the aggregate of a single vertex
+     */
+    final class Delta
+    {
+        long count = 0;
+        double sum = 0;
+        boolean integral = true;
+        final Map<String, Integer> values = new TreeMap<String, Integer>();
+
+        /**
+         * @param sign 1 for an added edge, -1 for a removed edge
+         */
+        void add(JsonNode value, int sign)
+        {
+            switch(kind)
+            {
+                case COUNT:
+                    count += sign;
+                    break;
+
+                case SUM:
+                    if(value != null && value.isNumber())
+                    {
+                        sum += sign * value.doubleValue();
+                        integral &= value.isIntegralNumber();
+                    }
+                    break;
+
+                case SET:
+                    if(value != null && !value.isNull())
+                    {
+                        final String k = value.toString();
+                        final Integer n = values.get(k);
+                        values.put(k, (n == null ? 0 : n) + sign);
+                    }
+                    break;
+            }
+        }
+
+        boolean isEmpty()
+        {
+            if(count != 0 || sum != 0)
+                return false;
+
+            for(Integer n : values.values())
+                if(n != 0)
+                    return false;
+
+            return true;
+        }
+
+        /**
+         * @param state Current state, or {@code null} to start from nothing
+         */
+        JsonNode applyTo(ObjectMapper om, JsonNode state)
+        {
+            switch(kind)
+            {
+                case COUNT:
+                    return om.getNodeFactory().numberNode((state == null ? 0 : state.longValue()) + count);
+
+                case SUM:
+                    if(integral && (state == null || state.isIntegralNumber()))
+                        return om.getNodeFactory().numberNode((state == null ? 0 : state.longValue()) + (long) sum);
+
+                    return om.getNodeFactory().numberNode((state == null ? 0 : state.doubleValue()) + sum);
+
+                default:
+                    final ObjectNode result = state == null ? om.createObjectNode() : (ObjectNode) state.deepCopy();
+                    for(Map.Entry<String, Integer> e : values.entrySet())
+                    {
+                        final int n = result.path(e.getKey()).asInt() + e.getValue();
+                        if(n > 0)
+                            result.put(e.getKey(), n);
+                        else
+                            result.remove(e.getKey());
+                    }
+                    return result;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof EdgeAggregate && key.equals(((EdgeAggregate) o).key);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return key;
+    }
+}
@@ -0,0 +1,227 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import dgm.configuration.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * The {@link EdgeAggregate}s that are maintained on the vertices of the graph.
+ * <p/>
+ * The {@link BlueprintsSubgraphManager} captures the edges of a subgraph before and after a commit. The difference
+ * is applied to the stored aggregates of the vertices at both ends, so the cost of a commit depends on the number of
+ * changed edges, not on the number of edges of the vertices.
+ * <p/>
+ * Aggregates are registered when they are found in the configuration and are maintained from then on, also when a
+ * configuration reload drops them. Vertices without state compute it from their edges the first time it is needed.
+ * <p/>
+ * An earlier process may not have maintained an aggregate for a while, for instance when it ran without it in its
+ * configuration. So stored state is only trusted if it was written by this instance, see {@link #generation()}, and
+ * is computed from the edges again otherwise.
+ */
+@Singleton
+public class EdgeAggregates
+{
+    private static final Logger log = LoggerFactory.getLogger(EdgeAggregates.class);
+
+    private volatile Set<EdgeAggregate> aggregates = ImmutableSet.of();
+    private Configuration configuration = null;
+
+    private final String generation = UUID.randomUUID().toString();
+
+    /**
+     * Register all aggregates of the walk properties in a configuration, does nothing if the configuration was seen before.
+     */
+    public final synchronized void update(Configuration cfg)
+    {
+        if(cfg == configuration)
+            return;
+
+        configuration = cfg;
+
+        final Set<EdgeAggregate> found = new HashSet<EdgeAggregate>();
+        for(IndexConfig i : cfg.indices().values())
+            for(TypeConfig t : i.types().values())
+                for(WalkConfig w : t.walks().values())
+                    for(PropertyConfig p : w.properties().values())
+                        if(p instanceof EdgeAggregateConfig)
+                            found.add(((EdgeAggregateConfig) p).aggregate());
+
+        register(found);
+    }
+
+    public final synchronized void register(Collection<EdgeAggregate> added)
+    {
+        if(aggregates.containsAll(added))
+            return;
+
+        aggregates = ImmutableSet.<EdgeAggregate>builder().addAll(aggregates).addAll(added).build();
+        log.info("Maintaining edge aggregates {}", aggregates);
+    }
+
+    public final Set<EdgeAggregate> aggregates()
+    {
+        return aggregates;
+    }
+
+    /**
+     * Generation of the state written by this instance
+     */
+    public final String generation()
+    {
+        return generation;
+    }
+
+    /**
+     * Read an aggregate of a vertex, from the stored state if this instance maintained it
+     */
+    public final JsonNode read(ObjectMapper om, EdgeAggregate aggregate, Vertex vertex)
+    {
+        return aggregate.read(om, vertex, generation);
+    }
+
+    /**
+     * Record the edges, and the aggregated fields, before or after a change
+     */
+    final List<EdgeState> capture(ObjectMapper om, Iterable<Edge> edges)
+    {
+        final Set<EdgeAggregate> current = aggregates;
+        if(current.isEmpty())
+            return Collections.emptyList();
+
+        final List<EdgeState> states = new ArrayList<EdgeState>();
+        for(Edge e : edges)
+        {
+            final Map<EdgeAggregate, JsonNode> values = new HashMap<EdgeAggregate, JsonNode>();
+            for(EdgeAggregate a : current)
+                if(a.matches(e))
+                    values.put(a, a.value(om, e));
+
+            if(!values.isEmpty())
+                states.add(new EdgeState(e.getVertex(Direction.OUT).getId(), e.getVertex(Direction.IN).getId(), values));
+        }
+
+        return states;
+    }
+
+    /**
+     * Update the stored aggregates with the difference between the edges before and after a change.
+     *
+     * @param removed The vertices removed by the change, they are skipped
+     * @return The number of vertex properties written
+     */
+    final int apply(ObjectMapper om, Graph graph, List<EdgeState> before, List<EdgeState> after, Collection<Vertex> removed)
+    {
+        if(before.isEmpty() && after.isEmpty())
+            return 0;
+
+        final Map<Target, EdgeAggregate.Delta> deltas = new HashMap<Target, EdgeAggregate.Delta>();
+        collect(deltas, before, -1);
+        collect(deltas, after, 1);
+
+        final Set<Object> removedIds = new HashSet<Object>();
+        for(Vertex v : removed)
+            removedIds.add(v.getId());
+
+        int written = 0;
+        for(Map.Entry<Target, EdgeAggregate.Delta> d : deltas.entrySet())
+        {
+            if(d.getValue().isEmpty())
+                continue;
+
+            final EdgeAggregate aggregate = d.getKey().aggregate;
+            if(removedIds.contains(d.getKey().vertex))
+                continue;
+
+            final Vertex vertex = graph.getVertex(d.getKey().vertex);
+            if(vertex == null)
+                continue;
+
+            final JsonNode stored = aggregate.stored(om, vertex, generation);
+
+            // without state we start from the edges, which already include the change
+            final JsonNode state = stored == null
+                    ? aggregate.compute(om, vertex)
+                    : d.getValue().applyTo(om, stored);
+
+            aggregate.store(vertex, state, generation);
+            written++;
+        }
+
+        return written;
+    }
+
+    private static void collect(Map<Target, EdgeAggregate.Delta> deltas, List<EdgeState> states, int sign)
+    {
+        for(EdgeState s : states)
+        {
+            for(Map.Entry<EdgeAggregate, JsonNode> v : s.values.entrySet())
+            {
+                final EdgeAggregate a = v.getKey();
+
+                // an aggregate in direction OUT belongs to the tail of the edge, IN to the head
+                final Target target = new Target(a.direction == Direction.OUT ? s.tail : s.head, a);
+
+                EdgeAggregate.Delta delta = deltas.get(target);
+                if(delta == null)
+                {
+                    delta = a.new Delta();
+                    deltas.put(target, delta);
+                }
+
+                delta.add(v.getValue(), sign);
+            }
+        }
+    }
+
+    static final class EdgeState
+    {
+        final Object tail;
+        final Object head;
+        final Map<EdgeAggregate, JsonNode> values;
+
+        EdgeState(Object tail, Object head, Map<EdgeAggregate, JsonNode> values)
+        {
+            this.tail = tail;
+            this.head = head;
+            this.values = values;
+        }
+    }
+
+    private static final class Target
+    {
+        final Object vertex;
+        final EdgeAggregate aggregate;
+
+        Target(Object vertex, EdgeAggregate aggregate)
+        {
+            this.vertex = vertex;
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof Target))
+                return false;
+
+            final Target t = (Target) o;
+            return vertex.equals(t.vertex) && aggregate.equals(t.aggregate);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * vertex.hashCode() + aggregate.hashCode();
+        }
+    }
+}
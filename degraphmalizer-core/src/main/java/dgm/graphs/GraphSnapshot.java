@@ -0,0 +1,407 @@
+package dgm.graphs;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.tinkerpop.blueprints.*;
+import com.tinkerpop.blueprints.util.wrappers.batch.BatchGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, streaming binary snapshot of a graph.
+ * <p/>
+ * The snapshot contains every vertex and edge with all of their properties, so this includes the identifiers,
+ * owners and keys written by {@link dgm.GraphUtilities}. The layout is:
+ *
+ * <pre>
+ * header:  "DGMS" formatVersion:int
+ * vertex:  VERTEX vertexNr:long properties
+ * edge:    EDGE tailNr:long headNr:long label:string properties
+ * footer:  END vertexCount:long edgeCount:long
+ *
+ * properties: count:int (keyNr:int [key:string if keyNr is new] type:byte value)*
+ * </pre>
+ *
+ * Property keys are written once and then referred to by number. All vertices are written before the edges, so
+ * a restore can stream the file without seeking.
+ * <p/>
+ * Vertices without any properties (such as the Neo4j reference node) carry no information and are skipped.
+ */
+public final class GraphSnapshot
+{
+    private static final Logger log = LoggerFactory.getLogger(GraphSnapshot.class);
+
+    private static final byte[] MAGIC = new byte[]{'D', 'G', 'M', 'S'};
+    /**
+     * Version of the snapshots written by {@link #export}. Version 1 snapshots hold their properties in the untyped
+     * format of before {@link PropertyFormatMigration}, and are migrated after they are restored.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final byte END = 0;
+    private static final byte VERTEX = 1;
+    private static final byte EDGE = 2;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_FLOAT = 6;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of elements inserted per transaction during a restore.
+     */
+    public static final long RESTORE_BATCH_SIZE = 10000;
+
+    private GraphSnapshot() {}
+
+    /**
+     * Element counts of an exported or restored snapshot.
+     */
+    public static final class Counts
+    {
+        public final long vertices;
+        public final long edges;
+
+        // format version of the snapshot
+        public final int version;
+
+        Counts(long vertices, long edges, int version)
+        {
+            this.vertices = vertices;
+            this.edges = edges;
+            this.version = version;
+        }
+
+        @Override
+        public String toString()
+        {
+            return vertices + " vertices, " + edges + " edges";
+        }
+    }
+
+    /**
+     * Write the snapshot to a temporary file next to the target, which replaces the target only when the export
+     * succeeded. A failed export never leaves a truncated snapshot behind.
+     */
+    public static Counts export(Graph graph, File file) throws IOException
+    {
+        final File temp = new File(file.getPath() + ".tmp");
+        boolean success = false;
+        try
+        {
+            final Counts counts;
+            final OutputStream os = new FileOutputStream(temp);
+            try
+            {
+                counts = export(graph, os);
+            }
+            finally
+            {
+                os.close();
+            }
+
+            Files.move(temp, file);
+            success = true;
+            return counts;
+        }
+        finally
+        {
+            if(!success && temp.exists() && !temp.delete())
+                log.warn("Could not remove incomplete graph snapshot {}", temp);
+        }
+    }
+
+    /**
+     * Write all vertices and edges of the graph to the stream. The stream is flushed but not closed.
+     * <p/>
+     * The graph can be changed while it is exported. Edges to vertices that were not exported, because they were
+     * added after the vertices were written or have no properties, are skipped.
+     */
+    public static Counts export(Graph graph, OutputStream os) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+        final Map<String,Integer> keys = new HashMap<String, Integer>();
+
+        // graph specific vertex id --> sequence number in the snapshot
+        final Map<Object,Long> vertexNrs = new HashMap<Object, Long>();
+
+        out.write(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        long vertexCount = 0;
+        for(Vertex v : graph.getVertices())
+        {
+            if(v.getPropertyKeys().isEmpty())
+                continue;
+
+            vertexNrs.put(v.getId(), vertexCount);
+
+            out.writeByte(VERTEX);
+            out.writeLong(vertexCount);
+            writeProperties(out, keys, v);
+
+            vertexCount++;
+        }
+
+        long edgeCount = 0;
+        long skipped = 0;
+        for(Edge e : graph.getEdges())
+        {
+            final Long tail = vertexNrs.get(e.getVertex(Direction.OUT).getId());
+            final Long head = vertexNrs.get(e.getVertex(Direction.IN).getId());
+
+            if(tail == null || head == null)
+            {
+                skipped++;
+                continue;
+            }
+
+            out.writeByte(EDGE);
+            out.writeLong(tail);
+            out.writeLong(head);
+            writeString(out, e.getLabel());
+            writeProperties(out, keys, e);
+
+            edgeCount++;
+        }
+
+        out.writeByte(END);
+        out.writeLong(vertexCount);
+        out.writeLong(edgeCount);
+        out.flush();
+
+        if(skipped > 0)
+            log.warn("Skipped {} edges to vertices that were not exported", skipped);
+
+        final Counts counts = new Counts(vertexCount, edgeCount, FORMAT_VERSION);
+        log.info("Exported graph snapshot with {}", counts);
+        return counts;
+    }
+
+    /**
+     * A graph is considered empty when it has no edges and no vertices with properties.
+     */
+    public static boolean isEmpty(Graph graph)
+    {
+        if(graph.getEdges().iterator().hasNext())
+            return false;
+
+        for(Vertex v : graph.getVertices())
+            if(!v.getPropertyKeys().isEmpty())
+                return false;
+
+        return true;
+    }
+
+    public static Counts restore(TransactionalGraph graph, File file) throws IOException
+    {
+        final InputStream is = new FileInputStream(file);
+        try
+        {
+            return restore(graph, is);
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Load a snapshot into an empty graph. Snapshots of older format versions are loaded as they are, the caller
+     * decides about migrating them from the version in the returned counts.
+     * <p/>
+     * Elements are inserted through a {@link BatchGraph}, which commits once every {@link #RESTORE_BATCH_SIZE}
+     * elements instead of once per element.
+     */
+    public static Counts restore(TransactionalGraph graph, InputStream is) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+        final List<String> keys = new ArrayList<String>();
+
+        final byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for(int i = 0; i < MAGIC.length; i++)
+            if(magic[i] != MAGIC[i])
+                throw new IOException("Not a graph snapshot");
+
+        final int version = in.readInt();
+        if(version < 1 || version > FORMAT_VERSION)
+            throw new IOException("Unsupported graph snapshot format version " + version);
+
+        final BatchGraph<TransactionalGraph> batch = new BatchGraph<TransactionalGraph>(graph, BatchGraph.IdType.NUMBER, RESTORE_BATCH_SIZE);
+        batch.setLoadingFromScratch(true);
+
+        long vertexCount = 0;
+        long edgeCount = 0;
+        boolean success = false;
+        try
+        {
+            while(true)
+            {
+                final byte tag = in.readByte();
+
+                if(tag == END)
+                    break;
+
+                switch(tag)
+                {
+                    case VERTEX:
+                        final Vertex v = batch.addVertex(in.readLong());
+                        readProperties(in, keys, v);
+                        vertexCount++;
+                        break;
+
+                    case EDGE:
+                        final Vertex tail = batch.getVertex(in.readLong());
+                        final Vertex head = batch.getVertex(in.readLong());
+                        final Edge e = batch.addEdge(null, tail, head, readString(in));
+                        readProperties(in, keys, e);
+                        edgeCount++;
+                        break;
+
+                    default:
+                        throw new IOException("Corrupt graph snapshot, unknown record type " + tag);
+                }
+            }
+
+            final long expectedVertices = in.readLong();
+            final long expectedEdges = in.readLong();
+            if(expectedVertices != vertexCount || expectedEdges != edgeCount)
+                throw new IOException("Graph snapshot is truncated, expected " + expectedVertices + " vertices and "
+                        + expectedEdges + " edges");
+
+            success = true;
+        }
+        finally
+        {
+            batch.stopTransaction(success ? TransactionalGraph.Conclusion.SUCCESS : TransactionalGraph.Conclusion.FAILURE);
+        }
+
+        final Counts counts = new Counts(vertexCount, edgeCount, version);
+        log.info("Restored graph snapshot with {}", counts);
+        return counts;
+    }
+
+    private static void writeProperties(DataOutputStream out, Map<String,Integer> keys, Element element) throws IOException
+    {
+        final Set<String> propertyKeys = element.getPropertyKeys();
+
+        out.writeInt(propertyKeys.size());
+
+        for(String key : propertyKeys)
+        {
+            final Integer nr = keys.get(key);
+            if(nr == null)
+            {
+                // first occurrence, define the key
+                out.writeInt(keys.size());
+                writeString(out, key);
+                keys.put(key, keys.size());
+            }
+            else
+                out.writeInt(nr);
+
+            writeValue(out, key, element.getProperty(key));
+        }
+    }
+
+    private static void readProperties(DataInputStream in, List<String> keys, Element element) throws IOException
+    {
+        final int count = in.readInt();
+        for(int i = 0; i < count; i++)
+        {
+            final int nr = in.readInt();
+            if(nr == keys.size())
+                keys.add(readString(in));
+            else if(nr > keys.size())
+                throw new IOException("Corrupt graph snapshot, undefined property key " + nr);
+
+            element.setProperty(keys.get(nr), readValue(in));
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, String key, Object value) throws IOException
+    {
+        if(value instanceof String)
+        {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String)value);
+        }
+        else if(value instanceof Long)
+        {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long)value);
+        }
+        else if(value instanceof Integer)
+        {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer)value);
+        }
+        else if(value instanceof Boolean)
+        {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        }
+        else if(value instanceof Double)
+        {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if(value instanceof Float)
+        {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float)value);
+        }
+        else
+            throw new IllegalArgumentException("Cannot write property " + key + " of type "
+                    + (value == null ? "null" : value.getClass().getSimpleName()) + " to a graph snapshot");
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException
+    {
+        final byte type = in.readByte();
+        switch(type)
+        {
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            default:
+                throw new IOException("Corrupt graph snapshot, unknown property type " + type);
+        }
+    }
+
+    // DataOutput.writeUTF is limited to 64k, JSON properties can be larger
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        final byte[] bytes = s.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
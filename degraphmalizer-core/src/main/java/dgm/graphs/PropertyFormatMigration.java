@@ -0,0 +1,209 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import dgm.EdgeID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dgm.GraphUtilities.*;
+
+/**
+ * Converts graph stores written by older versions to the current property format.
+ * <p/>
+ * The old format stored every scalar as a bare string and found out the type by trying to parse it as JSON, so
+ * "3" meant the number 3 and "abc" meant the text abc. The migration reads properties exactly like the old format
+ * did and writes them again using {@link dgm.GraphUtilities#toPropertyValue(JsonNode)}.
+ * <p/>
+ * Edge identifiers used to contain the versions of head and tail, they are rewritten to the version independent
+ * form of {@link dgm.GraphUtilities#getStringRepresentation}.
+ * <p/>
+ * Because plain text looks the same in both formats, the migration must only run once. A marker file in the graph
+ * data directory records that a store uses the current format.
+ */
+public final class PropertyFormatMigration
+{
+    private static final Logger log = LoggerFactory.getLogger(PropertyFormatMigration.class);
+
+    /**
+     * Marker file written to the data directory of a graph in the current property format
+     */
+    public static final String MARKER = "dgm-property-format-3";
+
+    // stores marked with this have typed properties, but versioned edge identifiers
+    private static final String TYPED_PROPERTIES_MARKER = "dgm-property-format-2";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private PropertyFormatMigration() {}
+
+    /**
+     * Migrate the graph if the data directory has no marker file yet.
+     *
+     * @param current Whether the graph is known to be in the current format, such as a new graph or one restored
+     *                from a current snapshot. Such graphs are only marked.
+     */
+    public static void ensureCurrentFormat(ObjectMapper om, TransactionalGraph graph, File dataDir, boolean current) throws IOException
+    {
+        final File marker = new File(dataDir, MARKER);
+        if(marker.exists())
+            return;
+
+        final File typedMarker = new File(dataDir, TYPED_PROPERTIES_MARKER);
+        if(!current)
+        {
+            if(!typedMarker.exists())
+                migrate(om, graph);
+
+            migrateEdgeIdentifiers(om, graph);
+        }
+
+        Files.touch(marker);
+        if(typedMarker.exists() && !typedMarker.delete())
+            log.warn("Could not delete old marker file {}", typedMarker);
+    }
+
+    /**
+     * Rewrite all old style properties, committing once per {@link #BATCH_SIZE} changed elements.
+     *
+     * @return The number of properties that were rewritten
+     */
+    public static long migrate(ObjectMapper om, TransactionalGraph graph)
+    {
+        log.info("Migrating graph properties to the typed property format");
+
+        final List<Element> elements = new ArrayList<Element>();
+        long migrated = 0;
+        int pending = 0;
+
+        boolean success = false;
+        try
+        {
+            // collect first, changing properties while iterating over the store is not allowed
+            for(Element v : graph.getVertices())
+                elements.add(v);
+
+            for(Element e : graph.getEdges())
+                elements.add(e);
+
+            for(Element element : elements)
+            {
+                final int changed = migrate(om, element);
+                if(changed == 0)
+                    continue;
+
+                migrated += changed;
+                if(++pending == BATCH_SIZE)
+                {
+                    graph.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+                    pending = 0;
+                }
+            }
+
+            success = true;
+        }
+        finally
+        {
+            graph.stopTransaction(success ? TransactionalGraph.Conclusion.SUCCESS : TransactionalGraph.Conclusion.FAILURE);
+        }
+
+        log.info("Migrated {} properties of {} graph elements", migrated, elements.size());
+        return migrated;
+    }
+
+    /**
+     * Rewrite the identifiers of all edges to the version independent form.
+     *
+     * @return The number of edges that were changed
+     */
+    public static long migrateEdgeIdentifiers(ObjectMapper om, TransactionalGraph graph)
+    {
+        log.info("Migrating edge identifiers to symbolic identifiers");
+
+        final List<Edge> edges = new ArrayList<Edge>();
+        long migrated = 0;
+
+        boolean success = false;
+        try
+        {
+            for(Edge e : graph.getEdges())
+                edges.add(e);
+
+            for(Edge e : edges)
+            {
+                final EdgeID edgeID = getEdgeID(om, e);
+                if(edgeID == null || getStringRepresentation(om, edgeID).equals(e.getProperty(IDENTIFIER)))
+                    continue;
+
+                setEdgeId(om, edgeID, e);
+                if(++migrated % BATCH_SIZE == 0)
+                    graph.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+            }
+
+            success = true;
+        }
+        finally
+        {
+            graph.stopTransaction(success ? TransactionalGraph.Conclusion.SUCCESS : TransactionalGraph.Conclusion.FAILURE);
+        }
+
+        log.info("Migrated {} of {} edge identifiers", migrated, edges.size());
+        return migrated;
+    }
+
+    private static int migrate(ObjectMapper om, Element element)
+    {
+        int changed = 0;
+        for(String key : new ArrayList<String>(element.getPropertyKeys()))
+        {
+            if(key.startsWith(PREFIX))
+                continue;
+
+            final Object value = element.getProperty(key);
+            if(!(value instanceof String))
+                continue;
+
+            final Object converted = toPropertyValue(readOldFormat(om, (String)value));
+            if(!converted.equals(value))
+            {
+                element.setProperty(key, converted);
+                changed++;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Read a property like the old format did, but only accept JSON that the old format could have written. So
+     * text like "3 apples" stays text even though a lenient JSON parser reads it as the number 3.
+     */
+    private static JsonNode readOldFormat(ObjectMapper om, String s)
+    {
+        try
+        {
+            final JsonNode node = om.readTree(s);
+            if(node != null)
+            {
+                final String written = node.isValueNode() ? node.asText() : node.toString();
+                if(written.equals(s))
+                    return node;
+            }
+        }
+        catch (IOException e)
+        {
+            // not JSON, so it was plain text
+        }
+
+        return om.getNodeFactory().textNode(s);
+    }
+}
@@ -0,0 +1,298 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import dgm.ID;
+import dgm.Service;
+import dgm.degraphmalizr.degraphmalize.Lane;
+import dgm.modules.bindingannotations.Degraphmalizes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dgm.GraphUtilities.*;
+
+/**
+ * Removes symbolic vertices that no edge points to anymore.
+ * <p/>
+ * These vertices are left behind when documents stop referring to an ID that never got a document of its own.
+ * A full sweep also removes unconnected vertices whose identifier is missing or cannot be parsed.
+ * <p/>
+ * Candidates are looked up on a background thread, the removal happens in small transactions in the background lane
+ * of the {@link Degraphmalizes} executor so it never runs concurrently with a subgraph commit. After each batch the
+ * collector pauses, so live traffic is delayed by at most one batch. When that executor is full the collector waits
+ * until it has room again.
+ */
+@Singleton
+public class SymbolicVertexCollector implements Service, SymbolicVertexCollectorMBean
+{
+    private static final Logger log = LoggerFactory.getLogger(SymbolicVertexCollector.class);
+
+    // wait before a batch refused by the write queue is offered again
+    private static final long RETRY_MILLIS = 1000;
+
+    private final ObjectMapper om;
+    private final TransactionalGraph graph;
+    private final ExecutorService writeQueue;
+
+    private final long intervalSeconds;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong lastReclaimed = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+
+    @Inject
+    public SymbolicVertexCollector(ObjectMapper om, TransactionalGraph graph,
+                                   @Degraphmalizes ExecutorService writeQueue,
+                                   @Named("collectorInterval") long intervalSeconds,
+                                   @Named("collectorBatchSize") int batchSize,
+                                   @Named("collectorPause") long pauseMillis)
+    {
+        this.om = om;
+        this.graph = graph;
+        this.writeQueue = writeQueue;
+        this.intervalSeconds = intervalSeconds;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+
+        final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("vertex-collector").setDaemon(true).build();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory);
+    }
+
+    @Override
+    public void start()
+    {
+        if(intervalSeconds <= 0)
+        {
+            log.info("Symbolic vertex collection is disabled");
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runSweep(false);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public final void sweep()
+    {
+        submitSweep(false);
+    }
+
+    @Override
+    public final void fullSweep()
+    {
+        submitSweep(true);
+    }
+
+    private void submitSweep(final boolean full)
+    {
+        scheduler.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runSweep(full);
+            }
+        });
+    }
+
+    /**
+     * Find and remove orphaned vertices, returns the number of removed vertices.
+     */
+    final long runSweep(boolean full)
+    {
+        if(!sweeping.compareAndSet(false, true))
+            return 0;
+
+        // the removal batches queue behind live requests
+        final Lane previous = Lane.BACKGROUND.enter();
+
+        long removed = 0;
+        try
+        {
+            candidates.set(0);
+            checked.set(0);
+
+            final List<Object> ids = findCandidates(full);
+            candidates.set(ids.size());
+
+            for(int i = 0; i < ids.size(); i += batchSize)
+            {
+                final List<Object> batch = ids.subList(i, Math.min(ids.size(), i + batchSize));
+                removed += submit(removeOrphans(batch)).get();
+                checked.addAndGet(batch.size());
+
+                Thread.sleep(pauseMillis);
+            }
+
+            lastReclaimed.set(removed);
+            reclaimed.addAndGet(removed);
+            sweeps.incrementAndGet();
+
+            log.info("Vertex collector sweep removed {} of {} candidate vertices", removed, ids.size());
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(Exception e)
+        {
+            log.error("Vertex collector sweep failed", e);
+        }
+        finally
+        {
+            Lane.restore(previous);
+            sweeping.set(false);
+        }
+
+        return removed;
+    }
+
+    /**
+     * The write queue is bounded and refuses work when the degraphmalizer is busy, then wait and try again
+     */
+    private Future<Long> submit(Callable<Long> job) throws InterruptedException
+    {
+        while(true)
+        {
+            try
+            {
+                return writeQueue.submit(job);
+            }
+            catch (RejectedExecutionException e)
+            {
+                Thread.sleep(RETRY_MILLIS);
+            }
+        }
+    }
+
+    private List<Object> findCandidates(boolean full)
+    {
+        final Iterable<Vertex> vertices = full ? graph.getVertices() : graph.getVertices(KEY_VERSION, 0L);
+
+        final List<Object> ids = new ArrayList<Object>();
+        for(Vertex v : vertices)
+            if(isOrphan(v))
+                ids.add(v.getId());
+
+        return ids;
+    }
+
+    private Callable<Long> removeOrphans(final List<Object> ids)
+    {
+        return new Callable<Long>()
+        {
+            @Override
+            public Long call()
+            {
+                long removed = 0;
+                boolean success = false;
+                try
+                {
+                    // check again, the vertex might have been claimed since we found it
+                    for(Object id : ids)
+                    {
+                        final Vertex v = graph.getVertex(id);
+                        if(v != null && isOrphan(v))
+                        {
+                            graph.removeVertex(v);
+                            removed++;
+                        }
+                    }
+
+                    success = true;
+                }
+                finally
+                {
+                    graph.stopTransaction(success ? TransactionalGraph.Conclusion.SUCCESS : TransactionalGraph.Conclusion.FAILURE);
+                }
+
+                return removed;
+            }
+        };
+    }
+
+    /**
+     * A vertex is orphaned if it has no edges and is either symbolic or has a missing or broken identifier.
+     * Vertices without any properties (like the Neo4j reference node) are not ours and are left alone.
+     */
+    private boolean isOrphan(Vertex v)
+    {
+        if(v.getPropertyKeys().isEmpty() || v.getEdges(Direction.BOTH).iterator().hasNext())
+            return false;
+
+        if(v.getProperty(IDENTIFIER) == null)
+            return true;
+
+        final ID id = getID(om, v);
+        return id == null || id.isSymbolic();
+    }
+
+    @Override
+    public final boolean isSweeping()
+    {
+        return sweeping.get();
+    }
+
+    @Override
+    public final long getSweeps()
+    {
+        return sweeps.get();
+    }
+
+    @Override
+    public final long getCandidates()
+    {
+        return candidates.get();
+    }
+
+    @Override
+    public final long getChecked()
+    {
+        return checked.get();
+    }
+
+    @Override
+    public final long getLastReclaimed()
+    {
+        return lastReclaimed.get();
+    }
+
+    @Override
+    public final long getReclaimed()
+    {
+        return reclaimed.get();
+    }
+}
@@ -0,0 +1,38 @@
+package dgm.graphs;
+
+public interface SymbolicVertexCollectorMBean
+{
+    /**
+     * Is a sweep running right now?
+     */
+    boolean isSweeping();
+
+    /**
+     * Number of completed sweeps
+     */
+    long getSweeps();
+
+    /**
+     * Number of candidate vertices found and checked by the current (or last) sweep
+     */
+    long getCandidates();
+
+    long getChecked();
+
+    /**
+     * Number of vertices removed by the last sweep and by all sweeps
+     */
+    long getLastReclaimed();
+
+    long getReclaimed();
+
+    /**
+     * Start a sweep over the symbolic vertices now, unless one is already running.
+     */
+    void sweep();
+
+    /**
+     * Start a sweep over all vertices, this also finds vertices with a missing or broken identifier.
+     */
+    void fullSweep();
+}
@@ -3,6 +3,9 @@ package dgm.jmx;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tinkerpop.blueprints.Graph;
 import dgm.GraphUtilities;
+import dgm.SubgraphManager;
+import dgm.graphs.BlueprintsSubgraphManager;
+import dgm.graphs.GraphSnapshot;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
@@ -10,6 +13,8 @@ import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
 
 public class GraphBuilder implements GraphBuilderMBean
 {
@@ -19,13 +24,15 @@ public class GraphBuilder implements GraphBuilderMBean
 	protected final Client client;
 	protected final Graph graph;
     protected final ObjectMapper om;
+    protected final SubgraphManager subgraphManager;
 	
 	@Inject
-	public GraphBuilder(ObjectMapper om, Client client, Graph graph)
+	public GraphBuilder(ObjectMapper om, Client client, Graph graph, SubgraphManager subgraphManager)
 	{
 		this.client = client;
 		this.graph = graph;
         this.om = om;
+        this.subgraphManager = subgraphManager;
 	}
 	
 	@Override
@@ -70,4 +77,46 @@ public class GraphBuilder implements GraphBuilderMBean
     public final void dumpGraph() {
         GraphUtilities.dumpGraph(om, graph);
     }
+
+    @Override
+    public final String exportSnapshot(String filename)
+    {
+        try
+        {
+            return "Exported " + GraphSnapshot.export(graph, new File(filename));
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not export graph snapshot to {}: {}", filename, e.getMessage());
+
+            return e.getMessage();
+        }
+    }
+
+    @Override
+    public final long getCommitCount()
+    {
+        if (!(subgraphManager instanceof BlueprintsSubgraphManager))
+            return -1;
+
+        return ((BlueprintsSubgraphManager) subgraphManager).getCommitCount();
+    }
+
+    @Override
+    public final long getPropertiesOffered()
+    {
+        if (!(subgraphManager instanceof BlueprintsSubgraphManager))
+            return -1;
+
+        return ((BlueprintsSubgraphManager) subgraphManager).getPropertiesOffered();
+    }
+
+    @Override
+    public final long getPropertiesWritten()
+    {
+        if (!(subgraphManager instanceof BlueprintsSubgraphManager))
+            return -1;
+
+        return ((BlueprintsSubgraphManager) subgraphManager).getPropertiesWritten();
+    }
 }
@@ -14,4 +14,21 @@ public interface GraphBuilderMBean
     void openConsole();
 
     void dumpGraph();
+
+    /**
+     * Write a binary snapshot of the graph to a file on the server, returns the number of exported elements.
+     */
+    String exportSnapshot(String filename);
+
+    /**
+     * Number of committed subgraphs
+     */
+    long getCommitCount();
+
+    /**
+     * Number of properties in all committed subgraphs, and the number of those that were actually written
+     */
+    long getPropertiesOffered();
+
+    long getPropertiesWritten();
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.*;
 import com.tinkerpop.blueprints.TransactionalGraph;
 import dgm.graphs.BlueprintsSubgraphManager;
+import dgm.graphs.EdgeAggregates;
 import dgm.SubgraphManager;
 
 public class BlueprintsSubgraphManagerModule extends AbstractModule
@@ -13,8 +14,8 @@ public class BlueprintsSubgraphManagerModule extends AbstractModule
     {}
 
     @Provides @Inject @Singleton
-    final SubgraphManager provideSubgraphManager(ObjectMapper om, TransactionalGraph G)
+    final SubgraphManager provideSubgraphManager(ObjectMapper om, TransactionalGraph G, EdgeAggregates aggregates)
     {
-        return new BlueprintsSubgraphManager(om, G);
+        return new BlueprintsSubgraphManager(om, G, aggregates);
     }
 }
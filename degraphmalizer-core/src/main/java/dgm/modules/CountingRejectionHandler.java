@@ -0,0 +1,40 @@
+package dgm.modules;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the tasks a full executor could not take, and then lets the wrapped policy handle them
+ */
+class CountingRejectionHandler implements RejectedExecutionHandler
+{
+    private final RejectedExecutionHandler policy;
+    private final AtomicLong rejected = new AtomicLong();
+
+    CountingRejectionHandler(RejectedExecutionHandler policy)
+    {
+        this.policy = policy;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+    {
+        rejected.incrementAndGet();
+        policy.rejectedExecution(r, executor);
+    }
+
+    final long rejected()
+    {
+        return rejected.get();
+    }
+
+    static long rejected(ThreadPoolExecutor executor)
+    {
+        final RejectedExecutionHandler handler = executor.getRejectedExecutionHandler();
+        if(handler instanceof CountingRejectionHandler)
+            return ((CountingRejectionHandler) handler).rejected();
+
+        return 0;
+    }
+}
@@ -1,17 +1,41 @@
 package dgm.modules;
 
-import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
 import dgm.Degraphmalizr;
 import dgm.degraphmalizr.Degraphmalizer;
 import dgm.degraphmalizr.recompute.*;
+import dgm.degraphmalizr.reindex.ReindexResumer;
 
-public class DegraphmalizerModule extends AbstractModule
+public class DegraphmalizerModule extends ServiceModule
 {
+    final int reindexWindow;
+    final String reindexCheckpoints;
+
+    public DegraphmalizerModule()
+    {
+        this(100, "");
+    }
+
+    /**
+     * @param reindexWindow Documents of an index or type request in flight at the same time
+     * @param reindexCheckpoints Directory to store the progress of index and type requests, empty to disable
+     */
+    public DegraphmalizerModule(int reindexWindow, String reindexCheckpoints)
+    {
+        this.reindexWindow = reindexWindow;
+        this.reindexCheckpoints = reindexCheckpoints;
+    }
+
     @Override
     protected final void configure()
     {
+        bindConstant().annotatedWith(Names.named("reindexWindow")).to(reindexWindow);
+        bindConstant().annotatedWith(Names.named("reindexCheckpoints")).to(reindexCheckpoints);
+
         bind(Degraphmalizr.class).to(Degraphmalizer.class).asEagerSingleton();
         bind(Recomputer.class).to(RecomputerFactoryImpl.class).asEagerSingleton();
         bind(ServiceRunner.class).asEagerSingleton();
+
+        bindService(ReindexResumer.class);
     }
 }
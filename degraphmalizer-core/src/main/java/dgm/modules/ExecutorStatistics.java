@@ -0,0 +1,88 @@
+package dgm.modules;
+
+import dgm.degraphmalizr.degraphmalize.Lane;
+
+/**
+ * Load of the executors of the {@link ThreadpoolModule}
+ */
+public class ExecutorStatistics implements ExecutorStatisticsMBean
+{
+    private final LaneExecutor degraphmalizes;
+    private final LaneExecutor reindexes;
+    private final LaneExecutor recomputes;
+    private final LaneExecutor fetches;
+
+    ExecutorStatistics(LaneExecutor degraphmalizes, LaneExecutor reindexes, LaneExecutor recomputes, LaneExecutor fetches)
+    {
+        this.degraphmalizes = degraphmalizes;
+        this.reindexes = reindexes;
+        this.recomputes = recomputes;
+        this.fetches = fetches;
+    }
+
+    @Override
+    public final int getDegraphmalizeQueueDepth()
+    {
+        return degraphmalizes.getQueue().size();
+    }
+
+    @Override
+    public final int getDegraphmalizeBackgroundQueueDepth()
+    {
+        return ((LaneQueue) degraphmalizes.getQueue()).size(Lane.BACKGROUND);
+    }
+
+    @Override
+    public final int getDegraphmalizeQueueLimit()
+    {
+        return degraphmalizes.getQueue().size() + degraphmalizes.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public final long getDegraphmalizeRejected()
+    {
+        return CountingRejectionHandler.rejected(degraphmalizes);
+    }
+
+    @Override
+    public final int getReindexQueueDepth()
+    {
+        return reindexes.getQueue().size();
+    }
+
+    @Override
+    public final int getRecomputeActive()
+    {
+        return recomputes.getActiveCount();
+    }
+
+    @Override
+    public final int getRecomputeBackgroundActive()
+    {
+        return recomputes.background();
+    }
+
+    @Override
+    public final long getRecomputeCallerRuns()
+    {
+        return CountingRejectionHandler.rejected(recomputes);
+    }
+
+    @Override
+    public final int getFetchActive()
+    {
+        return fetches.getActiveCount();
+    }
+
+    @Override
+    public final int getFetchBackgroundActive()
+    {
+        return fetches.background();
+    }
+
+    @Override
+    public final long getFetchCallerRuns()
+    {
+        return CountingRejectionHandler.rejected(fetches);
+    }
+}
@@ -0,0 +1,50 @@
+package dgm.modules;
+
+public interface ExecutorStatisticsMBean
+{
+    /**
+     * Number of degraphmalize requests waiting in the queue, and the maximum
+     */
+    int getDegraphmalizeQueueDepth();
+
+    int getDegraphmalizeQueueLimit();
+
+    /**
+     * Number of documents of a reindex waiting in the degraphmalize queue
+     */
+    int getDegraphmalizeBackgroundQueueDepth();
+
+    /**
+     * Number of degraphmalize requests refused because the queue was full
+     */
+    long getDegraphmalizeRejected();
+
+    /**
+     * Number of index or type requests waiting to be reindexed
+     */
+    int getReindexQueueDepth();
+
+    /**
+     * Number of threads recomputing documents right now, and how many of them for a reindex
+     */
+    int getRecomputeActive();
+
+    int getRecomputeBackgroundActive();
+
+    /**
+     * Number of recomputes run by the degraphmalize thread itself because all recompute threads were busy
+     */
+    long getRecomputeCallerRuns();
+
+    /**
+     * Number of threads fetching documents right now, and how many of them for a reindex
+     */
+    int getFetchActive();
+
+    int getFetchBackgroundActive();
+
+    /**
+     * Number of fetches run by the recompute thread itself because all fetch threads were busy
+     */
+    long getFetchCallerRuns();
+}
@@ -0,0 +1,36 @@
+package dgm.modules;
+
+import com.google.inject.name.Names;
+import dgm.degraphmalizr.jobs.JobTracker;
+
+/**
+ * Keep track of requests that are acknowledged before they are done, see {@link JobTracker}.
+ */
+public class JobTrackerModule extends ServiceModule
+{
+    final int capacity;
+    final String journal;
+    final boolean respondAsync;
+
+    /**
+     * @param capacity Number of jobs to remember
+     * @param journal Journal of unfinished jobs, empty to disable
+     * @param respondAsync Acknowledge every request as soon as it is queued, not only those that ask for it
+     */
+    public JobTrackerModule(int capacity, String journal, boolean respondAsync)
+    {
+        this.capacity = capacity;
+        this.journal = journal;
+        this.respondAsync = respondAsync;
+    }
+
+    @Override
+    protected void configure()
+    {
+        bindConstant().annotatedWith(Names.named("jobCapacity")).to(capacity);
+        bindConstant().annotatedWith(Names.named("jobJournal")).to(journal);
+        bindConstant().annotatedWith(Names.named("respondAsync")).to(respondAsync);
+
+        bindService(JobTracker.class);
+    }
+}
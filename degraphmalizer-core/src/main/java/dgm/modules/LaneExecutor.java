@@ -0,0 +1,94 @@
+package dgm.modules;
+
+import dgm.degraphmalizr.degraphmalize.Lane;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that tags every task with a {@link Lane}, and runs the task in that lane.
+ * <p/>
+ * Background tasks can be limited to a number of threads: when that many are running the submitting thread runs the
+ * task itself, so the other threads stay free for interactive work.
+ */
+class LaneExecutor extends ThreadPoolExecutor
+{
+    // lane of every task, or null to use the lane of the submitting thread
+    private final Lane lane;
+    private final int backgroundLimit;
+
+    private final AtomicInteger background = new AtomicInteger();
+
+    LaneExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                 BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler,
+                 Lane lane, int backgroundLimit)
+    {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.lane = lane;
+        this.backgroundLimit = backgroundLimit;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        final Lane taskLane = lane == null ? Lane.current() : lane;
+        if(taskLane == Lane.INTERACTIVE)
+        {
+            super.execute(new LaneTask(taskLane, command));
+            return;
+        }
+
+        if(background.incrementAndGet() > backgroundLimit)
+        {
+            background.decrementAndGet();
+            command.run();
+            return;
+        }
+
+        try
+        {
+            super.execute(new LaneTask(taskLane, command));
+        }
+        catch (RejectedExecutionException e)
+        {
+            background.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of background tasks that are queued or running
+     */
+    final int background()
+    {
+        return background.get();
+    }
+
+    final class LaneTask implements Runnable
+    {
+        final Lane lane;
+        private final Runnable task;
+
+        LaneTask(Lane lane, Runnable task)
+        {
+            this.lane = lane;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            final Lane previous = lane.enter();
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                Lane.restore(previous);
+                if(lane == Lane.BACKGROUND)
+                    background.decrementAndGet();
+            }
+        }
+    }
+}
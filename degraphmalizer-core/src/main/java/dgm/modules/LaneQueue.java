@@ -0,0 +1,311 @@
+package dgm.modules;
+
+import dgm.degraphmalizr.degraphmalize.Lane;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded work queue with a lane for interactive and a lane for background tasks.
+ * <p/>
+ * Interactive tasks are taken first. While both lanes have tasks waiting, the background lane still gets its share of
+ * the tasks taken, so a steady stream of interactive work cannot stop a reindex altogether.
+ */
+class LaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>
+{
+    private final int capacity;
+    private final double backgroundShare;
+
+    private final Deque<Runnable> interactive = new ArrayDeque<Runnable>();
+    private final Deque<Runnable> background = new ArrayDeque<Runnable>();
+
+    // background tasks owed while both lanes are waiting, one is taken when this reaches 1
+    private double credit = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * @param backgroundShare Part of the tasks taken from the background lane while both lanes have tasks waiting
+     */
+    LaneQueue(int capacity, double backgroundShare)
+    {
+        this.capacity = capacity;
+        this.backgroundShare = backgroundShare;
+    }
+
+    /**
+     * Number of tasks waiting in this lane
+     */
+    final int size(Lane lane)
+    {
+        lock.lock();
+        try
+        {
+            return lane(lane).size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable r)
+    {
+        lock.lock();
+        try
+        {
+            if(count() >= capacity)
+                return false;
+
+            enqueue(r);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while(count() >= capacity)
+            {
+                if(nanos <= 0)
+                    return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+
+            enqueue(r);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable r) throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            while(count() >= capacity)
+                notFull.await();
+
+            enqueue(r);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll()
+    {
+        lock.lock();
+        try
+        {
+            return count() == 0 ? null : dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while(count() == 0)
+            {
+                if(nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            while(count() == 0)
+                notEmpty.await();
+
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek()
+    {
+        lock.lock();
+        try
+        {
+            return interactive.isEmpty() ? background.peek() : interactive.peek();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        lock.lock();
+        try
+        {
+            final boolean removed = interactive.remove(o) || background.remove(o);
+            if(removed)
+                notFull.signal();
+            return removed;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            return count();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        lock.lock();
+        try
+        {
+            return capacity - count();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements)
+    {
+        lock.lock();
+        try
+        {
+            int n = 0;
+            while(n < maxElements && count() > 0)
+            {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over a copy of the queue, interactive tasks first
+     */
+    @Override
+    public Iterator<Runnable> iterator()
+    {
+        lock.lock();
+        try
+        {
+            final List<Runnable> copy = new ArrayList<Runnable>(interactive);
+            copy.addAll(background);
+            return Collections.unmodifiableList(copy).iterator();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private int count()
+    {
+        return interactive.size() + background.size();
+    }
+
+    private Deque<Runnable> lane(Lane lane)
+    {
+        return lane == Lane.BACKGROUND ? background : interactive;
+    }
+
+    private void enqueue(Runnable r)
+    {
+        final Lane lane = r instanceof LaneExecutor.LaneTask ? ((LaneExecutor.LaneTask) r).lane : Lane.INTERACTIVE;
+        lane(lane).add(r);
+        notEmpty.signal();
+    }
+
+    private Runnable dequeue()
+    {
+        final Runnable r;
+        if(background.isEmpty())
+            r = interactive.poll();
+        else if(interactive.isEmpty())
+            r = background.poll();
+        else
+        {
+            credit += backgroundShare;
+            if(credit >= 1)
+            {
+                credit -= 1;
+                r = background.poll();
+            }
+            else
+                r = interactive.poll();
+        }
+
+        notFull.signal();
+        return r;
+    }
+}
@@ -0,0 +1,31 @@
+package dgm.modules;
+
+import com.google.inject.AbstractModule;
+import dgm.configuration.javascript.ScriptCompiler;
+
+import java.io.File;
+
+/**
+ * Set the Rhino optimization level and compiled script cache for the javascript configuration
+ */
+public class ScriptCompilerModule extends AbstractModule
+{
+    final int optimizationLevel;
+    final String cacheDirectory;
+
+    /**
+     * @param cacheDirectory Directory for compiled scripts, an empty string disables the cache
+     */
+    public ScriptCompilerModule(int optimizationLevel, String cacheDirectory)
+    {
+        this.optimizationLevel = optimizationLevel;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Override
+    protected void configure()
+    {
+        final File cache = cacheDirectory.isEmpty() ? null : new File(cacheDirectory);
+        bind(ScriptCompiler.class).toInstance(new ScriptCompiler(optimizationLevel, cache));
+    }
+}
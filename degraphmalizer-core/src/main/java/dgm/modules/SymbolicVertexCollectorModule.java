@@ -0,0 +1,43 @@
+package dgm.modules;
+
+import com.google.inject.name.Names;
+import dgm.graphs.SymbolicVertexCollector;
+
+/**
+ * Periodically remove symbolic vertices without edges, see {@link SymbolicVertexCollector}.
+ */
+public class SymbolicVertexCollectorModule extends ServiceModule
+{
+    final long intervalSeconds;
+    final int batchSize;
+    final long pauseMillis;
+
+    /**
+     * @param intervalSeconds Seconds between sweeps, {@code 0} only sweeps on request (through JMX)
+     */
+    public SymbolicVertexCollectorModule(long intervalSeconds)
+    {
+        this(intervalSeconds, 100, 50);
+    }
+
+    /**
+     * @param batchSize Maximum number of vertices removed per transaction
+     * @param pauseMillis Pause between two transactions
+     */
+    public SymbolicVertexCollectorModule(long intervalSeconds, int batchSize, long pauseMillis)
+    {
+        this.intervalSeconds = intervalSeconds;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @Override
+    protected void configure()
+    {
+        bindConstant().annotatedWith(Names.named("collectorInterval")).to(intervalSeconds);
+        bindConstant().annotatedWith(Names.named("collectorBatchSize")).to(batchSize);
+        bindConstant().annotatedWith(Names.named("collectorPause")).to(pauseMillis);
+
+        bindService(SymbolicVertexCollector.class);
+    }
+}
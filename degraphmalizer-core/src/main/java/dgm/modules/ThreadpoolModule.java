@@ -2,6 +2,7 @@ package dgm.modules;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.*;
+import dgm.degraphmalizr.degraphmalize.Lane;
 import dgm.modules.elasticsearch.QueryFunction;
 import dgm.modules.bindingannotations.*;
 
@@ -9,6 +10,30 @@ import java.util.concurrent.*;
 
 public class ThreadpoolModule extends AbstractModule
 {
+    private final int queueLimit;
+    private final int recomputeThreads;
+    private final int fetchThreads;
+    private final double backgroundShare;
+
+    public ThreadpoolModule()
+    {
+        this(10000, 16, 16, 0.2);
+    }
+
+    /**
+     * @param queueLimit Number of degraphmalize requests that can wait, more are rejected
+     * @param recomputeThreads Maximum number of documents recomputed at the same time
+     * @param fetchThreads Maximum number of documents fetched at the same time
+     * @param backgroundShare Part of the degraphmalize thread and of the recompute and fetch threads for reindexing
+     */
+    public ThreadpoolModule(int queueLimit, int recomputeThreads, int fetchThreads, double backgroundShare)
+    {
+        this.queueLimit = queueLimit;
+        this.recomputeThreads = recomputeThreads;
+        this.fetchThreads = fetchThreads;
+        this.backgroundShare = backgroundShare;
+    }
+
     @Override
     protected final void configure()
     {
@@ -24,7 +49,24 @@ public class ThreadpoolModule extends AbstractModule
         final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("degraphmalizer").build();
 
-        return Executors.newSingleThreadExecutor(namedThreadFactory);
+        // a full queue rejects the request, so the client can back off
+        return new LaneExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LaneQueue(queueLimit, backgroundShare), namedThreadFactory,
+                new CountingRejectionHandler(new ThreadPoolExecutor.AbortPolicy()), null, Integer.MAX_VALUE);
+    }
+
+    @Provides
+    @Singleton
+    @Reindexes
+    final ExecutorService provideReindexesExecutor()
+    {
+        // walks an index or type, and hands every document to the degraphmalize thread
+        final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("reindexer").build();
+
+        return new LaneExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueLimit), namedThreadFactory,
+                new CountingRejectionHandler(new ThreadPoolExecutor.AbortPolicy()), Lane.BACKGROUND, Integer.MAX_VALUE);
     }
 
     @Provides
@@ -35,7 +77,7 @@ public class ThreadpoolModule extends AbstractModule
         final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("recomputer-%d").build();
 
-        return Executors.newCachedThreadPool(namedThreadFactory);
+        return boundedPool(recomputeThreads, namedThreadFactory);
     }
 
     @Provides
@@ -46,7 +88,28 @@ public class ThreadpoolModule extends AbstractModule
         final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("fetcher-%d").build();
 
-        return Executors.newCachedThreadPool(namedThreadFactory);
+        return boundedPool(fetchThreads, namedThreadFactory);
     }
 
-}
\ No newline at end of file
+    @Provides
+    @Singleton
+    final ExecutorStatistics provideExecutorStatistics(@Degraphmalizes ExecutorService degraphmalizes,
+                                                       @Reindexes ExecutorService reindexes,
+                                                       @Recomputes ExecutorService recomputes,
+                                                       @Fetches ExecutorService fetches)
+    {
+        return new ExecutorStatistics((LaneExecutor) degraphmalizes, (LaneExecutor) reindexes,
+                (LaneExecutor) recomputes, (LaneExecutor) fetches);
+    }
+
+    // these run work for a request that was already accepted, so when all threads are busy the submitting thread
+    // does the work itself instead of failing the request halfway. Background work gets its share of the threads.
+    private ExecutorService boundedPool(int threads, ThreadFactory threadFactory)
+    {
+        final int backgroundLimit = Math.max(1, (int) (threads * backgroundShare));
+
+        return new LaneExecutor(0, threads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory,
+                new CountingRejectionHandler(new ThreadPoolExecutor.CallerRunsPolicy()), null, backgroundLimit);
+    }
+}
@@ -0,0 +1,38 @@
+package dgm.modules;
+
+import com.google.inject.name.Names;
+import dgm.configuration.ConfigurationMonitor;
+import dgm.degraphmalizr.rebuild.TypeRebuilder;
+
+/**
+ * Rebuild the documents of a type when its configuration is reloaded, see {@link TypeRebuilder}.
+ */
+public class TypeRebuilderModule extends ServiceModule
+{
+    final double rate;
+    final int concurrency;
+    final String checkpoints;
+
+    /**
+     * @param rate Maximum number of documents per second
+     * @param concurrency Maximum number of rebuild requests queued at the same time
+     * @param checkpoints Directory to store the progress of rebuilds
+     */
+    public TypeRebuilderModule(double rate, int concurrency, String checkpoints)
+    {
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.checkpoints = checkpoints;
+    }
+
+    @Override
+    protected void configure()
+    {
+        bindConstant().annotatedWith(Names.named("rebuildRate")).to(rate);
+        bindConstant().annotatedWith(Names.named("rebuildConcurrency")).to(concurrency);
+        bindConstant().annotatedWith(Names.named("rebuildCheckpoints")).to(checkpoints);
+
+        bindService(TypeRebuilder.class);
+        multiBind(ConfigurationMonitor.class).to(TypeRebuilder.class);
+    }
+}
@@ -8,12 +8,16 @@ import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 import dgm.GraphUtilities;
 import dgm.ID;
+import dgm.configuration.FieldProjection;
 import dgm.trees.Pair;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+
 /**
  * Retrieve document from elasticsearch, based on Vertex
  *
@@ -39,6 +43,29 @@ public class QueryFunction implements Function<Pair<Edge,Vertex>, Optional<Resol
 
     @Override
     public final Optional<ResolvedPathElement> apply(final Pair<Edge,Vertex> pair)
+    {
+        return apply(pair, FieldProjection.ALL);
+    }
+
+    /**
+     * Retrieve documents with only the given fields in their {@link ResolvedPathElement#source()}
+     */
+    public final Function<Pair<Edge,Vertex>, Optional<ResolvedPathElement>> projecting(final FieldProjection fields)
+    {
+        if(fields.isAll())
+            return this;
+
+        return new Function<Pair<Edge,Vertex>, Optional<ResolvedPathElement>>()
+        {
+            @Override
+            public Optional<ResolvedPathElement> apply(Pair<Edge,Vertex> pair)
+            {
+                return QueryFunction.this.apply(pair, fields);
+            }
+        };
+    }
+
+    public final Optional<ResolvedPathElement> apply(final Pair<Edge,Vertex> pair, final FieldProjection fields)
     {
         // dump information on the current vertex
         if (log.isTraceEnabled())
@@ -85,6 +112,19 @@ public class QueryFunction implements Function<Pair<Edge,Vertex>, Optional<Resol
             return Optional.absent();
         }
 
-        return Optional.of(new ResolvedPathElement(Optional.of(r), pair.a, pair.b));
+        if (fields.isAll() || r.isSourceEmpty())
+            return Optional.of(new ResolvedPathElement(Optional.of(r), pair.a, pair.b));
+
+        // elasticsearch 0.19 can't filter the source, so we skip the fields we don't need while parsing
+        try
+        {
+            final BytesReference source = fields.apply(objectMapper, r.sourceRef());
+            return Optional.of(new ResolvedPathElement(Optional.of(r), Optional.of(source), pair.a, pair.b));
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not project fields {} of document {}: {}", new Object[]{fields, id, e.getMessage()});
+            return Optional.of(new ResolvedPathElement(Optional.of(r), pair.a, pair.b));
+        }
     }
 }
@@ -2,6 +2,7 @@ package dgm.modules.elasticsearch;
 
 import com.google.common.base.Optional;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
 
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
@@ -9,21 +10,47 @@ import com.tinkerpop.blueprints.Vertex;
 public class ResolvedPathElement
 {
     private Optional<GetResponse> getResponse;
+    private Optional<BytesReference> source;
     private Edge edge;
     private Vertex vertex;
 
     public ResolvedPathElement(Optional<GetResponse> getResponse, Edge edge, Vertex vertex)
+    {
+        this(getResponse, sourceOf(getResponse), edge, vertex);
+    }
+
+    /**
+     * @param source The (projected) source of the document
+     */
+    public ResolvedPathElement(Optional<GetResponse> getResponse, Optional<BytesReference> source, Edge edge, Vertex vertex)
     {
         this.getResponse = getResponse;
+        this.source = source;
         this.edge = edge;
         this.vertex = vertex;
     }
 
+    private static Optional<BytesReference> sourceOf(Optional<GetResponse> getResponse)
+    {
+        if(!getResponse.isPresent() || !getResponse.get().isExists() || getResponse.get().isSourceEmpty())
+            return Optional.absent();
+
+        return Optional.of(getResponse.get().sourceRef());
+    }
+
     public final Optional<GetResponse> getResponse()
     {
         return getResponse;
     }
 
+    /**
+     * The source of the document, only containing the fields of the walk if these were declared
+     */
+    public final Optional<BytesReference> source()
+    {
+        return source;
+    }
+
     public final Edge edge()
     {
         return edge;
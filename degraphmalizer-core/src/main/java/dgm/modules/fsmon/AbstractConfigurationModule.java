@@ -5,7 +5,11 @@ import com.google.common.collect.Lists;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import dgm.configuration.Configuration;
+import dgm.configuration.TypeConfigProviders;
+import dgm.configuration.javascript.FunctionTimings;
+import dgm.configuration.javascript.ScriptContexts;
 import dgm.configuration.javascript.JavascriptConfiguration;
+import dgm.configuration.javascript.ScriptCompiler;
 import dgm.exceptions.ConfigurationException;
 import dgm.modules.ServiceModule;
 
@@ -39,9 +43,10 @@ abstract class AbstractConfigurationModule extends ServiceModule
 
     protected abstract void configureModule();
 
-    static Configuration createConfiguration(ObjectMapper om, String scriptFolder, List<File> libraries) throws IOException
+    static Configuration createConfiguration(ObjectMapper om, ScriptCompiler compiler, FunctionTimings timings, ScriptContexts contexts,
+                                             TypeConfigProviders providers, String scriptFolder, List<File> libraries) throws IOException
     {
-        return new JavascriptConfiguration(om, new File(scriptFolder), libraries.toArray(new File[libraries.size()]));
+        return new JavascriptConfiguration(om, compiler, timings, contexts, providers, new File(scriptFolder), libraries.toArray(new File[libraries.size()]));
     }
 
     static File[] toFiles(final String[] filenames)
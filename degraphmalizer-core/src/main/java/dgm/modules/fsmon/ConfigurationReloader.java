@@ -5,6 +5,10 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import dgm.configuration.*;
+import dgm.configuration.javascript.FunctionTimings;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import dgm.configuration.javascript.ScriptContexts;
+import dgm.configuration.javascript.ScriptCompiler;
 import dgm.exceptions.ConfigurationException;
 import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
@@ -25,55 +29,43 @@ class ConfigurationReloader implements FilesystemMonitor, Provider<Configuration
 
     final String scriptFolder;
     final List<File> libraries;
-    final CachedProvider<Configuration> cachedProvider;
+
+    final ScriptCompiler compiler;
+    final FunctionTimings timings;
+    final ScriptContexts contexts;
+    final TypeConfigProviders providers;
+
+    // the current configuration, replaced as a whole on every reload
+    final AtomicReference<Configuration> configuration;
 
     final ConfigurationMonitor configurationMonitor;
 
     final ObjectMapper om = new ObjectMapper();
 
+    /**
+     * When loading the configuration this will throw an exception with an invalid configuration, but only on startup.
+     * When already running with a configuration this will log an error message trying to load an invalid configuration, but
+     * will continue to run with the previous valid configuration.
+     */
     @Inject
     public ConfigurationReloader(Set<ConfigurationMonitor> configurationMonitors,
+                                 final ScriptCompiler compiler, final FunctionTimings timings, final ScriptContexts contexts,
+                                 final TypeConfigProviders providers,
                                  final @Named("scriptFolder") String scriptFolder,
                                  final @Named("libraryFiles") List<File> libraries) throws IOException
     {
         this.scriptFolder = scriptFolder;
         this.libraries = libraries;
+        this.compiler = compiler;
+        this.timings = timings;
+        this.contexts = contexts;
+        this.providers = providers;
 
         configurationMonitor = new CompositeConfigurationMonitor(configurationMonitors);
 
-        /**
-         * When loading the configuration this will throw an exception with an invalid configuration, but only on startup.
-         * When already running with a configuration this will log an error message trying to load an invalid configuration, but
-         * will continue to run with the previous valid configuration.
-         */
-        final Provider<Configuration> confLoader = new Provider<Configuration>()
-        {
-            private AtomicReference<Configuration> configuration =
-                    new AtomicReference<Configuration>(AbstractConfigurationModule.createConfiguration(om, scriptFolder, libraries));
-
-            @Override public Configuration get() {
-                try
-                {
-                    final Configuration d = configuration.getAndSet(null);
-                    if (d == null)
-                        return AbstractConfigurationModule.createConfiguration(om, scriptFolder, libraries);
-
-                    return d;
-                }
-                catch (ConfigurationException ce)
-                {
-                    log.info("Failed to load configuration, {}", ce.getMessage());
-                    return null;
-                }
-                catch (Exception e)
-                {
-                    log.info("Unknown Exception while loading configuration, {}", e);
-                    return null;
-                }
-            }
-        };
-
-        this.cachedProvider = new CachedProvider<Configuration> (confLoader);
+        final Configuration initial = AbstractConfigurationModule.createConfiguration(om, compiler, timings, contexts, providers, scriptFolder, libraries);
+        Configurations.routingTable(initial);
+        configuration = new AtomicReference<Configuration>(initial);
     }
 
     @Override
@@ -82,14 +74,30 @@ class ConfigurationReloader implements FilesystemMonitor, Provider<Configuration
         log.info("Filesystem change detected for directory (target-index) {}", directory);
 
         // try to reload the configuration
-        if(!cachedProvider.invalidate())
+        final Configuration cfg = reload(directory);
+        if(cfg == null)
+        {
             log.info("Failed to reload configuration");
+            return;
+        }
+
+        // build the routing table now, not on the first request
+        Configurations.routingTable(cfg);
+        configuration.set(cfg);
+
+        // the previous configuration is no longer handed out, so its jars can go
+        try
+        {
+            providers.release(new File(scriptFolder, directory));
+        }
+        catch (IOException e)
+        {
+            log.warn("Cannot remove the old jars of {}: {}", directory, e.getMessage());
+        }
 
         // print configuration if debugging is enabled
         if(log.isDebugEnabled())
         {
-            // get new config
-            final Configuration cfg = cachedProvider.get();
             for(final IndexConfig i : cfg.indices().values())
                 for(final TypeConfig t : i.types().values())
                     log.debug("Found target configuration /{}/{} --> /{}/{}",
@@ -100,10 +108,42 @@ class ConfigurationReloader implements FilesystemMonitor, Provider<Configuration
         configurationMonitor.configurationChanged(directory);
     }
 
+    /**
+     * Load the changed directory into a new configuration
+     *
+     * @return The new configuration, or {@code null} if it could not be loaded
+     */
+    private Configuration reload(String directory)
+    {
+        final long start = System.currentTimeMillis();
+        try
+        {
+            final Configuration current = configuration.get();
+
+            final Configuration cfg;
+            if(current instanceof JavascriptConfiguration)
+                cfg = ((JavascriptConfiguration) current).reload(directory);
+            else
+                cfg = AbstractConfigurationModule.createConfiguration(om, compiler, timings, contexts, providers, scriptFolder, libraries);
+
+            log.info("Reloaded configuration of {} in {} ms", directory, System.currentTimeMillis() - start);
+            return cfg;
+        }
+        catch (ConfigurationException ce)
+        {
+            log.info("Failed to load configuration, {}", ce.getMessage());
+            return null;
+        }
+        catch (Exception e)
+        {
+            log.info("Unknown Exception while loading configuration, {}", e);
+            return null;
+        }
+    }
+
     @Override
     public Configuration get()
     {
-        return cachedProvider.get();
-
+        return configuration.get();
     }
 }
@@ -2,6 +2,7 @@ package dgm.modules.fsmon;
 
 import dgm.configuration.Configuration;
 import dgm.configuration.ConfigurationMonitor;
+import com.google.inject.name.Names;
 import org.nnsoft.guice.sli4j.core.InjectLogger;
 import org.slf4j.Logger;
 
@@ -35,16 +36,28 @@ class LoggingFilesystemMonitor implements FilesystemMonitor
  */
 public class DynamicConfiguration extends AbstractConfigurationModule
 {
+    final boolean polling;
+
     public DynamicConfiguration(String scriptFolder, String... libraries)
+    {
+        this(scriptFolder, false, libraries);
+    }
+
+    /**
+     * @param polling Poll the directory for changes instead of using filesystem events
+     */
+    public DynamicConfiguration(String scriptFolder, boolean polling, String... libraries)
     {
         super(scriptFolder, libraries);
+        this.polling = polling;
     }
 
     @Override
     protected void configureModule()
     {
-        // setup poller service
-        bindService(PollingFilesystemMonitorService.class);
+        // setup watcher service
+        bind(Boolean.class).annotatedWith(Names.named("pollConfiguration")).toInstance(polling);
+        bindService(FilesystemMonitorService.class);
 
         // send filesystem notifications to the configuration reloader
         multiBind(FilesystemMonitor.class).to(LoggingFilesystemMonitor.class);
@@ -0,0 +1,96 @@
+package dgm.modules.fsmon;
+
+import com.google.inject.Inject;
+import dgm.Service;
+import org.nnsoft.guice.sli4j.core.InjectLogger;
+import org.slf4j.Logger;
+
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Combine all configuration monitors in a composite and watch the configuration directory.
+ * <p/>
+ * Filesystem events are used when the JVM and the filesystem support them, the directory is polled otherwise or when
+ * polling is configured.
+ */
+class FilesystemMonitorService implements Service
+{
+    @InjectLogger
+    Logger log;
+
+    final CompositeFilesystemMonitor monitor;
+    final String scriptFolder;
+    final boolean polling;
+
+    // one of these runs
+    WatchingFilesystemMonitor watcher = null;
+    PollingFilesystemMonitor poller = null;
+
+    @Inject
+    FilesystemMonitorService(Set<FilesystemMonitor> filesystemMonitors, @Named("scriptFolder") String scriptFolder,
+                             @Named("pollConfiguration") boolean polling)
+    {
+        this.monitor = new CompositeFilesystemMonitor(filesystemMonitors);
+        this.scriptFolder = scriptFolder;
+        this.polling = polling;
+    }
+
+    @Override
+    public synchronized void start()
+    {
+        // already running
+        if(watcher != null || poller != null)
+            return;
+
+        if(!polling && isWatchServiceSupported())
+        {
+            try
+            {
+                watcher = new WatchingFilesystemMonitor(scriptFolder, 200, monitor);
+                watcher.start();
+                log.info("Watching {} for configuration changes", scriptFolder);
+                return;
+            }
+            catch (IOException e)
+            {
+                log.warn("Cannot watch {} for changes, polling instead: {}", scriptFolder, e.getMessage());
+            }
+        }
+
+        poller = new PollingFilesystemMonitor(scriptFolder, 200, monitor);
+        poller.start();
+        log.info("Polling {} for configuration changes", scriptFolder);
+    }
+
+    /**
+     * True if this JVM has a {@code java.nio.file.WatchService}. Checked here, because the
+     * {@link WatchingFilesystemMonitor} itself fails to load without one.
+     */
+    static boolean isWatchServiceSupported()
+    {
+        try
+        {
+            Class.forName("java.nio.file.WatchService");
+            return true;
+        }
+        catch (ClassNotFoundException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if(watcher != null)
+            watcher.stop();
+
+        if(poller != null)
+            poller.stop();
+
+        watcher = null;
+        poller = null;
+    }
+}
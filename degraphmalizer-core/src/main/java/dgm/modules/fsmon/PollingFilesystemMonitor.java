@@ -44,6 +44,11 @@ public class PollingFilesystemMonitor implements Runnable
         poller.start();
     }
 
+    public final void stop()
+    {
+        poller.interrupt();
+    }
+
     @Override
     public final void run()
     {
@@ -128,7 +133,7 @@ public class PollingFilesystemMonitor implements Runnable
         final ArrayList<HashCode> codes = new ArrayList<HashCode>(1000);
 
         // non recursively load all configuration files
-        final WildcardFileFilter filter = new WildcardFileFilter(new String[]{"*.conf.js", "*.json"});
+        final WildcardFileFilter filter = new WildcardFileFilter(new String[]{"*.conf.js", "*.json", "*.jar"});
         final Iterator<File> fi = FileUtils.iterateFiles(directory, filter, null);
         while(fi.hasNext())
         {
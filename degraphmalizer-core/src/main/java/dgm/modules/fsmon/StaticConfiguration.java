@@ -3,6 +3,11 @@ package dgm.modules.fsmon;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.*;
 import dgm.configuration.Configuration;
+import dgm.configuration.Configurations;
+import dgm.configuration.TypeConfigProviders;
+import dgm.configuration.javascript.FunctionTimings;
+import dgm.configuration.javascript.ScriptContexts;
+import dgm.configuration.javascript.ScriptCompiler;
 
 import java.io.IOException;
 
@@ -17,9 +22,15 @@ public class StaticConfiguration extends AbstractConfigurationModule
     }
 
     @Provides @Singleton @Inject
-    final Configuration provideConfiguration(ObjectMapper om) throws IOException
+    final Configuration provideConfiguration(ObjectMapper om, ScriptCompiler compiler, FunctionTimings timings, ScriptContexts contexts,
+                                             TypeConfigProviders providers) throws IOException
 	{
-		return createConfiguration(om, scriptFolder, libraries);
+		final Configuration cfg = createConfiguration(om, compiler, timings, contexts, providers, scriptFolder, libraries);
+
+        // build the routing table now, not on the first request
+        Configurations.routingTable(cfg);
+
+        return cfg;
 	}
 
     @Override
@@ -0,0 +1,207 @@
+package dgm.modules.fsmon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Monitor the configuration directory for changes in the index configurations using the events of the filesystem.
+ * <p/>
+ * Editors and deployments often write several files in a row, so changes are collected until the directory has been
+ * quiet for the debounce interval, and each changed index is then reported once.
+ * <p/>
+ * This needs the {@link WatchService} of Java 7, so on older JVMs this class can not even be loaded. The
+ * {@link FilesystemMonitorService} checks for it before using this class. Filesystems without native events (some
+ * network filesystems) are better served by the {@link PollingFilesystemMonitor}.
+ */
+public class WatchingFilesystemMonitor implements Runnable
+{
+    private static final Logger log = LoggerFactory.getLogger(WatchingFilesystemMonitor.class);
+
+    // the files that make up an index configuration, the same as the poller looks at
+    private static final String[] EXTENSIONS = {".conf.js", ".json", ".jar"};
+
+    protected final FilesystemMonitor monitor;
+    protected final Path directory;
+    protected final int debounce;
+
+    protected final WatchService watcher;
+
+    // index directory of each key, null for the configuration directory itself
+    protected final Map<WatchKey, String> keys = new HashMap<WatchKey, String>();
+
+    // names of the watched index directories
+    protected final Set<String> indices = new HashSet<String>();
+
+    protected final Thread watcherThread = new Thread(this, "configuration-watcher");
+
+    /**
+     * @param debounce Report changes once the directory has been quiet for this many milliseconds
+     * @throws IOException If the filesystem can not be watched
+     */
+    public WatchingFilesystemMonitor(String directory, int debounce, FilesystemMonitor monitor) throws IOException
+    {
+        this.directory = new File(directory).toPath();
+        this.debounce = debounce;
+        this.monitor = monitor;
+
+        watcher = this.directory.getFileSystem().newWatchService();
+        try
+        {
+            keys.put(this.directory.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), null);
+
+            final File[] indices = this.directory.toFile().listFiles();
+            if(indices != null)
+                for(File index : indices)
+                    if(index.isDirectory())
+                        register(index.getName());
+        }
+        catch (IOException e)
+        {
+            watcher.close();
+            throw e;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            watcher.close();
+            throw new IOException("Filesystem events are not supported for " + directory, e);
+        }
+
+        // the JDK falls back to polling every few seconds itself when there are no native events, we poll faster
+        if(watcher.getClass().getSimpleName().startsWith("Polling"))
+        {
+            watcher.close();
+            throw new IOException("No native filesystem events for " + directory);
+        }
+
+        watcherThread.setDaemon(true);
+    }
+
+    public final void start()
+    {
+        if(watcherThread.isAlive())
+            return;
+
+        watcherThread.start();
+    }
+
+    public final void stop()
+    {
+        watcherThread.interrupt();
+    }
+
+    private void register(String index) throws IOException
+    {
+        indices.add(index);
+        keys.put(directory.resolve(index).register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), index);
+    }
+
+    @Override
+    public final void run()
+    {
+        try
+        {
+            final Set<String> changed = new TreeSet<String>();
+
+            while(true)
+            {
+                // wait for the first change, then keep collecting until it is quiet, or for at most 10 intervals
+                WatchKey key = watcher.take();
+                final long deadline = System.currentTimeMillis() + 10L * debounce;
+                while(key != null && System.currentTimeMillis() < deadline)
+                {
+                    handle(key, changed);
+                    key = watcher.poll(debounce, TimeUnit.MILLISECONDS);
+                }
+
+                if(key != null)
+                    handle(key, changed);
+
+                for(String index : changed)
+                    monitor.directoryChanged(index);
+
+                changed.clear();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // stopped
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            // stopped
+        }
+        finally
+        {
+            try
+            {
+                watcher.close();
+            }
+            catch (IOException e)
+            {
+                log.warn("Could not close watch service: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void handle(WatchKey key, Set<String> changed)
+    {
+        final String index = keys.get(key);
+
+        for(WatchEvent<?> event : key.pollEvents())
+        {
+            // events were lost, so report every index
+            if(event.kind() == OVERFLOW)
+            {
+                changed.addAll(indices);
+                continue;
+            }
+
+            final String name = event.context().toString();
+
+            // a file in an index directory
+            if(index != null)
+            {
+                if(isConfigurationFile(name))
+                    changed.add(index);
+                continue;
+            }
+
+            // an index directory was added or removed
+            if(event.kind() == ENTRY_CREATE && Files.isDirectory(directory.resolve(name)))
+            {
+                try
+                {
+                    register(name);
+                }
+                catch (IOException e)
+                {
+                    log.warn("Could not watch index directory {}: {}", name, e.getMessage());
+                }
+                changed.add(name);
+            }
+            else if(event.kind() == ENTRY_DELETE && indices.remove(name))
+                changed.add(name);
+        }
+
+        // the directory is gone
+        if(!key.reset())
+            keys.remove(key);
+    }
+
+    private static boolean isConfigurationFile(String name)
+    {
+        for(String extension : EXTENSIONS)
+            if(name.endsWith(extension))
+                return true;
+
+        return false;
+    }
+}
@@ -1,5 +1,6 @@
 package dgm.modules.neo4j;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
@@ -10,8 +11,11 @@ import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
 import dgm.GraphUtilities;
 import dgm.Service;
+import dgm.graphs.GraphSnapshot;
+import dgm.graphs.PropertyFormatMigration;
 import dgm.modules.ServiceModule;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -48,7 +52,7 @@ public class CommonNeo4j extends ServiceModule
     }
 
     @Provides @Singleton
-    final TransactionalGraph provideGraph(@Neo4jDataDir String dataDir) throws IOException
+    final TransactionalGraph provideGraph(ObjectMapper om, @Neo4jDataDir String dataDir, @Neo4jSnapshot String snapshot) throws IOException
     {
         // manually set the cache provider
         final Map<String, String> settings = new HashMap<String, String>();
@@ -71,6 +75,16 @@ public class CommonNeo4j extends ServiceModule
 
         graph.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
 
+        // a new graph is in the current format, unless it is restored from an older snapshot
+        boolean current = GraphSnapshot.isEmpty(graph);
+
+        // only restore into a fresh graph, an existing store always wins
+        if(!snapshot.isEmpty() && current)
+            current = GraphSnapshot.restore(graph, new File(snapshot)).version == GraphSnapshot.FORMAT_VERSION;
+
+        // stores written by older versions need their properties converted
+        PropertyFormatMigration.ensureCurrentFormat(om, graph, new File(dataDir), current);
+
         return graph;
     }
 
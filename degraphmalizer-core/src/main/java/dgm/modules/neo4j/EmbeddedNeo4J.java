@@ -5,15 +5,26 @@ import com.google.inject.AbstractModule;
 public class EmbeddedNeo4J extends AbstractModule
 {
     final String dataDir;
+    final String snapshot;
 
     public EmbeddedNeo4J(String dataDir)
+    {
+        this(dataDir, "");
+    }
+
+    /**
+     * @param snapshot Graph snapshot to restore when the data directory contains an empty graph
+     */
+    public EmbeddedNeo4J(String dataDir, String snapshot)
     {
         this.dataDir = dataDir;
+        this.snapshot = snapshot;
     }
 
     @Override
     protected final void configure()
     {
         bind(String.class).annotatedWith(Neo4jDataDir.class).toInstance(dataDir);
+        bind(String.class).annotatedWith(Neo4jSnapshot.class).toInstance(snapshot);
     }
 }
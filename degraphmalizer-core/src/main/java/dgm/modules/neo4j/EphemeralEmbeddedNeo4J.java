@@ -7,6 +7,21 @@ import java.io.File;
 
 public class EphemeralEmbeddedNeo4J extends AbstractModule
 {
+    final String snapshot;
+
+    public EphemeralEmbeddedNeo4J()
+    {
+        this("");
+    }
+
+    /**
+     * @param snapshot Graph snapshot to load into the new temporary graph
+     */
+    public EphemeralEmbeddedNeo4J(String snapshot)
+    {
+        this.snapshot = snapshot;
+    }
+
     @Override
     protected final void configure()
     {
@@ -14,5 +29,6 @@ public class EphemeralEmbeddedNeo4J extends AbstractModule
         final File dataDir = Files.createTempDir();
 
         bind(String.class).annotatedWith(Neo4jDataDir.class).toInstance(dataDir.getAbsolutePath());
+        bind(String.class).annotatedWith(Neo4jSnapshot.class).toInstance(snapshot);
     }
 }
\ No newline at end of file
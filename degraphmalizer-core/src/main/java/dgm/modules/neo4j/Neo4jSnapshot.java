@@ -0,0 +1,20 @@
+package dgm.modules.neo4j;
+
+import com.google.inject.BindingAnnotation;
+import java.lang.annotation.Target;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+
+/**
+ * Path of a graph snapshot to restore into an empty graph, or the empty string for none.
+ *
+ * @see dgm.graphs.GraphSnapshot
+ */
+@BindingAnnotation
+@Target({ FIELD, PARAMETER, METHOD })
+@Retention(RUNTIME)
+public @interface Neo4jSnapshot
+{}
@@ -0,0 +1,45 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FieldProjectionTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    final BytesReference source = new BytesArray("{\"title\":\"t\",\"body\":\"long text\",\"tags\":[\"a\",\"b\"]," +
+            "\"author\":{\"name\":\"n\",\"bio\":{\"text\":\"x\"}},\"refs\":[{\"id\":1,\"note\":\"x\"},2,{\"id\":3}]}");
+
+    @Test
+    public void onlyDeclaredFieldsShouldBeKept() throws Exception
+    {
+        final FieldProjection fields = FieldProjection.of("title", "tags", "author.name", "refs.id", "missing.field");
+
+        assertThat(fields.read(om, source).toString())
+                .isEqualTo("{\"title\":\"t\",\"tags\":[\"a\",\"b\"],\"author\":{\"name\":\"n\"},\"refs\":[{\"id\":1},{\"id\":3}]}");
+        assertThat(fields.apply(om, source).toUtf8()).isEqualTo(fields.read(om, source).toString());
+    }
+
+    @Test
+    public void shorterPathsShouldSelectEverythingBelow() throws Exception
+    {
+        assertThat(FieldProjection.of("author.bio.text", "author").read(om, source).toString())
+                .isEqualTo("{\"author\":{\"name\":\"n\",\"bio\":{\"text\":\"x\"}}}");
+        assertThat(FieldProjection.of().read(om, source).toString()).isEqualTo("{}");
+    }
+
+    @Test
+    public void allShouldKeepTheSource() throws Exception
+    {
+        assertThat(FieldProjection.ALL.apply(om, source)).isSameAs(source);
+        assertThat(FieldProjection.union(Arrays.asList(FieldProjection.of("title"), FieldProjection.ALL))).isSameAs(FieldProjection.ALL);
+        assertThat(FieldProjection.union(Arrays.asList(FieldProjection.of("title"), FieldProjection.of("body"))))
+                .isEqualTo(FieldProjection.of("body", "title"));
+    }
+}
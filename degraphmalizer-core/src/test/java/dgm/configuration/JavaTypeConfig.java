@@ -0,0 +1,193 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+import dgm.ID;
+import dgm.Subgraph;
+import dgm.graphs.MutableSubgraph;
+import dgm.modules.elasticsearch.ResolvedPathElement;
+import dgm.trees.Tree;
+import dgm.trees.Trees;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Java version of {@link #JAVASCRIPT}, a type that links items to their children.
+ */
+public class JavaTypeConfig implements TypeConfig
+{
+    public static final String JAVASCRIPT = "({\n" +
+            "    sourceIndex: 'source',\n" +
+            "    sourceType: 'item',\n" +
+            "    fields: ['children', 'name'],\n" +
+            "    filter: function(doc) { return doc.active; },\n" +
+            "    extract: function(doc, subgraph) {\n" +
+            "        if(doc.children)\n" +
+            "            doc.children.forEach(function(c) { subgraph.addEdge('child', 'source', 'item', c, false, {}); });\n" +
+            "        subgraph.setProperty('name', doc.name);\n" +
+            "    },\n" +
+            "    transform: function(doc) { doc.title = doc.name.toUpperCase(); return doc; },\n" +
+            "    walks: { children: { direction: 'OUT', fields: [], properties: { descendants: { nested: false,\n" +
+            "        reduce: function(tree) { var n = 0; var count = function(t) { t._children.forEach(function(c) { n++; count(c); }); }; count(tree); return n; }\n" +
+            "    } } } }\n" +
+            "})";
+
+    final IndexConfig index;
+    final Map<String, WalkConfig> walks;
+
+    public JavaTypeConfig(IndexConfig index)
+    {
+        this.index = index;
+        this.walks = Collections.<String, WalkConfig>singletonMap("children", new ChildrenWalk());
+    }
+
+    public static class Provider implements TypeConfigProvider
+    {
+        @Override
+        public TypeConfig typeConfig(IndexConfig index)
+        {
+            return new JavaTypeConfig(index);
+        }
+    }
+
+    @Override
+    public String name()
+    {
+        return "java-item";
+    }
+
+    @Override
+    public Subgraph extract(JsonNode document)
+    {
+        final MutableSubgraph sg = new MutableSubgraph();
+        for(JsonNode child : document.path("children"))
+            sg.beginEdge("child", new ID("source", "item", child.asText(), 0), Subgraph.Direction.OUTWARDS);
+
+        sg.property("name", document.path("name"));
+        return sg;
+    }
+
+    @Override
+    public JsonNode transform(JsonNode document)
+    {
+        final ObjectNode result = ((ObjectNode) document).deepCopy();
+        result.put("title", document.path("name").asText().toUpperCase());
+        return result;
+    }
+
+    @Override
+    public boolean filter(JsonNode document)
+    {
+        return document.path("active").asBoolean();
+    }
+
+    @Override
+    public IndexConfig index()
+    {
+        return index;
+    }
+
+    @Override
+    public String targetIndex()
+    {
+        return index.name();
+    }
+
+    @Override
+    public String targetType()
+    {
+        return name();
+    }
+
+    @Override
+    public String sourceIndex()
+    {
+        return "source";
+    }
+
+    @Override
+    public String sourceType()
+    {
+        return "item";
+    }
+
+    @Override
+    public Map<String, WalkConfig> walks()
+    {
+        return walks;
+    }
+
+    @Override
+    public FieldProjection fields()
+    {
+        return FieldProjection.of("children", "name");
+    }
+
+    class ChildrenWalk implements WalkConfig
+    {
+        final Map<String, PropertyConfig> properties = Collections.<String, PropertyConfig>singletonMap("descendants", new DescendantsProperty(this));
+
+        @Override
+        public Direction direction()
+        {
+            return Direction.OUT;
+        }
+
+        @Override
+        public TypeConfig type()
+        {
+            return JavaTypeConfig.this;
+        }
+
+        @Override
+        public Map<String, ? extends PropertyConfig> properties()
+        {
+            return properties;
+        }
+
+        @Override
+        public FieldProjection fields()
+        {
+            return FieldProjection.of();
+        }
+
+        @Override
+        public String name()
+        {
+            return "children";
+        }
+    }
+
+    static class DescendantsProperty implements PropertyConfig
+    {
+        final WalkConfig walk;
+
+        DescendantsProperty(WalkConfig walk)
+        {
+            this.walk = walk;
+        }
+
+        @Override
+        public String name()
+        {
+            return "descendants";
+        }
+
+        @Override
+        public JsonNode reduce(Tree<ResolvedPathElement> tree)
+        {
+            // the root is the document itself
+            return JsonNodeFactory.instance.numberNode(Iterables.size(Trees.bfsWalk(tree)) - 1);
+        }
+
+        @Override
+        public WalkConfig walk()
+        {
+            return walk;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoutingTableTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    @Test
+    public void configsShouldBeFoundBySourceIndexAndType() throws Exception
+    {
+        final Configuration cfg = new JavascriptConfiguration(om, TypeConfigProvidersTest.configuration(JavaTypeConfig.Provider.class));
+        final IndexConfig index = cfg.indices().get("target");
+
+        final List<TypeConfig> configs = Configurations.configsFor(cfg, "source", "item");
+        assertThat(configs).containsOnly(index.types().get("item"), index.types().get("java-item"));
+
+        // all types of the index
+        assertThat(Configurations.configsFor(cfg, "source", null)).isEqualTo(configs);
+
+        assertThat(Configurations.configsFor(cfg, "source", "other")).isEmpty();
+        assertThat(Configurations.configsFor(cfg, "other", "item")).isEmpty();
+        assertThat(Configurations.configsFor(cfg, "other", null)).isEmpty();
+    }
+
+    @Test
+    public void tableShouldBeBuiltOnce() throws Exception
+    {
+        final Configuration cfg = new JavascriptConfiguration(om, TypeConfigProvidersTest.configuration(JavaTypeConfig.Provider.class));
+
+        assertThat(Configurations.routingTable(cfg)).isSameAs(Configurations.routingTable(cfg));
+        assertThat(Configurations.configsFor(cfg, "source", "item")).isSameAs(Configurations.configsFor(cfg, "source", "item"));
+    }
+}
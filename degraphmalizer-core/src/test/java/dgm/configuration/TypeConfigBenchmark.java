@@ -0,0 +1,73 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the javascript and the Java implementation of the same type configuration.
+ * <p/>
+ * Not part of the normal test run, start it with {@code mvn test -Dtest=TypeConfigBenchmark}.
+ */
+public class TypeConfigBenchmark
+{
+    static final int WARMUP = 2000;
+    static final int RUNS = 20000;
+
+    @Test
+    public void compareJavascriptAndJava() throws Exception
+    {
+        final ObjectMapper om = new ObjectMapper();
+        final IndexConfig index = new JavascriptConfiguration(om, TypeConfigProvidersTest.configuration(JavaTypeConfig.Provider.class)).indices().get("target");
+
+        final JsonNode document = document(om);
+        final TypeConfig js = index.types().get("item");
+        final TypeConfig java = index.types().get("java-item");
+
+        run(js, document, WARMUP);
+        run(java, document, WARMUP);
+
+        System.out.println("javascript: " + run(js, document, RUNS) + " us per document");
+        System.out.println("java:       " + run(java, document, RUNS) + " us per document");
+    }
+
+    private static double run(TypeConfig type, JsonNode document, int runs)
+    {
+        final long start = System.nanoTime();
+        for(int i = 0; i < runs; i++)
+        {
+            if(type.filter(document))
+            {
+                type.extract(document);
+                type.transform(document);
+            }
+        }
+
+        return (double) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / runs;
+    }
+
+    /**
+     * A document with a few fields the configuration uses and a larger body it does not look at
+     */
+    private static JsonNode document(ObjectMapper om)
+    {
+        final ObjectNode document = om.createObjectNode();
+        document.put("name", "benchmark");
+        document.put("active", true);
+
+        final ArrayNode children = document.putArray("children");
+        for(int i = 0; i < 10; i++)
+            children.add("child-" + i);
+
+        final ObjectNode body = document.putObject("body");
+        for(int i = 0; i < 100; i++)
+            body.put("field-" + i, "some text to make the document a bit larger " + i);
+
+        return document;
+    }
+}
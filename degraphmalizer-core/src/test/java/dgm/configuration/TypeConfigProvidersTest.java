@@ -0,0 +1,119 @@
+package dgm.configuration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dgm.Subgraph;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import dgm.exceptions.ConfigurationException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TypeConfigProvidersTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    @Test
+    public void javaTypesShouldBeLoadedNextToJavascriptTypes() throws Exception
+    {
+        final File conf = configuration(JavaTypeConfig.Provider.class);
+        final IndexConfig index = new JavascriptConfiguration(om, conf).indices().get("target");
+
+        assertThat(index.types().keySet()).containsOnly("item", "java-item");
+
+        final TypeConfig java = index.types().get("java-item");
+        assertThat(java).isInstanceOf(JavaTypeConfig.class);
+        assertThat(java.index()).isSameAs(index);
+    }
+
+    @Test
+    public void javaAndJavascriptTypeShouldGiveTheSameResults() throws Exception
+    {
+        final IndexConfig index = new JavascriptConfiguration(om, configuration(JavaTypeConfig.Provider.class)).indices().get("target");
+        final TypeConfig js = index.types().get("item");
+        final TypeConfig java = index.types().get("java-item");
+
+        final JsonNode document = om.readTree("{\"name\":\"parent\",\"active\":true,\"children\":[\"a\",\"b\"]}");
+
+        assertThat(java.filter(document)).isEqualTo(js.filter(document));
+        assertThat((Object) java.transform(document)).isEqualTo(js.transform(document));
+
+        final Subgraph jsGraph = js.extract(document);
+        final Subgraph javaGraph = java.extract(document);
+        assertThat((Object) javaGraph.properties()).isEqualTo(jsGraph.properties());
+        assertThat(javaGraph.edges()).hasSize(2);
+        assertThat(jsGraph.edges()).hasSize(2);
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void typeShouldNotBeConfiguredTwice() throws Exception
+    {
+        final File conf = configuration(JavaTypeConfig.Provider.class);
+        Files.write(JavaTypeConfig.JAVASCRIPT, new File(conf, "target/java-item.conf.js"), Charsets.UTF_8);
+
+        new JavascriptConfiguration(om, conf);
+    }
+
+    @Test
+    public void classLoaderShouldOnlyBeReplacedWhenAJarChanges() throws Exception
+    {
+        final File index = new File(configuration(JavaTypeConfig.Provider.class), "target");
+        final File[] jars = new File[]{new File(index, "types.jar")};
+
+        final TypeConfigProviders providers = new TypeConfigProviders();
+        final ClassLoader first = providers.loader(index, jars);
+        assertThat(providers.loader(index, jars)).isSameAs(first);
+
+        writeJar(jars[0], JavaTypeConfig.Provider.class, "changed");
+        assertThat(providers.loader(index, jars)).isNotSameAs(first);
+
+        // the old configuration may still be in use
+        final File copy = new File(((URLClassLoader) first).getURLs()[0].toURI());
+        assertThat(copy.exists()).isTrue();
+
+        // the copy of the old jar is gone once the new configuration is
+        providers.release(index);
+        assertThat(copy.exists()).isFalse();
+    }
+
+    /**
+     * Configuration directory with an index "target" with the javascript type "item" and a jar with the provider
+     */
+    static File configuration(Class<? extends TypeConfigProvider> provider) throws IOException
+    {
+        final File conf = Files.createTempDir();
+        final File index = new File(conf, "target");
+        index.mkdir();
+
+        Files.write(JavaTypeConfig.JAVASCRIPT, new File(index, "item.conf.js"), Charsets.UTF_8);
+
+        writeJar(new File(index, "types.jar"), provider, "");
+
+        return conf;
+    }
+
+    private static void writeJar(File file, Class<? extends TypeConfigProvider> provider, String comment) throws IOException
+    {
+        final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+        try
+        {
+            jar.setComment(comment);
+            jar.putNextEntry(new JarEntry("META-INF/services/" + TypeConfigProvider.class.getName()));
+            jar.write((provider.getName() + "\n").getBytes(Charsets.UTF_8));
+            jar.closeEntry();
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+}
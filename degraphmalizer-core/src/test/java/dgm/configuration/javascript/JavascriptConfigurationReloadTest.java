@@ -0,0 +1,93 @@
+package dgm.configuration.javascript;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dgm.configuration.IndexConfig;
+import org.apache.commons.io.FileUtils;
+import org.mozilla.javascript.EvaluatorException;
+import org.testng.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class JavascriptConfigurationReloadTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    File conf;
+    JavascriptConfiguration cfg;
+
+    @BeforeMethod
+    public void createConfiguration() throws IOException
+    {
+        conf = Files.createTempDir();
+        writeType("a", "item", "source");
+        writeType("b", "item", "source");
+
+        cfg = new JavascriptConfiguration(om, conf);
+    }
+
+    @AfterMethod
+    public void removeConfiguration() throws IOException
+    {
+        FileUtils.deleteDirectory(conf);
+    }
+
+    @Test
+    public void onlyTheChangedIndexShouldBeLoaded() throws IOException
+    {
+        writeType("a", "other", "source");
+
+        final JavascriptConfiguration reloaded = cfg.reload("a");
+
+        assertThat(reloaded.indices().get("a").types().keySet()).containsOnly("item", "other");
+        assertThat(reloaded.indices().get("b")).isSameAs(cfg.indices().get("b"));
+
+        // the old configuration stays as it was
+        assertThat(cfg.indices().get("a").types().keySet()).containsOnly("item");
+    }
+
+    @Test
+    public void removedIndexShouldBeDropped() throws IOException
+    {
+        FileUtils.deleteDirectory(new File(conf, "b"));
+        writeType("c", "item", "source");
+
+        final JavascriptConfiguration reloaded = cfg.reload("b").reload("c");
+
+        assertThat(reloaded.indices().keySet()).containsOnly("a", "c");
+        assertThat(reloaded.indices().get("a")).isSameAs(cfg.indices().get("a"));
+    }
+
+    @Test
+    public void invalidIndexShouldNotChangeTheConfiguration() throws IOException
+    {
+        Files.write("({ sourceIndex: ", new File(conf, "a/broken.conf.js"), Charsets.UTF_8);
+
+        final IndexConfig before = cfg.indices().get("a");
+        try
+        {
+            cfg.reload("a");
+            fail("Syntax error not reported");
+        }
+        catch (EvaluatorException e)
+        {
+            // expected
+        }
+
+        assertThat(cfg.indices().get("a")).isSameAs(before);
+    }
+
+    private void writeType(String index, String type, String sourceIndex) throws IOException
+    {
+        final File dir = new File(conf, index);
+        dir.mkdirs();
+
+        Files.write("({ sourceIndex: '" + sourceIndex + "', sourceType: '" + type + "' })",
+                new File(dir, type + ".conf.js"), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package dgm.configuration.javascript;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mozilla.javascript.*;
+import org.testng.annotations.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JsonBridgeTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    static final String DOCUMENT = "{\"a\":1,\"b\":\"text\",\"c\":{\"d\":[1,2.5,true,null]},\"e\":{\"f\":\"g\"}}";
+
+    @Test
+    public void untouchedDocumentShouldBeReturnedAsIs() throws Exception
+    {
+        final JsonNode document = om.readTree(DOCUMENT);
+        final JsonNode result = call("function(doc) { return doc.a === 1 && doc.e.f == 'g' ? doc : null; }", document);
+
+        assertThat((Object) result).isEqualTo(document);
+        assertThat((Object) result.get("c")).isSameAs(document.get("c"));
+
+        // the caller adds fields to the result, the input keeps its own
+        ((ObjectNode) result).put("x", 1);
+        assertThat((Object) document).isEqualTo(om.readTree(DOCUMENT));
+    }
+
+    @Test
+    public void untouchedFieldsShouldBeTakenOver() throws Exception
+    {
+        final JsonNode document = om.readTree(DOCUMENT);
+        final JsonNode result = call("function(doc) { doc.x = doc.a + 1; delete doc.b; return doc; }", document);
+
+        assertThat(result.toString()).isEqualTo("{\"a\":1,\"c\":{\"d\":[1,2.5,true,null]},\"e\":{\"f\":\"g\"},\"x\":2}");
+        assertThat((Object) result.get("c")).isSameAs(document.get("c"));
+        assertThat((Object) document).isEqualTo(om.readTree(DOCUMENT));
+    }
+
+    @Test
+    public void resultsShouldConvertLikeStringify() throws Exception
+    {
+        final JsonNode document = om.readTree(DOCUMENT);
+
+        final String script = "function(doc) { var keys = []; for(var k in doc) keys.push(k);"
+                + " return { keys: keys, d: doc.c.d.concat([NaN, undefined]), f: function() {}, n: 1e3, s: 'a' + 'b', u: undefined }; }";
+
+        assertThat(call(script, document).toString())
+                .isEqualTo("{\"keys\":[\"a\",\"b\",\"c\",\"e\"],\"d\":[1,2.5,true,null,null,null],\"n\":1000,\"s\":\"ab\"}");
+    }
+
+    @Test
+    public void stringifyShouldSeeAllFields() throws Exception
+    {
+        final JsonNode document = om.readTree(DOCUMENT);
+
+        assertThat(call("function(doc) { return JSON.stringify(doc); }", document).textValue()).isEqualTo(DOCUMENT);
+    }
+
+    private JsonNode call(String function, JsonNode document)
+    {
+        final Context cx = Context.enter();
+        try
+        {
+            final Scriptable scope = cx.initStandardObjects();
+            final Function f = (Function) cx.evaluateString(scope, "(" + function + ")", "test.js", 0, null);
+
+            return JsonBridge.toJson(om.getNodeFactory(), f.call(cx, scope, null, new Object[]{JsonBridge.toScript(cx, scope, document)}));
+        }
+        finally
+        {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dgm.configuration.javascript;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.mozilla.javascript.*;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Set;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScriptCompilerTest
+{
+    static final String SCRIPT = "var x = { add: function(a, b) { return a + b; } }; x";
+
+    @Test
+    public void cachedScriptShouldBehaveLikeCompiledScript() throws Exception
+    {
+        final File cache = Files.createTempDir();
+        final ScriptCompiler compiler = new ScriptCompiler(9, cache);
+
+        assertThat(call(compiler)).isEqualTo(3.0);
+        assertThat(cache.list()).hasSize(1);
+
+        // the second time the script comes from the cache
+        final File cached = cache.listFiles()[0];
+        final long modified = cached.lastModified();
+
+        assertThat(call(new ScriptCompiler(9, cache))).isEqualTo(3.0);
+        assertThat(cache.list()).hasSize(1);
+        assertThat(cached.lastModified()).isEqualTo(modified);
+
+        // other optimization levels use their own cache entry
+        assertThat(call(new ScriptCompiler(0, cache))).isEqualTo(3.0);
+        assertThat(cache.list()).hasSize(2);
+    }
+
+    @Test
+    public void editedScriptShouldReplaceItsCacheEntry() throws Exception
+    {
+        final File cache = Files.createTempDir();
+        final ScriptCompiler compiler = new ScriptCompiler(9, cache);
+
+        assertThat(call(compiler, SCRIPT, "test.js")).isEqualTo(3.0);
+        final Set<String> first = Sets.newHashSet(cache.list());
+        assertThat(call(compiler, SCRIPT, "other.js")).isEqualTo(3.0);
+        final Set<String> other = Sets.difference(Sets.newHashSet(cache.list()), first);
+
+        assertThat(call(compiler, SCRIPT.replace("a + b", "a + b + 1"), "test.js")).isEqualTo(4.0);
+
+        // the entry of the edited script replaced the old one, the entry of the other script stays
+        final Set<String> entries = Sets.newHashSet(cache.list());
+        assertThat(entries).hasSize(2);
+        assertThat(entries).excludes(first.toArray());
+        assertThat(entries.containsAll(other)).isTrue();
+    }
+
+    @Test
+    public void interpretedScriptsShouldNotBeCached() throws Exception
+    {
+        final File cache = Files.createTempDir();
+
+        assertThat(call(new ScriptCompiler(ScriptCompiler.INTERPRETED, cache))).isEqualTo(3.0);
+        assertThat(cache.list()).isEmpty();
+    }
+
+    private Object call(ScriptCompiler compiler) throws Exception
+    {
+        return call(compiler, SCRIPT, "test.js");
+    }
+
+    private Object call(ScriptCompiler compiler, String script, String sourceName) throws Exception
+    {
+        final Context cx = Context.enter();
+        try
+        {
+            final Scriptable scope = cx.initStandardObjects();
+            final Scriptable x = (Scriptable) compiler.compile(cx, new StringReader(script), sourceName).exec(cx, scope);
+            final Function add = (Function) ScriptableObject.getProperty(x, "add");
+
+            return Context.toNumber(add.call(cx, scope, x, new Object[]{1, 2}));
+        }
+        finally
+        {
+            Context.exit();
+        }
+    }
+}
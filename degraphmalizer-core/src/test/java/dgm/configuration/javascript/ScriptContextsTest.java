@@ -0,0 +1,113 @@
+package dgm.configuration.javascript;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.*;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScriptContextsTest
+{
+    @Test
+    public void threadsShouldReuseTheirOwnContextAndScope() throws Exception
+    {
+        final ScriptContexts contexts = new ScriptContexts();
+        final Scriptable root = sealedRoot();
+
+        final Callable<Scriptable[]> run = new Callable<Scriptable[]>()
+        {
+            @Override
+            public Scriptable[] call()
+            {
+                final Scriptable[] scopes = new Scriptable[2];
+                for(int i = 0; i < scopes.length; i++)
+                {
+                    final Context cx = contexts.enter();
+                    try
+                    {
+                        scopes[i] = contexts.scope(cx, root);
+
+                        // the child scope sees the root, and can be written to
+                        cx.evaluateString(scopes[i], "var x = answer + " + i, "test.js", 0, null);
+                        assertThat(Context.toNumber(scopes[i].get("x", scopes[i]))).isEqualTo(42.0 + i);
+                    }
+                    finally
+                    {
+                        contexts.exit();
+                    }
+                }
+                return scopes;
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            final Future<Scriptable[]> first = executor.submit(run);
+            final Future<Scriptable[]> second = executor.submit(run);
+
+            final Scriptable[] a = first.get();
+            final Scriptable[] b = second.get();
+
+            assertThat(a[0]).isSameAs(a[1]);
+            assertThat(b[0]).isSameAs(b[1]);
+            assertThat(a[0]).isNotSameAs(b[0]);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertThat(contexts.getExecutions()).isEqualTo(4);
+        assertThat(contexts.getContexts()).isEqualTo(2);
+        assertThat(contexts.getScopes()).isEqualTo(2);
+        assertThat(contexts.getActiveExecutions()).isEqualTo(0);
+        assertThat(contexts.getPeakExecutions()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void replacedRootScopeShouldBeCollected() throws InterruptedException
+    {
+        final ScriptContexts contexts = new ScriptContexts();
+        Scriptable root = sealedRoot();
+        final WeakReference<Scriptable> reference = new WeakReference<Scriptable>(root);
+
+        final Context cx = contexts.enter();
+        try
+        {
+            contexts.scope(cx, root);
+        }
+        finally
+        {
+            contexts.exit();
+        }
+
+        root = null;
+        for(int i = 0; i < 50 && reference.get() != null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(reference.get()).isNull();
+    }
+
+    private static Scriptable sealedRoot()
+    {
+        final Context cx = Context.enter();
+        try
+        {
+            final Scriptable root = cx.initStandardObjects();
+            cx.evaluateString(root, "var answer = 42", "root.js", 0, null);
+            cx.seal(root);
+            return root;
+        }
+        finally
+        {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dgm.configuration.reducers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dgm.configuration.PropertyConfig;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import dgm.exceptions.ConfigurationException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReducersTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    final List<BytesReference> sources = Arrays.<BytesReference>asList(
+            new BytesArray("{\"name\":\"a\",\"price\":3,\"tags\":[\"x\",\"y\"],\"meta\":{\"date\":\"2012-01-02\"}}"),
+            new BytesArray("{\"meta\":{\"date\":\"2012-03-04\",\"skip\":{\"price\":100}},\"name\":\"b\",\"price\":1.5,\"tags\":\"y\"}"),
+            new BytesArray("{\"name\":null,\"tags\":[\"z\"],\"price\":\"n/a\"}"));
+
+    @Test
+    public void fieldShouldBeReadWithoutTheRestOfTheDocument() throws Exception
+    {
+        assertThat(SourceFields.read(om, sources.get(1), new String[]{"price"}).doubleValue()).isEqualTo(1.5);
+        assertThat(SourceFields.read(om, sources.get(1), new String[]{"meta", "date"}).textValue()).isEqualTo("2012-03-04");
+        assertThat((Object) SourceFields.read(om, sources.get(2), new String[]{"meta", "date"})).isNull();
+        assertThat((Object) SourceFields.read(om, sources.get(0), new String[]{"name", "first"})).isNull();
+    }
+
+    @Test
+    public void reducersShouldReduceTheSources() throws Exception
+    {
+        assertThat(reduce("count", null)).isEqualTo("3");
+        assertThat(reduce("collect", "name")).isEqualTo("[\"a\",\"b\"]");
+        assertThat(reduce("collect", "tags")).isEqualTo("[\"x\",\"y\",\"y\",\"z\"]");
+        assertThat(reduce("distinct", "tags")).isEqualTo("[\"x\",\"y\",\"z\"]");
+        assertThat(reduce("min", "price")).isEqualTo("1.5");
+        assertThat(reduce("max", "price")).isEqualTo("3");
+        assertThat(reduce("sum", "price")).isEqualTo("4.5");
+        assertThat(reduce("max", "missing")).isEqualTo("null");
+    }
+
+    @Test
+    public void firstShouldReturnTheDocumentsInOrder() throws Exception
+    {
+        final JsonNode newest = Reducers.reducer(om, "first", "meta.date", 2, true).reduce(sources);
+
+        assertThat(newest.size()).isEqualTo(2);
+        assertThat(newest.get(0).get("name").textValue()).isEqualTo("b");
+        assertThat(newest.get(1).get("name").textValue()).isEqualTo("a");
+
+        // documents without the field come last
+        final JsonNode oldest = Reducers.reducer(om, "first", "meta.date", 5, false).reduce(sources);
+        assertThat(oldest.size()).isEqualTo(3);
+        assertThat(oldest.get(0).get("name").textValue()).isEqualTo("a");
+        assertThat(oldest.get(2).get("name").isNull()).isTrue();
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void unknownReducerShouldBeRejected()
+    {
+        Reducers.reducer(om, "median", "price", 1, false);
+    }
+
+    @Test
+    public void reducerShouldBeDeclaredInPlaceOfAReduceFunction() throws Exception
+    {
+        final File conf = Files.createTempDir();
+        final File index = new File(conf, "target");
+        index.mkdir();
+
+        Files.write("({ sourceIndex: 'source', sourceType: 'item', walks: { up: { direction: 'OUT', properties: {\n" +
+                "    names: { reducer: 'collect', field: 'name' },\n" +
+                "    newest: { reducer: 'first', field: 'date', order: 'desc', size: 3 },\n" +
+                "    full: { nested: false, reduce: function(tree) { return tree; } }\n" +
+                "} } } })", new File(index, "item.conf.js"), Charsets.UTF_8);
+
+        final PropertyConfig names = new JavascriptConfiguration(om, conf).indices().get("target").types().get("item")
+                .walks().get("up").properties().get("names");
+
+        assertThat(names).isInstanceOf(ReducerPropertyConfig.class);
+    }
+
+    private String reduce(String type, String field) throws Exception
+    {
+        return Reducers.reducer(om, type, field, 1, false).reduce(sources).toString();
+    }
+}
@@ -0,0 +1,140 @@
+package dgm.degraphmalizr.jobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import dgm.Degraphmalizr;
+import dgm.ID;
+import dgm.degraphmalizr.degraphmalize.*;
+import dgm.degraphmalizr.recompute.RecomputeResult;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JobTrackerTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    File dir;
+    File journal;
+
+    // callbacks of the submitted requests, by document id
+    final Map<String, DegraphmalizeCallback> submitted = new LinkedHashMap<String, DegraphmalizeCallback>();
+
+    @BeforeMethod
+    public void createJournal()
+    {
+        dir = Files.createTempDir();
+        journal = new File(dir, "jobs.journal");
+        submitted.clear();
+    }
+
+    @AfterMethod
+    public void removeJournal() throws IOException
+    {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void jobShouldBeTrackedUntilItIsDone()
+    {
+        final JobTracker jobs = tracker(10);
+        final List<Job.State> changes = new ArrayList<Job.State>();
+        jobs.subscribe(new JobListener()
+        {
+            @Override
+            public void jobChanged(Job job)
+            {
+                changes.add(job.state());
+            }
+        });
+
+        final Job job = jobs.submit(request("1"));
+        assertThat(jobs.get(job.id()).state()).isEqualTo(Job.State.QUEUED);
+        assertThat(journal.length()).isGreaterThan(0);
+
+        complete("1");
+
+        assertThat(jobs.get(job.id()).state()).isEqualTo(Job.State.DONE);
+        assertThat(changes).containsExactly(Job.State.QUEUED, Job.State.RUNNING, Job.State.DONE);
+
+        // nothing left to resubmit
+        assertThat(journal.length()).isEqualTo(0);
+        jobs.stop();
+    }
+
+    @Test
+    public void unfinishedJobsShouldBeResubmittedOnStartup()
+    {
+        final JobTracker before = tracker(10);
+        final Job done = before.submit(request("1"));
+        final Job unfinished = before.submit(request("2"));
+        complete("1");
+        before.stop();
+
+        submitted.clear();
+        final JobTracker after = tracker(10);
+
+        assertThat(submitted.keySet()).containsOnly("2");
+        assertThat(after.get(unfinished.id()).state()).isEqualTo(Job.State.QUEUED);
+        assertThat(after.get(done.id())).isNull();
+        after.stop();
+    }
+
+    @Test
+    public void oldestJobsShouldBeForgotten()
+    {
+        final JobTracker jobs = tracker(2);
+        final Job first = jobs.submit(request("1"));
+        final Job second = jobs.submit(request("2"));
+        final Job third = jobs.submit(request("3"));
+
+        assertThat(jobs.get(first.id())).isNull();
+        assertThat(jobs.get(second.id())).isNotNull();
+        assertThat(jobs.get(third.id())).isNotNull();
+        jobs.stop();
+    }
+
+    private JobTracker tracker(int capacity)
+    {
+        final JobTracker jobs = new JobTracker(om, new RecordingDegraphmalizr(), capacity, journal.getPath());
+        jobs.start();
+        return jobs;
+    }
+
+    private static JobRequest request(String id)
+    {
+        return new JobRequest(DegraphmalizeRequestType.UPDATE, DegraphmalizeRequestScope.DOCUMENT, new ID("a", "t", id, 1), true);
+    }
+
+    private void complete(String id)
+    {
+        final DegraphmalizeCallback callback = submitted.get(id);
+        callback.started(null);
+        callback.complete(new DegraphmalizeResult(new ID("a", "t", id, 1), new ArrayList<Future<RecomputeResult>>()));
+    }
+
+    class RecordingDegraphmalizr implements Degraphmalizr
+    {
+        @Override
+        public Future<DegraphmalizeResult> degraphmalize(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, DegraphmalizeCallback callback)
+        {
+            submitted.put(id.id(), callback);
+            return null;
+        }
+
+        @Override
+        public int pending()
+        {
+            return submitted.size();
+        }
+    }
+}
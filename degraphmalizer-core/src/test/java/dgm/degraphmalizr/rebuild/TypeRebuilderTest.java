@@ -0,0 +1,142 @@
+package dgm.degraphmalizr.rebuild;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.inject.Provider;
+import dgm.Degraphmalizr;
+import dgm.ID;
+import dgm.configuration.Configuration;
+import dgm.configuration.javascript.JavascriptConfiguration;
+import dgm.degraphmalizr.degraphmalize.*;
+import dgm.graphs.LocalGraph;
+import dgm.graphs.MutableSubgraph;
+import dgm.Subgraph;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TypeRebuilderTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    File conf;
+    File checkpoints;
+    LocalGraph lg;
+    JavascriptConfiguration cfg;
+    TypeRebuilder rebuilder;
+
+    final List<String> requested = new ArrayList<String>();
+    final List<Lane> lanes = new ArrayList<Lane>();
+
+    @BeforeMethod
+    public void setup() throws IOException
+    {
+        conf = Files.createTempDir();
+        checkpoints = Files.createTempDir();
+        writeType("a", "x");
+        writeType("b", "y");
+        cfg = new JavascriptConfiguration(om, conf);
+
+        lg = LocalGraph.localNode();
+
+        // documents of both source types, and a symbolic vertex that is not a document
+        final MutableSubgraph sg = new MutableSubgraph();
+        sg.beginEdge("label", new ID("source", "x", "symbolic", 0), Subgraph.Direction.OUTWARDS);
+        lg.sgm.commitSubgraph(new ID("source", "x", "3", 1), sg);
+        lg.sgm.commitSubgraph(new ID("source", "x", "1", 1), new MutableSubgraph());
+        lg.sgm.commitSubgraph(new ID("source", "x", "2", 1), new MutableSubgraph());
+        lg.sgm.commitSubgraph(new ID("source", "y", "4", 1), new MutableSubgraph());
+
+        requested.clear();
+        lanes.clear();
+        rebuilder = new TypeRebuilder(om, lg.G, new RecordingDegraphmalizr(), new Provider<Configuration>()
+        {
+            @Override
+            public Configuration get()
+            {
+                return cfg;
+            }
+        }, conf.getPath(), 1000, 2, checkpoints.getPath());
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        rebuilder.stop();
+        lg.G.shutdown();
+        FileUtils.deleteDirectory(conf);
+        FileUtils.deleteDirectory(checkpoints);
+    }
+
+    @Test
+    public void onlyTheChangedTypeShouldBeRebuilt() throws Exception
+    {
+        rebuilder.start();
+
+        Files.append("\n// changed", new File(conf, "target/a.conf.js"), Charsets.UTF_8);
+        cfg = cfg.reload("target");
+        rebuilder.configurationChanged("target");
+        rebuilder.awaitRebuilds();
+
+        assertThat(requested).containsExactly("1", "2", "3");
+        assertThat(lanes).containsOnly(Lane.BACKGROUND);
+        assertThat(rebuilder.rebuilt()).isEqualTo(3);
+        assertThat(checkpoints.list()).isEmpty();
+
+        // nothing changed this time
+        cfg = cfg.reload("target");
+        rebuilder.configurationChanged("target");
+        rebuilder.awaitRebuilds();
+
+        assertThat(requested).hasSize(3);
+    }
+
+    @Test
+    public void interruptedRebuildShouldContinueFromTheCheckpoint() throws Exception
+    {
+        final String fingerprint = Files.hash(new File(conf, "target/a.conf.js"), com.google.common.hash.Hashing.md5()).toString();
+        new RebuildCheckpoint("target", "x", "outdated", null).write(om, checkpoints);
+        new RebuildCheckpoint("target", "a", fingerprint, "1").write(om, checkpoints);
+
+        rebuilder.start();
+        rebuilder.awaitRebuilds();
+
+        assertThat(requested).containsExactly("2", "3");
+        assertThat(checkpoints.list()).isEmpty();
+    }
+
+    private void writeType(String type, String sourceType) throws IOException
+    {
+        final File dir = new File(conf, "target");
+        dir.mkdirs();
+
+        Files.write("({ sourceIndex: 'source', sourceType: '" + sourceType + "' })",
+                new File(dir, type + ".conf.js"), Charsets.UTF_8);
+    }
+
+    class RecordingDegraphmalizr implements Degraphmalizr
+    {
+        @Override
+        public Future<DegraphmalizeResult> degraphmalize(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, DegraphmalizeCallback callback)
+        {
+            requested.add(id.id());
+            lanes.add(Lane.current());
+            return Futures.immediateFuture(new DegraphmalizeResult(id, new ArrayList<Future<dgm.degraphmalizr.recompute.RecomputeResult>>()));
+        }
+
+        @Override
+        public int pending()
+        {
+            return 0;
+        }
+    }
+}
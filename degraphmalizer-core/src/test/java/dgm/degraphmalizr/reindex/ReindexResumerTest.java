@@ -0,0 +1,116 @@
+package dgm.degraphmalizr.reindex;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dgm.Degraphmalizr;
+import dgm.ID;
+import dgm.degraphmalizr.degraphmalize.*;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReindexResumerTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    File dir;
+
+    // scope and id of the submitted requests
+    final List<String> submitted = new ArrayList<String>();
+
+    @BeforeMethod
+    public void createCheckpoints()
+    {
+        dir = Files.createTempDir();
+        submitted.clear();
+    }
+
+    @AfterMethod
+    public void removeCheckpoints() throws IOException
+    {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void checkpointShouldSurviveARoundTrip() throws IOException
+    {
+        new ReindexCheckpoint(DegraphmalizeRequestType.UPDATE, "a", "t", 300, new ID("a", "t", "m", 0)).write(om, dir);
+        new ReindexCheckpoint(DegraphmalizeRequestType.DELETE, "a", null, 20, new ID("a", "u", "c", 0)).write(om, dir);
+
+        final ReindexCheckpoint type = ReindexCheckpoint.read(om, dir, DegraphmalizeRequestType.UPDATE, "a", "t");
+        assertThat(type.scope()).isEqualTo(DegraphmalizeRequestScope.TYPE_IN_INDEX);
+        assertThat(type.done()).isEqualTo(300);
+        assertThat(type.last().id()).isEqualTo("m");
+
+        final ReindexCheckpoint index = ReindexCheckpoint.read(om, dir, DegraphmalizeRequestType.DELETE, "a", null);
+        assertThat(index.scope()).isEqualTo(DegraphmalizeRequestScope.INDEX);
+        assertThat(index.id().type()).isNull();
+        assertThat(index.done()).isEqualTo(20);
+
+        assertThat(ReindexCheckpoint.read(om, dir, DegraphmalizeRequestType.UPDATE, "a", null)).isNull();
+
+        type.delete(dir);
+        assertThat(ReindexCheckpoint.read(om, dir, DegraphmalizeRequestType.UPDATE, "a", "t")).isNull();
+    }
+
+    /**
+     * The position of a reindex is a document, so documents added or removed in the meantime do not shift it
+     */
+    @Test
+    public void documentsAfterTheLastOneShouldNotBeDone()
+    {
+        final ReindexCheckpoint checkpoint = new ReindexCheckpoint(DegraphmalizeRequestType.UPDATE, "a", null, 2, new ID("a", "t", "m", 0));
+
+        assertThat(checkpoint.isDone(new ID("a", "t", "a", 1))).isTrue();
+        assertThat(checkpoint.isDone(new ID("a", "t", "m", 1))).isTrue();
+        assertThat(checkpoint.isDone(new ID("a", "t", "n", 1))).isFalse();
+        assertThat(checkpoint.isDone(new ID("a", "s", "z", 1))).isTrue();
+        assertThat(checkpoint.isDone(new ID("a", "u", "a", 1))).isFalse();
+
+        assertThat(checkpoint.done(0, null).isDone(new ID("a", "t", "a", 1))).isFalse();
+    }
+
+    @Test
+    public void interruptedReindexShouldBeSubmittedAgain() throws IOException
+    {
+        new ReindexCheckpoint(DegraphmalizeRequestType.UPDATE, "a", "t", 300, new ID("a", "t", "m", 0)).write(om, dir);
+        Files.write("{\"index\": \"b\"}", new File(dir, "update.b.json"), Charsets.UTF_8);
+
+        new ReindexResumer(om, new RecordingDegraphmalizr(), dir.getPath()).start();
+
+        assertThat(submitted).containsOnly("UPDATE TYPE_IN_INDEX /a/t");
+    }
+
+    @Test
+    public void nothingShouldBeResumedWithoutCheckpoints()
+    {
+        new ReindexResumer(om, new RecordingDegraphmalizr(), "").start();
+        new ReindexResumer(om, new RecordingDegraphmalizr(), new File(dir, "missing").getPath()).start();
+
+        assertThat(submitted).isEmpty();
+    }
+
+    class RecordingDegraphmalizr implements Degraphmalizr
+    {
+        @Override
+        public Future<DegraphmalizeResult> degraphmalize(DegraphmalizeRequestType requestType, DegraphmalizeRequestScope requestScope, ID id, DegraphmalizeCallback callback)
+        {
+            submitted.add(requestType + " " + requestScope + " /" + id.index() + "/" + id.type());
+            return null;
+        }
+
+        @Override
+        public int pending()
+        {
+            return submitted.size();
+        }
+    }
+}
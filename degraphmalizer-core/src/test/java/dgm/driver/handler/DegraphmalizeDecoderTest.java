@@ -0,0 +1,72 @@
+package dgm.driver.handler;
+
+import com.google.common.base.Charsets;
+import dgm.ID;
+import dgm.degraphmalizr.degraphmalize.BatchRequest;
+import dgm.degraphmalizr.degraphmalize.DegraphmalizeRequestType;
+import dgm.degraphmalizr.degraphmalize.JobRequest;
+import dgm.exceptions.InvalidRequest;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.*;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DegraphmalizeDecoderTest
+{
+    final DegraphmalizeDecoder decoder = new DegraphmalizeDecoder();
+
+    @Test
+    public void batchShouldKeepTheLatestChangeOfEachDocument()
+    {
+        final BatchRequest batch = decode(batch(
+                "{\"index\": \"a\", \"type\": \"t\", \"id\": \"1\", \"version\": 1}",
+                "{\"action\": \"update\", \"index\": \"a\", \"type\": \"t\", \"id\": \"2\", \"version\": 4}",
+                "",
+                "{\"action\": \"update\", \"index\": \"a\", \"type\": \"t\", \"id\": \"1\", \"version\": 3}",
+                "{\"action\": \"update\", \"index\": \"a\", \"type\": \"t\", \"id\": \"2\", \"version\": 2}",
+                "{\"action\": \"delete\", \"index\": \"a\", \"type\": \"t\", \"id\": \"1\", \"version\": 3}"));
+
+        assertThat(batch.received()).isEqualTo(5);
+
+        final List<JobRequest> requests = batch.requests();
+        assertThat(requests).hasSize(2);
+
+        assertThat(requests.get(0).id()).isEqualTo(new ID("a", "t", "1", 3));
+        assertThat(requests.get(0).actionType()).isEqualTo(DegraphmalizeRequestType.DELETE);
+
+        assertThat(requests.get(1).id()).isEqualTo(new ID("a", "t", "2", 4));
+        assertThat(requests.get(1).actionType()).isEqualTo(DegraphmalizeRequestType.UPDATE);
+    }
+
+    @Test(expectedExceptions = InvalidRequest.class)
+    public void batchWithIncompleteLineShouldBeRejected()
+    {
+        decode(batch("{\"index\": \"a\", \"type\": \"t\", \"version\": 1}"));
+    }
+
+    @Test(expectedExceptions = InvalidRequest.class)
+    public void batchShouldBePosted()
+    {
+        decode(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, DegraphmalizeDecoder.BATCH_URI));
+    }
+
+    private static HttpRequest batch(String... lines)
+    {
+        final StringBuilder body = new StringBuilder();
+        for(String line : lines)
+            body.append(line).append('\n');
+
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, DegraphmalizeDecoder.BATCH_URI);
+        request.setContent(ChannelBuffers.copiedBuffer(body, Charsets.UTF_8));
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T decode(HttpRequest request)
+    {
+        return (T) decoder.decode(null, null, request);
+    }
+}
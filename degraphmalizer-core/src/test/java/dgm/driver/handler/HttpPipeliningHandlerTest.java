@@ -0,0 +1,177 @@
+package dgm.driver.handler;
+
+import com.google.common.base.Charsets;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.*;
+import org.testng.annotations.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class HttpPipeliningHandlerTest
+{
+    ServerBootstrap bootstrap;
+    Channel server;
+    Socket client;
+
+    @BeforeMethod
+    public void startServer() throws IOException
+    {
+        bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory()
+        {
+            @Override
+            public ChannelPipeline getPipeline()
+            {
+                return Channels.pipeline(new HttpServerCodec(), new HttpPipeliningHandler(2), new SlowEchoHandler());
+            }
+        });
+        server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        client = new Socket("127.0.0.1", ((InetSocketAddress) server.getLocalAddress()).getPort());
+        client.setSoTimeout(5000);
+    }
+
+    @AfterMethod
+    public void stopServer() throws IOException
+    {
+        client.close();
+        server.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+    }
+
+    @Test
+    public void pipelinedRequestsShouldBeAnsweredInOrderOnOneConnection() throws IOException
+    {
+        final StringBuilder requests = new StringBuilder();
+        for(int i = 1; i <= 5; i++)
+            requests.append("GET /").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        client.getOutputStream().write(requests.toString().getBytes(Charsets.UTF_8));
+        client.getOutputStream().flush();
+
+        final InputStream in = new BufferedInputStream(client.getInputStream());
+        for(int i = 1; i <= 5; i++)
+            assertThat(readBody(in)).isEqualTo("/" + i);
+
+        // still open
+        client.getOutputStream().write("GET /6 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(Charsets.UTF_8));
+        assertThat(readBody(in)).isEqualTo("/6");
+
+        // and now it is closed
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    public void nextRequestShouldWaitForTheLastChunk() throws IOException
+    {
+        client.getOutputStream().write(("GET /chunked HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /2 HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(Charsets.UTF_8));
+        client.getOutputStream().flush();
+
+        final InputStream in = new BufferedInputStream(client.getInputStream());
+        assertThat(readBody(in)).isEqualTo("/chunked/chunked");
+        assertThat(readBody(in)).isEqualTo("/2");
+    }
+
+    private static String readBody(InputStream in) throws IOException
+    {
+        int length = -1;
+        boolean chunked = false;
+        String line;
+        while(!(line = readLine(in)).isEmpty())
+        {
+            if(line.toLowerCase().startsWith("content-length:"))
+                length = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+            if(line.toLowerCase().equals("transfer-encoding: chunked"))
+                chunked = true;
+        }
+
+        if(!chunked)
+        {
+            assertThat(length).isGreaterThanOrEqualTo(0);
+            return new String(read(in, length), Charsets.UTF_8);
+        }
+
+        final StringBuilder body = new StringBuilder();
+        while((length = Integer.parseInt(readLine(in), 16)) > 0)
+        {
+            body.append(new String(read(in, length), Charsets.UTF_8));
+            readLine(in);
+        }
+        readLine(in);
+
+        return body.toString();
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException
+    {
+        final byte[] bytes = new byte[length];
+        new DataInputStream(in).readFully(bytes);
+        return bytes;
+    }
+
+    private static String readLine(InputStream in) throws IOException
+    {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while((c = in.read()) != '\n')
+        {
+            if(c == -1)
+                throw new EOFException();
+            if(c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Answers with the request URI from another thread, the earlier requests take longest
+     */
+    static class SlowEchoHandler extends SimpleChannelHandler
+    {
+        @Override
+        public void messageReceived(final ChannelHandlerContext ctx, MessageEvent e)
+        {
+            final String uri = ((HttpRequest) e.getMessage()).getUri();
+            if(uri.equals("/chunked"))
+            {
+                final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+                response.setChunked(true);
+                response.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+                ctx.getChannel().write(response);
+                ctx.getChannel().write(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(uri, Charsets.UTF_8)));
+                ctx.getChannel().write(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(uri, Charsets.UTF_8)));
+                ctx.getChannel().write(HttpChunk.LAST_CHUNK);
+                return;
+            }
+
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(Math.max(0, 60 - 10 * Integer.parseInt(uri.substring(1))));
+                    }
+                    catch (InterruptedException ignored)
+                    {
+                    }
+
+                    final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+                    response.setContent(ChannelBuffers.copiedBuffer(uri, Charsets.UTF_8));
+                    HttpHeaders.setContentLength(response, response.getContent().readableBytes());
+                    ctx.getChannel().write(response);
+                }
+            }.start();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Vertex;
+import dgm.GraphUtilities;
+import dgm.ID;
+import dgm.Subgraph;
+import dgm.exceptions.DegraphmalizerException;
+import org.testng.annotations.*;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EdgeAggregatesTest
+{
+    final ObjectMapper om = new ObjectMapper();
+
+    final EdgeAggregate likes = new EdgeAggregate(EdgeAggregate.Kind.COUNT, Direction.OUT, "likes", null);
+    final EdgeAggregate weight = new EdgeAggregate(EdgeAggregate.Kind.SUM, Direction.OUT, "likes", "weight");
+    final EdgeAggregate tags = new EdgeAggregate(EdgeAggregate.Kind.SET, Direction.OUT, null, "tag");
+    final EdgeAggregate likedBy = new EdgeAggregate(EdgeAggregate.Kind.COUNT, Direction.IN, "likes", null);
+
+    final ID a = new ID("i", "t", "a", 1);
+    final ID b = new ID("i", "t", "b", 1);
+    final ID x = new ID("i", "t", "x", 0);
+    final ID y = new ID("i", "t", "y", 0);
+
+    LocalGraph lg;
+    EdgeAggregates aggregates;
+    BlueprintsSubgraphManager sgm;
+
+    @BeforeMethod
+    public void createGraph()
+    {
+        lg = LocalGraph.localNode();
+
+        aggregates = new EdgeAggregates();
+        aggregates.register(Arrays.asList(likes, weight, tags, likedBy));
+
+        sgm = new BlueprintsSubgraphManager(om, lg.G, aggregates);
+    }
+
+    @AfterMethod
+    public void shutdownGraph()
+    {
+        lg.G.shutdown();
+    }
+
+    @Test
+    public void aggregatesShouldFollowCommits() throws DegraphmalizerException
+    {
+        final MutableSubgraph first = new MutableSubgraph();
+        like(first, x, 2, "red");
+        like(first, y, 3, "blue");
+        first.beginEdge("knows", y, Subgraph.Direction.OUTWARDS).property("tag", om.getNodeFactory().textNode("red")).endEdge();
+        sgm.commitSubgraph(a, first);
+
+        final MutableSubgraph other = new MutableSubgraph();
+        like(other, x, 1, "green");
+        sgm.commitSubgraph(b, other);
+
+        assertThat(read(likes, a)).isEqualTo("2");
+        assertThat(read(weight, a)).isEqualTo("5");
+        assertThat(read(tags, a)).isEqualTo("[\"blue\",\"red\"]");
+        assertThat(read(likedBy, x)).isEqualTo("2");
+        assertThat(read(likedBy, y)).isEqualTo("1");
+
+        // the state is stored on the vertices, not computed on read
+        assertThat(vertex(a).getProperty(likes.key())).isNotNull();
+        assertThat(vertex(x).getProperty(likedBy.key())).isNotNull();
+
+        // next version drops the edge to x and changes the weight of y
+        final MutableSubgraph second = new MutableSubgraph();
+        like(second, y, 4, "blue");
+        sgm.commitSubgraph(a.version(2), second);
+
+        assertThat(read(likes, a)).isEqualTo("1");
+        assertThat(read(weight, a)).isEqualTo("4");
+        assertThat(read(tags, a)).isEqualTo("[\"blue\"]");
+        assertThat(read(likedBy, x)).isEqualTo("1");
+        assertThat(read(likedBy, y)).isEqualTo("1");
+
+        // stored state is the same as computing from scratch
+        for(EdgeAggregate aggregate : Arrays.asList(likes, weight, tags))
+            assertThat(vertex(a).getProperty(aggregate.key()))
+                    .isEqualTo(GraphUtilities.toPropertyValue(aggregate.compute(om, vertex(a))));
+
+        // removes x as well, which has no edges left
+        sgm.deleteSubgraph(b.version(2));
+
+        assertThat(lg.G.getVertices()).hasSize(2);
+        assertThat(read(likes, a)).isEqualTo("1");
+        assertThat(read(likedBy, y)).isEqualTo("1");
+    }
+
+    @Test
+    public void stateOfAnEarlierProcessShouldBeComputedAgain() throws DegraphmalizerException
+    {
+        final MutableSubgraph first = new MutableSubgraph();
+        like(first, x, 2, "red");
+        sgm.commitSubgraph(a, first);
+        assertThat(read(likes, a)).isEqualTo("1");
+
+        // a restart without the aggregates in the configuration, the edges change without them
+        sgm = new BlueprintsSubgraphManager(om, lg.G, new EdgeAggregates());
+        final MutableSubgraph second = new MutableSubgraph();
+        like(second, x, 2, "red");
+        like(second, y, 3, "blue");
+        sgm.commitSubgraph(a.version(2), second);
+
+        // the aggregates are configured again after the next restart
+        aggregates = new EdgeAggregates();
+        aggregates.register(Arrays.asList(likes, weight, tags, likedBy));
+        sgm = new BlueprintsSubgraphManager(om, lg.G, aggregates);
+
+        assertThat(read(likes, a)).isEqualTo("2");
+        assertThat(read(weight, a)).isEqualTo("5");
+
+        // and a commit does not start from the stale state either
+        final MutableSubgraph third = new MutableSubgraph();
+        like(third, y, 3, "blue");
+        sgm.commitSubgraph(a.version(3), third);
+
+        assertThat(read(likes, a)).isEqualTo("1");
+        assertThat(read(weight, a)).isEqualTo("3");
+    }
+
+    private void like(MutableSubgraph sg, ID other, int weight, String tag)
+    {
+        sg.beginEdge("likes", other, Subgraph.Direction.OUTWARDS)
+                .property("weight", om.getNodeFactory().numberNode(weight))
+                .property("tag", om.getNodeFactory().textNode(tag))
+                .endEdge();
+    }
+
+    private Vertex vertex(ID id)
+    {
+        for(Vertex v : GraphUtilities.findVerticesInIndex(lg.G, id.index(), id.type()))
+            if(GraphUtilities.getID(om, v).id().equals(id.id()))
+                return v;
+
+        throw new AssertionError("No vertex for " + id);
+    }
+
+    private String read(EdgeAggregate aggregate, ID id)
+    {
+        return aggregates.read(om, aggregate, vertex(id)).toString();
+    }
+}
@@ -0,0 +1,161 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.tinkerpop.blueprints.*;
+import dgm.*;
+import org.neo4j.helpers.collection.Iterables;
+import org.testng.annotations.*;
+
+import java.io.*;
+
+import static dgm.GraphUtilities.*;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GraphSnapshotTest
+{
+    final ObjectMapper om = new ObjectMapper();
+    LocalGraph lg;
+
+    @BeforeMethod
+    public void clearGraph()
+    {
+        lg = LocalGraph.localNode();
+    }
+
+    @AfterMethod
+    public void shutdownGraph()
+    {
+        lg.G.shutdown();
+    }
+
+    /**
+     * Identifiers, owners, edges and properties should all survive an export and restore.
+     */
+    @Test
+    public void restoredGraphShouldEqualExportedGraph() throws IOException
+    {
+        final ID a = new ID("idx", "type", "a", 1);
+        final ID b = new ID("idx", "type", "b", 3);
+
+        final MutableSubgraph sg = new MutableSubgraph();
+        sg.property("title", JsonNodeFactory.instance.textNode("abc"));
+        sg.property("nested", om.readTree("{\"x\":[1,2,3]}"));
+        sg.beginEdge("knows", getSymbolicID(b), Subgraph.Direction.OUTWARDS)
+                .property("weight", JsonNodeFactory.instance.numberNode(2));
+        lg.sgm.commitSubgraph(a, sg);
+
+        final File snapshot = File.createTempFile("graph", ".snapshot");
+        snapshot.deleteOnExit();
+
+        final GraphSnapshot.Counts exported = GraphSnapshot.export(lg.G, snapshot);
+        assertThat(exported.vertices).isEqualTo(2);
+        assertThat(exported.edges).isEqualTo(1);
+
+        final LocalGraph restored = LocalGraph.fromSnapshot(snapshot.getAbsolutePath());
+        try
+        {
+            assertThat(countVertices(restored.G)).isEqualTo(2);
+            assertThat(Iterables.count(restored.G.getEdges())).isEqualTo(1);
+
+            final Vertex center = findVertex(om, restored.G, a);
+            assertThat(center).isNotNull();
+            assertThat(getOwner(om, center)).isEqualTo(a);
+            assertThat(getProperty(om, center, "title").textValue()).isEqualTo("abc");
+            assertThat((Object)getProperty(om, center, "nested")).isEqualTo(om.readTree("{\"x\":[1,2,3]}"));
+            assertThat(center.getProperty(KEY_VERSION)).isEqualTo(1L);
+
+            // key indices are used for lookups, so these must work on the restored graph
+            assertThat(findVertex(om, restored.G, getSymbolicID(b))).isNotNull();
+
+            final Edge e = Iterables.single(restored.G.getEdges());
+            assertThat(getEdgeID(om, e).toString()).isEqualTo(getEdgeID(om, Iterables.single(lg.G.getEdges())).toString());
+            assertThat(getOwner(om, e)).isEqualTo(a);
+            assertThat(getProperty(om, e, "weight").intValue()).isEqualTo(2);
+
+            // the restored graph is fully functional
+            lg.sgm.deleteSubgraph(a);
+            restored.sgm.deleteSubgraph(a);
+            assertThat(countVertices(restored.G)).isEqualTo(countVertices(lg.G));
+        }
+        finally
+        {
+            restored.G.shutdown();
+        }
+    }
+
+    /**
+     * Count vertices, ignoring the property-less Neo4j reference node
+     */
+    private static int countVertices(Graph graph)
+    {
+        int count = 0;
+        for(Vertex v : graph.getVertices())
+            if(!v.getPropertyKeys().isEmpty())
+                count++;
+
+        return count;
+    }
+
+    /**
+     * An edge to a vertex that is not in the snapshot, such as a vertex added during the export, should be skipped.
+     */
+    @Test
+    public void edgesToVerticesThatWereNotExportedShouldBeSkipped() throws IOException
+    {
+        final Vertex a = lg.G.addVertex(null);
+        a.setProperty("name", "a");
+        final Vertex empty = lg.G.addVertex(null);
+        lg.G.addEdge(null, a, empty, "knows");
+
+        final File snapshot = File.createTempFile("graph", ".snapshot");
+        snapshot.deleteOnExit();
+
+        final GraphSnapshot.Counts exported = GraphSnapshot.export(lg.G, snapshot);
+        assertThat(exported.vertices).isEqualTo(1);
+        assertThat(exported.edges).isEqualTo(0);
+        assertThat(new File(snapshot.getPath() + ".tmp").exists()).isFalse();
+    }
+
+    /**
+     * A snapshot of an older format version holds untyped properties, they should be migrated after the restore.
+     */
+    @Test
+    public void olderSnapshotShouldBeMigrated() throws IOException
+    {
+        final Vertex v = lg.G.addVertex(null);
+        v.setProperty("number", "3");
+        v.setProperty("text", "abc");
+        lg.G.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphSnapshot.export(lg.G, bytes);
+
+        // turn it into a version 1 snapshot, the layout is the same
+        final byte[] old = bytes.toByteArray();
+        old[7] = 1;
+
+        final File snapshot = File.createTempFile("graph", ".snapshot");
+        snapshot.deleteOnExit();
+        final OutputStream os = new FileOutputStream(snapshot);
+        os.write(old);
+        os.close();
+
+        final LocalGraph restored = LocalGraph.fromSnapshot(snapshot.getAbsolutePath());
+        try
+        {
+            final Vertex migrated = Iterables.single(restored.G.getVertices("text", "abc"));
+            assertThat(migrated.getProperty("number")).isEqualTo(3);
+        }
+        finally
+        {
+            restored.G.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void restoringGarbageShouldFail() throws IOException
+    {
+        GraphSnapshot.restore(lg.G, new ByteArrayInputStream("not a snapshot".getBytes()));
+    }
+}
@@ -13,16 +13,7 @@ public class LocalGraph {
 
     public static LocalGraph localNode()
     {
-        final ArrayList<Module> modules = new ArrayList<Module>();
-        // some defaults
-        modules.add(new BlueprintsSubgraphManagerModule());
-        modules.add(new CommonNeo4j());
-        modules.add(new EphemeralEmbeddedNeo4J());
-
-        // the injector
-        final Injector injector = com.google.inject.Guice.createInjector(modules);
-
-        final LocalGraph lg = injector.getInstance(LocalGraph.class);
+        final LocalGraph lg = createLocalGraph(new EphemeralEmbeddedNeo4J());
 
         for(Vertex v : lg.G.getVertices())
             lg.G.removeVertex(v);
@@ -35,9 +26,31 @@ public class LocalGraph {
         return lg;
     }
 
+    /**
+     * Local graph initialised from a graph snapshot
+     */
+    public static LocalGraph fromSnapshot(String snapshot)
+    {
+        return createLocalGraph(new EphemeralEmbeddedNeo4J(snapshot));
+    }
+
+    private static LocalGraph createLocalGraph(Module neo4j)
+    {
+        final ArrayList<Module> modules = new ArrayList<Module>();
+        // some defaults
+        modules.add(new BlueprintsSubgraphManagerModule());
+        modules.add(new CommonNeo4j());
+        modules.add(neo4j);
+
+        // the injector
+        final Injector injector = com.google.inject.Guice.createInjector(modules);
+
+        return injector.getInstance(LocalGraph.class);
+    }
+
     @Inject
-    TransactionalGraph G;
+    public TransactionalGraph G;
 
     @Inject
-    SubgraphManager sgm;
+    public SubgraphManager sgm;
 }
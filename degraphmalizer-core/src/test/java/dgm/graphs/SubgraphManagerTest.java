@@ -121,6 +121,29 @@ public class SubgraphManagerTest
         assertThat(e.getVertex(Direction.OUT)).isEqualTo(v0);
     }
 
+    /**
+     * A new version of the target of an edge should not change the edge.
+     */
+    @Test
+    void testVersionBumpOfTargetKeepsEdgeIdentifier() throws DegraphmalizerException
+    {
+        final ID source = randomVersionedID();
+        final ID target = randomVersionedID();
+
+        final MutableSubgraph sg = new MutableSubgraph();
+        sg.beginEdge("label", getSymbolicID(target), Subgraph.Direction.OUTWARDS);
+        lg.sgm.commitSubgraph(source, sg);
+        lg.sgm.commitSubgraph(target, Subgraphs.EMPTY_SUBGRAPH);
+
+        final Edge e = Iterables.single(lg.G.getEdges());
+        final Object identifier = e.getProperty(IDENTIFIER);
+
+        lg.sgm.commitSubgraph(updateIDVersion(target, target.version() + 1), Subgraphs.EMPTY_SUBGRAPH);
+
+        assertThat(e.getProperty(IDENTIFIER)).isEqualTo(identifier);
+        assertThat(findEdge(om, lg.G, new EdgeID(source, "label", updateIDVersion(target, target.version() + 1)))).isEqualTo(e);
+    }
+
     /**
      * If you create a subgraph for which a symbolic vertex exists, it should claim that
      * vertex, like there is no tomorrow!
@@ -271,6 +294,54 @@ public class SubgraphManagerTest
         assertThat(getID(om, v1).version()).isEqualTo(newID.version());
     }
 
+    /**
+     * Only properties that are added, changed or removed should be written.
+     */
+    @Test
+    void testSetPropertiesOnlyWritesChanges() throws Exception
+    {
+        final Vertex v = addVertexWithId(randomVersionedID(), false);
+
+        final Map<String,JsonNode> properties = new HashMap<String,JsonNode>();
+        properties.put("a", om.readTree("1"));
+        properties.put("b", om.readTree("{\"x\":2}"));
+        properties.put("c", om.readTree("\"abc\""));
+
+        assertThat(setProperties(v, properties)).isEqualTo(3);
+
+        // nothing changed
+        assertThat(setProperties(v, properties)).isEqualTo(0);
+
+        // one changed, one removed
+        properties.put("a", om.readTree("2"));
+        properties.remove("c");
+        assertThat(setProperties(v, properties)).isEqualTo(2);
+
+        assertThat(v.getProperty("a")).isEqualTo(2);
+        assertThat(v.getPropertyKeys().contains("c")).isFalse();
+    }
+
+    /**
+     * Properties in the old untyped format should read the same after migration.
+     */
+    @Test
+    void testMigrateUntypedProperties() throws Exception
+    {
+        final Vertex v = addVertexWithId(randomVersionedID(), false);
+        v.setProperty("number", "3");
+        v.setProperty("text", "abc");
+        v.setProperty("object", "{\"a\":2}");
+        v.setProperty("sentence", "3 apples");
+        lg.G.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+
+        assertThat(PropertyFormatMigration.migrate(om, lg.G)).isEqualTo(2);
+
+        assertThat(v.getProperty("number")).isEqualTo(3);
+        assertThat((Object)getProperty(om, v, "object")).isEqualTo(om.readTree("{\"a\":2}"));
+        assertThat(getProperty(om, v, "text").textValue()).isEqualTo("abc");
+        assertThat(getProperty(om, v, "sentence").textValue()).isEqualTo("3 apples");
+    }
+
     /**
      * Creating a subgraph for an existing vertex with a higher version should work ok.
      * @throws DegraphmalizerException
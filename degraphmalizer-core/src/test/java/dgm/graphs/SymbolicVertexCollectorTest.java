@@ -0,0 +1,96 @@
+package dgm.graphs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ForwardingExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import dgm.ID;
+import dgm.Subgraph;
+import dgm.degraphmalizr.degraphmalize.Lane;
+import org.testng.annotations.*;
+
+import java.util.concurrent.*;
+
+import static dgm.GraphUtilities.*;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SymbolicVertexCollectorTest
+{
+    final ObjectMapper om = new ObjectMapper();
+    LocalGraph lg;
+    SymbolicVertexCollector collector;
+
+    @BeforeMethod
+    public void clearGraph()
+    {
+        lg = LocalGraph.localNode();
+        collector = new SymbolicVertexCollector(om, lg.G, MoreExecutors.sameThreadExecutor(), 0, 1, 0);
+    }
+
+    @AfterMethod
+    public void shutdownGraph()
+    {
+        lg.G.shutdown();
+    }
+
+    @Test
+    public void unconnectedSymbolicVerticesShouldBeRemoved()
+    {
+        final ID orphan = new ID("a", "b", "orphan", 0);
+        final ID target = new ID("a", "b", "target", 0);
+        final ID source = new ID("a", "b", "source", 1);
+
+        createVertex(om, lg.G, orphan);
+        lg.G.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+
+        final MutableSubgraph sg = new MutableSubgraph();
+        sg.beginEdge("label", target, Subgraph.Direction.OUTWARDS);
+        lg.sgm.commitSubgraph(source, sg);
+
+        assertThat(collector.runSweep(false)).isEqualTo(1);
+        assertThat(collector.getReclaimed()).isEqualTo(1);
+
+        assertThat(findVertex(om, lg.G, orphan)).isNull();
+        assertThat(findVertex(om, lg.G, target)).isNotNull();
+        assertThat(findVertex(om, lg.G, source)).isNotNull();
+    }
+
+    @Test
+    public void refusedBatchesShouldBeRetried()
+    {
+        final ID orphan = new ID("a", "b", "orphan", 0);
+        createVertex(om, lg.G, orphan);
+        lg.G.stopTransaction(TransactionalGraph.Conclusion.SUCCESS);
+
+        // a write queue that is full the first time
+        final ExecutorService busy = new ForwardingExecutorService()
+        {
+            final ExecutorService delegate = MoreExecutors.sameThreadExecutor();
+            boolean refused = false;
+
+            @Override
+            protected ExecutorService delegate()
+            {
+                return delegate;
+            }
+
+            @Override
+            public <T> Future<T> submit(Callable<T> task)
+            {
+                assertThat(Lane.current()).isEqualTo(Lane.BACKGROUND);
+                if(!refused)
+                {
+                    refused = true;
+                    throw new RejectedExecutionException("full");
+                }
+                return super.submit(task);
+            }
+        };
+
+        collector = new SymbolicVertexCollector(om, lg.G, busy, 0, 1, 0);
+
+        assertThat(collector.runSweep(false)).isEqualTo(1);
+        assertThat(findVertex(om, lg.G, orphan)).isNull();
+        assertThat(Lane.current()).isEqualTo(Lane.INTERACTIVE);
+    }
+}
@@ -0,0 +1,128 @@
+package dgm.modules;
+
+import dgm.degraphmalizr.degraphmalize.Lane;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LaneQueueTest
+{
+    final LaneExecutor executor = new LaneExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LaneQueue(10, 0.5),
+            Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(), null, Integer.MAX_VALUE);
+
+    @Test
+    public void interactiveTasksShouldBeTakenFirstAndBackgroundGetsItsShare() throws InterruptedException
+    {
+        final List<String> order = new ArrayList<String>();
+        final LaneQueue queue = new LaneQueue(10, 0.5);
+
+        queue.offer(task(Lane.BACKGROUND, "b1", order));
+        queue.offer(task(Lane.BACKGROUND, "b2", order));
+        queue.offer(task(Lane.INTERACTIVE, "i1", order));
+        queue.offer(task(Lane.INTERACTIVE, "i2", order));
+        queue.offer(task(Lane.INTERACTIVE, "i3", order));
+
+        assertThat(queue.size(Lane.BACKGROUND)).isEqualTo(2);
+
+        while(!queue.isEmpty())
+            queue.take().run();
+
+        assertThat(order).containsExactly("i1", "b1", "i2", "b2", "i3");
+    }
+
+    @Test
+    public void fullQueueShouldRefuseTasks()
+    {
+        final LaneQueue queue = new LaneQueue(1, 0.5);
+
+        assertThat(queue.offer(task(Lane.BACKGROUND, "b1", new ArrayList<String>()))).isTrue();
+        assertThat(queue.offer(task(Lane.INTERACTIVE, "i1", new ArrayList<String>()))).isFalse();
+        assertThat(queue.remainingCapacity()).isEqualTo(0);
+    }
+
+    @Test
+    public void workSubmittedByATaskShouldKeepItsLane() throws Exception
+    {
+        final LaneExecutor pool = pool(2);
+
+        final Lane previous = Lane.BACKGROUND.enter();
+        try
+        {
+            final Future<Future<Lane>> nested = executor.submit(new Callable<Future<Lane>>()
+            {
+                @Override
+                public Future<Lane> call()
+                {
+                    return pool.submit(new Callable<Lane>()
+                    {
+                        @Override
+                        public Lane call()
+                        {
+                            return Lane.current();
+                        }
+                    });
+                }
+            });
+
+            assertThat(nested.get().get()).isEqualTo(Lane.BACKGROUND);
+        }
+        finally
+        {
+            Lane.restore(previous);
+        }
+
+        assertThat(Lane.current()).isEqualTo(Lane.INTERACTIVE);
+        pool.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void backgroundWorkOverItsLimitShouldRunInTheCaller() throws Exception
+    {
+        final LaneExecutor pool = pool(0);
+        final Callable<Thread> currentThread = new Callable<Thread>()
+        {
+            @Override
+            public Thread call()
+            {
+                return Thread.currentThread();
+            }
+        };
+
+        assertThat(pool.submit(currentThread).get()).isNotSameAs(Thread.currentThread());
+
+        final Lane previous = Lane.BACKGROUND.enter();
+        try
+        {
+            assertThat(pool.submit(currentThread).get()).isSameAs(Thread.currentThread());
+        }
+        finally
+        {
+            Lane.restore(previous);
+        }
+
+        pool.shutdown();
+    }
+
+    private static LaneExecutor pool(int backgroundLimit)
+    {
+        return new LaneExecutor(0, 2, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                Executors.defaultThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy(), null, backgroundLimit);
+    }
+
+    private LaneExecutor.LaneTask task(Lane lane, final String name, final List<String> order)
+    {
+        return executor.new LaneTask(lane, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                order.add(name);
+            }
+        });
+    }
+}
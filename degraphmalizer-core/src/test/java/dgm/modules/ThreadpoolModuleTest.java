@@ -0,0 +1,99 @@
+package dgm.modules;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.*;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class ThreadpoolModuleTest
+{
+    @Test
+    public void fullDegraphmalizeQueueShouldRejectRequests() throws InterruptedException
+    {
+        final ThreadpoolModule module = new ThreadpoolModule(1, 1, 1, 0.5);
+        final ExecutorService degraphmalizes = module.provideDegraphmalizesExecutor();
+        final ExecutorStatistics statistics = statistics(degraphmalizes, module.provideRecomputesExecutor(), module);
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // one request running, one waiting
+        degraphmalizes.submit(block(running, release));
+        running.await();
+        degraphmalizes.submit(block(new CountDownLatch(1), release));
+
+        try
+        {
+            degraphmalizes.submit(block(new CountDownLatch(1), release));
+            fail("Queue should be full");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+
+        assertThat(statistics.getDegraphmalizeQueueDepth()).isEqualTo(1);
+        assertThat(statistics.getDegraphmalizeQueueLimit()).isEqualTo(1);
+        assertThat(statistics.getDegraphmalizeRejected()).isEqualTo(1);
+
+        release.countDown();
+        degraphmalizes.shutdown();
+    }
+
+    @Test
+    public void busyRecomputeThreadsShouldRunWorkInTheCaller() throws Exception
+    {
+        final ThreadpoolModule module = new ThreadpoolModule(1, 1, 1, 0.5);
+        final ExecutorService recomputes = module.provideRecomputesExecutor();
+        final ExecutorStatistics statistics = statistics(module.provideDegraphmalizesExecutor(), recomputes, module);
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        recomputes.submit(block(running, release));
+        running.await();
+
+        final Future<Thread> overflow = recomputes.submit(new Callable<Thread>()
+        {
+            @Override
+            public Thread call()
+            {
+                return Thread.currentThread();
+            }
+        });
+
+        assertThat(overflow.get()).isSameAs(Thread.currentThread());
+        assertThat(statistics.getRecomputeActive()).isEqualTo(1);
+        assertThat(statistics.getRecomputeCallerRuns()).isEqualTo(1);
+
+        release.countDown();
+        recomputes.shutdown();
+    }
+
+    private static ExecutorStatistics statistics(ExecutorService degraphmalizes, ExecutorService recomputes, ThreadpoolModule module)
+    {
+        return module.provideExecutorStatistics(degraphmalizes, module.provideReindexesExecutor(), recomputes,
+                module.provideFetchesExecutor());
+    }
+
+    private static Runnable block(final CountDownLatch running, final CountDownLatch release)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                running.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
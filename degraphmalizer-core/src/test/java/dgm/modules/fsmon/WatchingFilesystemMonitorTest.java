@@ -0,0 +1,93 @@
+package dgm.modules.fsmon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.testng.SkipException;
+import org.testng.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WatchingFilesystemMonitorTest
+{
+    File conf;
+    WatchingFilesystemMonitor watcher;
+
+    final BlockingQueue<String> changes = new LinkedBlockingQueue<String>();
+
+    @BeforeMethod
+    public void startWatching() throws IOException
+    {
+        conf = Files.createTempDir();
+        new File(conf, "a").mkdir();
+        new File(conf, "b").mkdir();
+
+        changes.clear();
+        try
+        {
+            watcher = new WatchingFilesystemMonitor(conf.getPath(), 200, new FilesystemMonitor()
+            {
+                @Override
+                public void directoryChanged(String directory)
+                {
+                    changes.add(directory);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            // JVMs without native events (such as on OS X) use the PollingFilesystemMonitor instead
+            throw new SkipException(e.getMessage());
+        }
+        watcher.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopWatching() throws IOException
+    {
+        if(watcher != null)
+            watcher.stop();
+
+        watcher = null;
+        FileUtils.deleteDirectory(conf);
+    }
+
+    @Test
+    public void burstOfChangesShouldBeReportedOnce() throws Exception
+    {
+        write("a/one.conf.js");
+        write("a/two.conf.js");
+        write("a/one.conf.js");
+
+        // editor backup files are not part of the configuration
+        write("b/one.conf.js~");
+
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("a");
+        assertThat(changes.poll(1, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    public void addedAndRemovedIndicesShouldBeReported() throws Exception
+    {
+        new File(conf, "c").mkdir();
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("c");
+
+        // the new directory is watched as well
+        write("c/item.conf.js");
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("c");
+
+        FileUtils.deleteDirectory(new File(conf, "b"));
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("b");
+    }
+
+    private void write(String file) throws IOException
+    {
+        Files.write("({})", new File(conf, file), Charsets.UTF_8);
+    }
+}
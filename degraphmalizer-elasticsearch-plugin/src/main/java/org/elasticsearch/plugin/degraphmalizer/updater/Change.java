@@ -48,6 +48,23 @@ public class Change implements StringSerialization<Change> {
         retries++;
     }
 
+    /**
+     * Identifies the document, changes with the same key replace each other.
+     */
+    public String key() {
+        return type + "/" + id;
+    }
+
+    /**
+     * The change that should be sent when both are waiting: the one with the highest version, and on a tie the delete.
+     */
+    public static Change latest(final Change waiting, final Change change) {
+        if (change.version() != waiting.version()) {
+            return change.version() > waiting.version() ? change : waiting;
+        }
+        return waiting.action() == Action.DELETE ? waiting : change;
+    }
+
     public String toValue() {
         return this.action().name() + "," + this.type() + "," + this.version() + ","+this.retries()+"," + this.id();
     }
@@ -1,28 +1,47 @@
 package org.elasticsearch.plugin.degraphmalizer.updater;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 /**
  * This class handles Change instances. The class can be configured via elasticsearch.yml (see README.md for
- * more information). The Updater manages a queue of Change objects, executes HTTP requests for these
- * changes and retries changes when HTTP requests fail.
+ * more information). The Updater manages a queue of Change objects, sends these changes in batches to the
+ * Degraphmalizer and retries the changes of a batch that failed. A Degraphmalizer without the batch endpoint gets
+ * the changes one request at a time.
  */
 public final class Updater implements Runnable {
     private static final ESLogger LOG = Loggers.getLogger(Updater.class);
     private static final int NAPTIME = 5 * 1000;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long OVERLOADED_DELAY = 1000;
+    private static final String BATCH_PATH = "/_batch";
     private final HttpClient httpClient = new DefaultHttpClient();
 
     private final String uriScheme;
@@ -30,6 +49,8 @@ public final class Updater implements Runnable {
     private final int uriPort;
     private final long retryDelayOnFailureInMillis;
     private final int maxRetries;
+    private final int batchSize;
+    private final long batchDelayInMillis;
 
     private final String index;
 
@@ -39,14 +60,19 @@ public final class Updater implements Runnable {
     private boolean shutdownInProgress = false;
     private boolean sending = false;
 
+    // false once the Degraphmalizer turned out not to know the batch endpoint
+    private boolean batches = true;
+
 
-    public Updater(final String index, final String uriScheme, final String uriHost, final int uriPort, final long retryDelayOnFailureInMillis, final String logPath, final int queueLimit, final int maxRetries) {
+    public Updater(final String index, final String uriScheme, final String uriHost, final int uriPort, final long retryDelayOnFailureInMillis, final String logPath, final int queueLimit, final int maxRetries, final int batchSize, final long batchDelayInMillis) {
         this.index = index;
         this.uriScheme = uriScheme;
         this.uriHost = uriHost;
         this.uriPort = uriPort;
         this.retryDelayOnFailureInMillis = retryDelayOnFailureInMillis;
         this.maxRetries = maxRetries;
+        this.batchSize = batchSize;
+        this.batchDelayInMillis = batchDelayInMillis;
 
         queue = new UpdaterQueue(logPath, index, queueLimit);
         new Thread(queue).start();
@@ -55,6 +81,7 @@ public final class Updater implements Runnable {
 
         LOG.info("Updater instantiated for index {}. Updates will be sent to {}://{}:{}. Retry delay on failure is {} milliseconds.", index, uriScheme, uriHost, uriPort, retryDelayOnFailureInMillis);
         LOG.info("Updater will overflow in {} after limit of {} has been reached, messages will be retried {} times ", logPath, queueLimit, maxRetries);
+        LOG.info("Updater sends batches of at most {} changes, waiting at most {} milliseconds to fill a batch", batchSize, batchDelayInMillis);
     }
 
     public void shutdown() {
@@ -82,8 +109,7 @@ public final class Updater implements Runnable {
             boolean done = false;
             while (!done) {
                 if (sending) {
-                    final Change change = queue.take().thing();
-                    perform(change);
+                    perform(nextBatch());
                 } else {
                     Thread.sleep(NAPTIME);
                 }
@@ -106,50 +132,170 @@ public final class Updater implements Runnable {
         LOG.trace("Received {}", change);
     }
 
-    private void perform(final Change change) {
-        final HttpRequestBase request = toRequest(change);
+    /**
+     * Wait for a change, then collect more changes until the batch is full or the batch delay has passed.
+     */
+    private List<Change> nextBatch() throws InterruptedException {
+        final List<Change> batch = new ArrayList<Change>(batchSize);
+        batch.add(queue.take().thing());
+
+        final long deadline = System.currentTimeMillis() + batchDelayInMillis;
+        while (batch.size() < batchSize) {
+            final long wait = Math.max(0, deadline - System.currentTimeMillis());
+            final DelayedImpl<Change> next = queue.poll(wait, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next.thing());
+        }
+
+        return batch;
+    }
+
+    void perform(final List<Change> batch) {
+        if (!batches) {
+            performEach(batch);
+            return;
+        }
+
+        final HttpPost request = new HttpPost(buildURI(BATCH_PATH));
         try {
+            request.setEntity(new StringEntity(toBatch(batch), ContentType.create("application/x-ndjson", "UTF-8")));
             final HttpResponse response = httpClient.execute(request);
+            final int statusCode = response.getStatusLine().getStatusCode();
 
-            if (!isSuccessful(response)) {
-                LOG.warn("Request {} {} was not successful. Response status code: {}.", request.getMethod(), request.getURI(), response.getStatusLine().getStatusCode());
-                retry(change);
-            } else {
-                LOG.debug("Change performed: {}", change);
+            if (statusCode == 200) {
+                handleResults(batch, EntityUtils.toString(response.getEntity(), "UTF-8"));
+                return;
+            }
+
+            EntityUtils.consume(response.getEntity());
+            if (statusCode == TOO_MANY_REQUESTS) {
+                final long delay = retryAfterInMillis(response);
+                LOG.info("Degraphmalizer is overloaded, sending batch of {} changes for index {} again in {} milliseconds", batch.size(), index, delay);
+                for (Change change : batch) {
+                    later(change, delay);
+                }
+                return;
+            }
+
+            if (statusCode == NOT_FOUND || statusCode == METHOD_NOT_ALLOWED) {
+                LOG.error("The Degraphmalizer at {}://{}:{} does not know {}, it is older than this plugin. Changes for index {} are sent one at a time, upgrade the Degraphmalizer to send them in batches.", uriScheme, uriHost, uriPort, BATCH_PATH, index);
+                batches = false;
+                performEach(batch);
+                return;
             }
 
+            LOG.warn("Batch of {} changes for index {} was not successful. Response status code: {}.", batch.size(), index, statusCode);
+            retryAll(batch);
+        } catch (IOException e) {
+            LOG.warn("Error sending batch of {} changes for index {}: {}", batch.size(), index, e.getMessage());
+            retryAll(batch);
+        }
+    }
+
+    private void performEach(final List<Change> batch) {
+        for (Change change : batch) {
+            perform(change);
+        }
+    }
+
+    /**
+     * Send a single change as {@code GET} (update) or {@code DELETE} request of the document
+     */
+    private void perform(final Change change) {
+        final URI uri = buildURI(String.format("/%s/%s/%s/%d", index, change.type(), change.id(), change.version()));
+        final HttpRequestBase request = change.action() == Action.DELETE ? new HttpDelete(uri) : new HttpGet(uri);
+        try {
+            final HttpResponse response = httpClient.execute(request);
+            final int statusCode = response.getStatusLine().getStatusCode();
             EntityUtils.consume(response.getEntity());
+
+            if (statusCode == 200) {
+                LOG.debug("Change performed: {}", change);
+            } else if (statusCode == TOO_MANY_REQUESTS) {
+                later(change, retryAfterInMillis(response));
+            } else {
+                LOG.warn("Request {} {} was not successful. Response status code: {}.", request.getMethod(), request.getURI(), statusCode);
+                retry(change);
+            }
         } catch (IOException e) {
             LOG.warn("Error executing request {} {}: {}", request.getMethod(), request.getURI(), e.getMessage());
             retry(change);
         }
     }
 
-    private HttpRequestBase toRequest(final Change change) {
-        final HttpRequestBase request;
+    private String toBatch(final List<Change> batch) throws IOException {
+        final StringBuilder body = new StringBuilder();
+        for (Change change : batch) {
+            final XContentBuilder line = jsonBuilder()
+                    .startObject()
+                    .field("action", change.action().name().toLowerCase())
+                    .field("index", index)
+                    .field("type", change.type())
+                    .field("id", change.id())
+                    .field("version", change.version())
+                    .endObject();
+            body.append(line.string()).append('\n');
+        }
+        return body.toString();
+    }
 
-        final Action action = change.action();
-        switch (action) {
-            case UPDATE:
-                request = new HttpGet(buildURI(change));
-                break;
-            case DELETE:
-                request = new HttpDelete(buildURI(change));
-                break;
-            default:
-                throw new RuntimeException("Unknown action " + action + " for " + change + " on index " + index);
+    /**
+     * The Degraphmalizer answers with one line per document. A document that was changed more than once in the batch
+     * is only processed for its latest change, the line for that change covers the other ones. Changes without an
+     * answer, or whose own answer is an error, are retried.
+     */
+    private void handleResults(final List<Change> batch, final String body) throws IOException {
+        final Map<String, Map<String, Object>> results = new HashMap<String, Map<String, Object>>();
+        for (String line : body.split("\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final Map<String, Object> result = JsonXContent.jsonXContent.createParser(line).mapAndClose();
+            results.put(key(String.valueOf(result.get("type")), String.valueOf(result.get("id"))), result);
+        }
+
+        for (Change change : batch) {
+            final Map<String, Object> result = results.get(key(change.type(), change.id()));
+            if (result == null) {
+                LOG.warn("No result for {} on index {}", change, index);
+                retry(change);
+            } else if ("ok".equals(result.get("status"))) {
+                LOG.debug("Change performed: {}", change);
+            } else if (isResultFor(change, result) && "Overloaded".equals(result.get("class"))) {
+                // the queue of the Degraphmalizer was full, this is not a failure of the change
+                later(change, OVERLOADED_DELAY);
+            } else if (isResultFor(change, result)) {
+                LOG.warn("Change {} on index {} failed: {}", change, index, result.get("message"));
+                retry(change);
+            }
         }
+    }
 
-        return request;
+    private static String key(final String type, final String id) {
+        return type + "/" + id;
     }
 
-    private URI buildURI(final Change change) {
-        final String type = change.type();
-        final String id = change.id();
-        final long version = change.version();
+    private static boolean isResultFor(final Change change, final Map<String, Object> result) {
+        final Object version = result.get("version");
+        return change.action().name().equalsIgnoreCase(String.valueOf(result.get("action")))
+                && version instanceof Number && ((Number) version).longValue() == change.version();
+    }
 
-        final String path = String.format("/%s/%s/%s/%d", index, type, id, version);
+    private long retryAfterInMillis(final HttpResponse response) {
+        final Header retryAfter = response.getFirstHeader("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.getValue().trim()));
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring Retry-After header {}", retryAfter.getValue());
+            }
+        }
+        return retryDelayOnFailureInMillis;
+    }
 
+    private URI buildURI(final String path) {
         try {
             return new URIBuilder()
                     .setScheme(uriScheme)
@@ -158,13 +304,18 @@ public final class Updater implements Runnable {
                     .setPath(path)
                     .build();
         } catch (URISyntaxException e) {
-            throw new RuntimeException("Unexpected error building uri for change " + change + " on index " + index, e);
+            throw new RuntimeException("Unexpected error building uri " + path + " for index " + index, e);
         }
     }
 
-    private boolean isSuccessful(final HttpResponse response) {
-        final int statusCode = response.getStatusLine().getStatusCode();
-        return statusCode == 200;
+    private void later(final Change change, final long delayInMillis) {
+        queue.add(new DelayedImpl<Change>(change, delayInMillis));
+    }
+
+    private void retryAll(final List<Change> batch) {
+        for (Change change : batch) {
+            retry(change);
+        }
     }
 
     private void retry(final Change change) {
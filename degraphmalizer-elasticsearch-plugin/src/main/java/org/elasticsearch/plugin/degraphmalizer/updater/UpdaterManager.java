@@ -35,6 +35,8 @@ public class UpdaterManager extends AbstractLifecycleComponent<UpdaterManager> i
     private int queueLimit;
     private String logPath;
     private int maxRetries;
+    private int batchSize;
+    private long batchDelayInMillis;
     private boolean sending = false;
 
     @Inject
@@ -52,6 +54,8 @@ public class UpdaterManager extends AbstractLifecycleComponent<UpdaterManager> i
         this.queueLimit = pluginSettings.getAsInt("DegraphmalizerPlugin.queueLimit", 100000);
         this.logPath = pluginSettings.get("DegraphmalizerPlugin.logPath", "/export/elasticsearch/degraphmalizer");
         this.maxRetries = pluginSettings.getAsInt("DegraphmalizerPlugin.maxRetries", 10);
+        this.batchSize = pluginSettings.getAsInt("DegraphmalizerPlugin.batchSize", 100);
+        this.batchDelayInMillis = pluginSettings.getAsLong("DegraphmalizerPlugin.batchDelayInMillis", 100l);
     }
 
     @Override
@@ -92,7 +96,7 @@ public class UpdaterManager extends AbstractLifecycleComponent<UpdaterManager> i
             LOG.warn("Updater for index {} already exists", index);
             return;
         }
-        final Updater updater = new Updater(index, uriScheme, uriHost, uriPort, retryDelayOnFailureInMillis, logPath, queueLimit, maxRetries);
+        final Updater updater = new Updater(index, uriScheme, uriHost, uriPort, retryDelayOnFailureInMillis, logPath, queueLimit, maxRetries, batchSize, batchDelayInMillis);
         updaters.put(index, updater);
         new Thread(updater).start();
         if (sending) updater.startSending();
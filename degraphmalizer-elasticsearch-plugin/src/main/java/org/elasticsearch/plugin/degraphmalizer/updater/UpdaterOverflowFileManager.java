@@ -4,9 +4,11 @@ import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.concurrent.BlockingQueue;
+import java.util.Iterator;
+import java.util.List;
 
 public class UpdaterOverflowFileManager {
 
@@ -53,9 +55,8 @@ public class UpdaterOverflowFileManager {
         LineNumberReader lnr = null;
         try {
             lnr = new LineNumberReader(new FileReader(file));
-            while(lnr.skip(Long.MAX_VALUE)>0);
-            lnr.getLineNumber();
-            lnr.close();
+            while (lnr.readLine() != null);
+            return lnr.getLineNumber();
         } catch (IOException e) {
             LOG.error("Can't read from file {} " + file.getPath());
         } finally {
@@ -81,67 +82,84 @@ public class UpdaterOverflowFileManager {
     }
 
     /**
-     * Saves the contents of the input queue to disk.
+     * Saves the changes to disk, in files of at most 'limit' changes.
      */
-    public void save(final BlockingQueue<DelayedImpl<Change>> queue) {
-        File file;
-        do {
-            file = new File(logPath, filenamePrefix + System.currentTimeMillis());
-        } while (file.exists());
+    public void save(final List<DelayedImpl<Change>> changes) {
+        final Iterator<DelayedImpl<Change>> iterator = changes.iterator();
+        while (iterator.hasNext()) {
+            File file;
+            do {
+                file = new File(logPath, filenamePrefix + System.currentTimeMillis());
+            } while (file.exists());
 
-        try {
-            final PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
-            int count = 0;
-            while (!queue.isEmpty() && count < limit) {
-                try {
-                    final DelayedImpl<Change> delayed = queue.take();
-                    writer.println(delayed.toValue());
+            try {
+                final PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+                int count = 0;
+                while (iterator.hasNext() && count < limit) {
+                    writer.println(iterator.next().toValue());
                     count++;
-                } catch (InterruptedException e) {
-                    LOG.warn("Take from input queue interrupted: " + e.getMessage());
                 }
+                writer.flush();
+                writer.close();
+            } catch (IOException e) {
+                LOG.error("Error saving overflow file {}: {}", file, e.getMessage());
             }
-            writer.flush();
-            writer.close();
-        } catch (IOException e) {
-            LOG.error("Error saving overflow file {}: {}", file, e.getMessage());
         }
     }
 
     /**
-     * Load the contents of the 'first in line' overflow file into the output queue.
+     * Load the contents of the 'first in line' overflow file, and remove the file.
+     *
+     * @throws IOException If the file can not be read or removed, it is left in place
      */
-    public void load(final BlockingQueue<DelayedImpl<Change>> queue) {
+    public List<DelayedImpl<Change>> load() throws IOException {
         final File[] files = getOverflowFiles();
-        final DelayedImpl<Change> delayedFactory = new DelayedImpl<Change>(new Change(), 0);
-        BufferedReader reader = null;
+        if (files.length == 0) {
+            return new ArrayList<DelayedImpl<Change>>();
+        }
+
+        final File file = files[0];
+        final List<DelayedImpl<Change>> changes = read(file);
+        if (!file.delete()) {
+            throw new IOException("Can not remove file " + file.getCanonicalPath());
+        }
+        return changes;
+    }
 
-        if (files.length > 0) {
-            final File file = files[0];
+    /**
+     * The contents of all overflow files, oldest first. The files are left in place.
+     */
+    public List<DelayedImpl<Change>> readAll() {
+        final List<DelayedImpl<Change>> changes = new ArrayList<DelayedImpl<Change>>();
+        for (File file : getOverflowFiles()) {
             try {
-                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
-                String line = reader.readLine();
-                do {
-                    try {
-                        final DelayedImpl<Change> delayed = delayedFactory.fromValue(line);
-                        queue.put(delayed);
-                    } catch (InterruptedException e) {
-                        LOG.warn("Put into queue was interrupted: {}", e.getMessage());
-                    } catch (Exception e) {
-                        LOG.error("Unparsable overflow line " + line);
-                    }
-                    line = reader.readLine();
-                } while (line != null);
-                reader.close();
-                if (!file.delete()) {
-                    LOG.error("Can not remove file {}", file.getCanonicalPath());
-                }
+                changes.addAll(read(file));
             } catch (IOException e) {
-                LOG.error("Error loading overflow file {}: {}", file, e.getMessage());
-            } finally {
-                closeQuietly(reader);
+                LOG.error("Error reading overflow file {}: {}", file, e.getMessage());
+            }
+        }
+        return changes;
+    }
+
+    private List<DelayedImpl<Change>> read(final File file) throws IOException {
+        final List<DelayedImpl<Change>> changes = new ArrayList<DelayedImpl<Change>>();
+        final DelayedImpl<Change> delayedFactory = new DelayedImpl<Change>(new Change(), 0);
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = reader.readLine();
+            while (line != null) {
+                try {
+                    changes.add(delayedFactory.fromValue(line));
+                } catch (Exception e) {
+                    LOG.error("Unparsable overflow line " + line);
+                }
+                line = reader.readLine();
             }
+        } finally {
+            closeQuietly(reader);
         }
+        return changes;
     }
 
     /**
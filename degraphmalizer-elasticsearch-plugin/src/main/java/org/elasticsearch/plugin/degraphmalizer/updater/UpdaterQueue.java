@@ -5,21 +5,60 @@ import org.elasticsearch.common.logging.Loggers;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.DelayQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Queue of changes for one index. Changes wait in the input queue, move to the delayed output queue while it has room
+ * and overflow to disk when both are full.
+ * <p/>
+ * There is at most one waiting change per document: a change for a document that is already waiting replaces it
+ * when it is newer (see {@link Change#latest(Change, Change)}), and keeps its place in the queue. That holds for
+ * changes in overflow files too. The latest change of every document on disk is kept in memory, a line in an overflow
+ * file only marks the place of the document. When the file is loaded the latest change takes that place, and lines of
+ * documents that were loaded already (left by an earlier run) are dropped, so an older change is never sent after a
+ * newer one.
+ * <p/>
+ * The transfer thread only runs when there is something to move: it waits until a change is added, a change is taken
+ * from the output queue or the queue shuts down. Overflow files are written and read without holding the lock.
+ */
 public class UpdaterQueue implements Runnable,UpdaterQueueMBean {
 
     private static final ESLogger LOG = Loggers.getLogger(UpdaterQueue.class);
 
-    private final BlockingQueue<DelayedImpl<Change>> inputQueue = new LinkedBlockingQueue<DelayedImpl<Change>>();
+    // wait before loading an overflow file again after it failed
+    private static final long LOAD_RETRY_MILLIS = 5 * 1000;
+
+    // all fields below are guarded by the lock, except the output queue which the updater takes from without it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final Deque<DelayedImpl<Change>> inputQueue = new ArrayDeque<DelayedImpl<Change>>();
     private final BlockingQueue<DelayedImpl<Change>> outputQueue = new DelayQueue<DelayedImpl<Change>>();
 
+    // the latest change of every document in the input and output queue, by key
+    private final Map<String, Change> pending = new HashMap<String, Change>();
+
+    // the latest change of every document in the overflow files, by key. A document is either pending or overflowed
+    private final Map<String, Change> overflowed = new HashMap<String, Change>();
+
+    // overflowed documents whose latest change is newer than their line in the overflow files
+    private final Set<String> newerThanDisk = new HashSet<String>();
+
     private final UpdaterOverflowFileManager overflowFileManager;
 
+    // whether there may be overflow files, so the directory is only listed when they can be loaded
+    private boolean overflow;
+
+    // time of the next attempt to load an overflow file after a failed one
+    private long loadRetryAt = 0;
+
     private int limit;
 
     private String index;
@@ -35,49 +74,86 @@ public class UpdaterQueue implements Runnable,UpdaterQueueMBean {
 
     @Override
     public void run() {
-        while (!shuttingDown) {
-            if (outputQueue.size() < limit) {
-                if (outputQueue.isEmpty() && !overflowFileManager.isEmpty()) {
-                    overflowFileManager.load(outputQueue);
-                } else {
-                    try {
-                        final DelayedImpl<Change> delayedChange = inputQueue.poll(1, TimeUnit.SECONDS); // Use poll() instead of take() to not miss the shutdown flag getting flipped to true.
-                        if (delayedChange != null) {
-                            outputQueue.add(delayedChange);
-                        }
-                    } catch (InterruptedException e) {
-                        LOG.warn("Getting change from input queue interrupted: " + e.getMessage());
+        // overflow files left by an earlier run
+        final List<DelayedImpl<Change>> onDisk = overflowFileManager.readAll();
+
+        lock.lock();
+        try {
+            for (DelayedImpl<Change> delayedChange : onDisk) {
+                overflowed(delayedChange.thing());
+            }
+            overflow = !overflowFileManager.isEmpty();
+            while (!shuttingDown) {
+                if (outputQueue.isEmpty() && overflow && System.currentTimeMillis() >= loadRetryAt) {
+                    loadOverflow();
+                } else if (outputQueue.size() < limit && !inputQueue.isEmpty()) {
+                    while (outputQueue.size() < limit && !inputQueue.isEmpty()) {
+                        outputQueue.add(inputQueue.poll());
                     }
-                }
-            } else {
-                if (inputQueue.size() >= limit) {
-                    overflowFileManager.save(inputQueue);
+                } else if (inputQueue.size() >= limit) {
+                    final List<DelayedImpl<Change>> changes = drain(inputQueue, limit);
+                    for (DelayedImpl<Change> delayedChange : changes) {
+                        overflowed.put(delayedChange.thing().key(), delayedChange.thing());
+                    }
+                    saveOverflow(changes);
+                } else if (outputQueue.isEmpty() && overflow) {
+                    changed.await(loadRetryAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } else {
+                    changed.await();
                 }
             }
+        } catch (InterruptedException e) {
+            LOG.warn("Updater queue for index {} interrupted: {}", index, e.getMessage());
+        } finally {
+            lock.unlock();
         }
         flushInMemoryQueuesToDisk();
     }
 
     public void add(final DelayedImpl<Change> change) {
-        inputQueue.add(change);
+        lock.lock();
+        try {
+            offer(change, inputQueue);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public DelayedImpl<Change> take() throws InterruptedException {
-        return outputQueue.take();
+        return taken(outputQueue.take());
+    }
+
+    public DelayedImpl<Change> poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final DelayedImpl<Change> delayedChange = outputQueue.poll(timeout, unit);
+        return delayedChange == null ? null : taken(delayedChange);
     }
 
     public boolean isEmpty() {
-        return inputQueue.isEmpty() && outputQueue.isEmpty() && overflowFileManager.isEmpty();
+        lock.lock();
+        try {
+            if (!inputQueue.isEmpty() || !outputQueue.isEmpty()) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return overflowFileManager.isEmpty();
     }
 
     @Override
     public int size() {
-        return inputQueue.size() + outputQueue.size() + overflowFileManager.size();
+        return getInputQueueSize() + outputQueue.size() + overflowFileManager.size();
     }
 
     @Override
     public int getInputQueueSize() {
-        return inputQueue.size();
+        lock.lock();
+        try {
+            return inputQueue.size();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -96,26 +172,177 @@ public class UpdaterQueue implements Runnable,UpdaterQueueMBean {
     }
 
     public void shutdown() {
-        shuttingDown = true; // Flag for thread to shut down
+        lock.lock();
+        try {
+            shuttingDown = true; // Flag for thread to shut down
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void clear() {
-        inputQueue.clear();
-        outputQueue.clear();
-        overflowFileManager.clear();
+        lock.lock();
+        try {
+            inputQueue.clear();
+            outputQueue.clear();
+            pending.clear();
+            overflowed.clear();
+            newerThanDisk.clear();
+            overflowFileManager.clear();
+            overflow = false;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void flushInMemoryQueuesToDisk() {
-        while (!outputQueue.isEmpty()) {
-            overflowFileManager.save(outputQueue);
+    /**
+     * Queue the change, unless a change for the same document is waiting already, in memory or on disk. Then the
+     * latest of both waits in its place. Call with the lock held.
+     */
+    private void offer(final DelayedImpl<Change> delayedChange, final Queue<DelayedImpl<Change>> queue) {
+        final Change change = delayedChange.thing();
+        final Change waiting = pending.get(change.key());
+        if (waiting != null) {
+            pending.put(change.key(), Change.latest(waiting, change));
+            return;
+        }
+        if (overflowed.containsKey(change.key())) {
+            overflowed(change);
+            return;
+        }
+        pending.put(change.key(), change);
+        queue.add(delayedChange);
+    }
+
+    /**
+     * Merge a change into the latest change on disk of its document. A document that is pending already keeps its
+     * place in memory. Call with the lock held.
+     */
+    private void overflowed(final Change change) {
+        final String key = change.key();
+        final Change waiting = pending.get(key);
+        if (waiting != null) {
+            pending.put(key, Change.latest(waiting, change));
+            return;
+        }
+
+        final Change onDisk = overflowed.get(key);
+        final Change latest = onDisk == null ? change : Change.latest(onDisk, change);
+        overflowed.put(key, latest);
+        if (onDisk != null && latest != onDisk) {
+            newerThanDisk.add(key);
+        }
+    }
+
+    /**
+     * A change left the output queue, so there is room for the next one.
+     */
+    private DelayedImpl<Change> taken(final DelayedImpl<Change> delayedChange) {
+        lock.lock();
+        try {
+            changed.signal();
+            return latest(delayedChange);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The latest change for the document of a change that leaves the queue. Call with the lock held.
+     */
+    private DelayedImpl<Change> latest(final DelayedImpl<Change> delayedChange) {
+        final Change latest = pending.remove(delayedChange.thing().key());
+        if (latest == null || latest == delayedChange.thing()) {
+            return delayedChange;
+        }
+        return DelayedImpl.immediate(latest);
+    }
+
+    /**
+     * Take at most 'max' changes out of the queue, whether their delay has passed or not. Call with the lock held.
+     */
+    private List<DelayedImpl<Change>> drain(final Collection<DelayedImpl<Change>> queue, final int max) {
+        final List<DelayedImpl<Change>> changes = new ArrayList<DelayedImpl<Change>>();
+        final Iterator<DelayedImpl<Change>> iterator = queue.iterator();
+        while (iterator.hasNext() && changes.size() < max) {
+            final DelayedImpl<Change> delayedChange = iterator.next();
+            iterator.remove();
+            changes.add(latest(delayedChange));
         }
+        return changes;
+    }
 
-        while (!inputQueue.isEmpty()) {
-            overflowFileManager.save(inputQueue);
+    /**
+     * Write changes to an overflow file. Call with the lock held, it is released while writing.
+     */
+    private void saveOverflow(final List<DelayedImpl<Change>> changes) {
+        overflow = true;
+        lock.unlock();
+        try {
+            overflowFileManager.save(changes);
+        } finally {
+            lock.lock();
         }
     }
 
+    /**
+     * Move the oldest overflow file into the output queue. Call with the lock held, it is released while reading.
+     * <p/>
+     * A file that can not be loaded stays in place and is tried again after {@link #LOAD_RETRY_MILLIS}, changes in
+     * memory are sent in the meantime.
+     */
+    private void loadOverflow() {
+        List<DelayedImpl<Change>> changes = null;
+        IOException failure = null;
+        lock.unlock();
+        try {
+            changes = overflowFileManager.load();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            lock.lock();
+        }
+
+        if (failure != null) {
+            LOG.error("Error loading overflow file for index {}, trying again in {} milliseconds: {}", index, LOAD_RETRY_MILLIS, failure.getMessage());
+            loadRetryAt = System.currentTimeMillis() + LOAD_RETRY_MILLIS;
+            return;
+        }
+
+        if (changes.isEmpty()) {
+            overflow = !overflowFileManager.isEmpty();
+        }
+        for (DelayedImpl<Change> delayedChange : changes) {
+            final String key = delayedChange.thing().key();
+            final Change latest = overflowed.remove(key);
+            if (latest == null) {
+                LOG.debug("Dropping {}, its document was loaded from an earlier line", delayedChange.thing());
+                continue;
+            }
+            newerThanDisk.remove(key);
+            offer(latest == delayedChange.thing() ? delayedChange : DelayedImpl.immediate(latest), outputQueue);
+        }
+    }
+
+    private void flushInMemoryQueuesToDisk() {
+        final List<DelayedImpl<Change>> changes;
+        lock.lock();
+        try {
+            changes = drain(outputQueue, Integer.MAX_VALUE);
+            changes.addAll(drain(inputQueue, Integer.MAX_VALUE));
+
+            // the next run takes the latest of all lines of a document
+            for (String key : newerThanDisk) {
+                changes.add(DelayedImpl.immediate(overflowed.get(key)));
+            }
+            newerThanDisk.clear();
+        } finally {
+            lock.unlock();
+        }
+        overflowFileManager.save(changes);
+    }
 
     private void registerMBean() {
         try {
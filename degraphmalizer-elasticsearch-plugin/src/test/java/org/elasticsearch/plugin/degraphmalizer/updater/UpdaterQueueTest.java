@@ -0,0 +1,152 @@
+package org.elasticsearch.plugin.degraphmalizer.updater;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@Test
+public class UpdaterQueueTest {
+    private File logPath;
+    private UpdaterQueue queue;
+
+    @BeforeMethod
+    public void createQueue() {
+        logPath = new File(System.getProperty("java.io.tmpdir"), "updater-queue-test-" + System.nanoTime());
+        logPath.mkdirs();
+        queue = new UpdaterQueue(logPath.getPath(), "test", 10);
+    }
+
+    @AfterMethod
+    public void removeQueue() {
+        queue.shutdown();
+        queue.clear();
+        logPath.delete();
+    }
+
+    public void latestChangeOfADocumentShouldBeKept() throws InterruptedException {
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 1)));
+        queue.add(DelayedImpl.immediate(Change.update("t", "2", 1)));
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 3)));
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 2)));
+
+        assertThat(queue.size(), is(2));
+        assertThat(drain(), contains(Change.update("t", "1", 3), Change.update("t", "2", 1)));
+    }
+
+    public void deleteShouldWinFromAnUpdateOfTheSameVersion() throws InterruptedException {
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 4)));
+        queue.add(DelayedImpl.immediate(Change.delete("t", "1", 4)));
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 4)));
+
+        assertThat(drain(), contains(Change.delete("t", "1", 4)));
+    }
+
+    public void overflowShouldBeMergedWithWaitingChanges() throws InterruptedException {
+        new UpdaterOverflowFileManager(logPath.getPath(), "test", 10).save(changes(
+                Change.update("t", "1", 5), Change.update("t", "3", 1)));
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 6)));
+
+        assertThat(drain(), containsInAnyOrder(Change.update("t", "1", 6), Change.update("t", "3", 1)));
+    }
+
+    public void backedUpQueueShouldOverflowToDisk() throws InterruptedException {
+        new Thread(queue).start();
+        for (int i = 0; i < 10; i++) {
+            queue.add(DelayedImpl.immediate(Change.update("t", Integer.toString(i), 1)));
+        }
+
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (queue.getOverflowSize() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(queue.getOutputQueueSize(), is(5));
+        assertThat(queue.getInputQueueSize(), is(0));
+        assertThat(queue.getOverflowSize(), is(5));
+        assertThat(queue.size(), is(10));
+    }
+
+    public void changeOfAnOverflowedDocumentShouldBeMergedOnDisk() throws InterruptedException {
+        new Thread(queue).start();
+        for (int i = 0; i < 10; i++) {
+            queue.add(DelayedImpl.immediate(Change.update("t", Integer.toString(i), 1)));
+        }
+        waitForOverflow();
+
+        queue.add(DelayedImpl.immediate(Change.update("t", "7", 2)));
+        queue.add(DelayedImpl.immediate(Change.delete("t", "8", 2)));
+
+        assertThat(queue.getInputQueueSize(), is(0));
+        assertThat(queue.getOverflowSize(), is(5));
+
+        final List<Change> changes = poll();
+        assertThat(changes, hasSize(10));
+        assertThat(changes, hasItems(Change.update("t", "7", 2), Change.delete("t", "8", 2)));
+        assertThat(changes, not(hasItem(Change.update("t", "7", 1))));
+    }
+
+    public void olderLinesOfALoadedDocumentShouldBeDropped() throws InterruptedException {
+        final UpdaterOverflowFileManager files = new UpdaterOverflowFileManager(logPath.getPath(), "test", 10);
+        files.save(changes(Change.update("t", "1", 1), Change.update("t", "2", 1)));
+        files.save(changes(Change.update("t", "1", 3)));
+        files.save(changes(Change.update("t", "1", 2)));
+
+        assertThat(drain(), containsInAnyOrder(Change.update("t", "1", 3), Change.update("t", "2", 1)));
+    }
+
+    public void unreadableOverflowFileShouldNotKeepTheQueueBusy() throws InterruptedException {
+        // a directory looks like an overflow file, but can not be read
+        new File(logPath, "test-overflow-1").mkdir();
+
+        final Thread transfer = new Thread(queue);
+        transfer.start();
+        Thread.sleep(500);
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(transfer.getId())), lessThan(250L));
+
+        // changes in memory are still sent
+        queue.add(DelayedImpl.immediate(Change.update("t", "1", 1)));
+        assertThat(poll(), contains(Change.update("t", "1", 1)));
+    }
+
+    private void waitForOverflow() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (queue.getOverflowSize() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Change> drain() throws InterruptedException {
+        new Thread(queue).start();
+        return poll();
+    }
+
+    private List<Change> poll() throws InterruptedException {
+        final List<Change> changes = new ArrayList<Change>();
+        DelayedImpl<Change> delayedChange = queue.poll(2, TimeUnit.SECONDS);
+        while (delayedChange != null) {
+            changes.add(delayedChange.thing());
+            delayedChange = queue.poll(200, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    private static List<DelayedImpl<Change>> changes(Change... changes) {
+        final List<DelayedImpl<Change>> delayedChanges = new ArrayList<DelayedImpl<Change>>();
+        for (Change change : changes) {
+            delayedChanges.add(DelayedImpl.immediate(change));
+        }
+        return delayedChanges;
+    }
+}
@@ -0,0 +1,246 @@
+package org.elasticsearch.plugin.degraphmalizer.updater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Sends batches to a stub of the batch endpoint of the Degraphmalizer.
+ */
+@Test
+public class UpdaterTest {
+    private File logPath;
+    private HttpServer server;
+    private Updater updater;
+
+    // bodies of the received batches
+    private final BlockingQueue<String> batches = new LinkedBlockingQueue<String>();
+
+    // method and path of the received single document requests
+    private final BlockingQueue<String> documents = new LinkedBlockingQueue<String>();
+
+    // answers to the next batches, a batch without a scripted answer succeeds
+    private final Queue<Answer> answers = new ConcurrentLinkedQueue<Answer>();
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        batches.clear();
+        documents.clear();
+        answers.clear();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_batch", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String batch = read(exchange.getRequestBody());
+                batches.add(batch);
+
+                final Answer answer = answers.poll();
+                final String body = answer == null ? ok(batch) : answer.body;
+                if (answer != null && answer.retryAfter != null) {
+                    exchange.getResponseHeaders().add("Retry-After", answer.retryAfter);
+                }
+
+                final byte[] bytes = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(answer == null ? 200 : answer.status, bytes.length == 0 ? -1 : bytes.length);
+                exchange.getResponseBody().write(bytes);
+                exchange.close();
+            }
+        });
+        server.createContext("/test", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                documents.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        logPath = new File(System.getProperty("java.io.tmpdir"), "updater-test-" + System.nanoTime());
+        logPath.mkdirs();
+        updater = new Updater("test", "http", "localhost", server.getAddress().getPort(), 100, logPath.getPath(), 100, 3, 10, 50);
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        updater.shutdown();
+        updater.flushQueue();
+        server.stop(0);
+        for (File file : logPath.listFiles()) {
+            file.delete();
+        }
+        logPath.delete();
+    }
+
+    public void okResultsShouldSettleTheBatch() {
+        final Change one = Change.update("t", "1", 1);
+        final Change two = Change.delete("t", "2", 3);
+
+        updater.perform(Arrays.asList(one, two));
+
+        assertThat(batches.size(), is(1));
+        assertThat(updater.getQueueSize(), is(0));
+        assertThat(one.retries(), is(0));
+        assertThat(two.retries(), is(0));
+    }
+
+    public void failedChangeShouldBeRetried() {
+        final Change one = Change.update("t", "1", 1);
+        final Change two = Change.update("t", "2", 1);
+        answers.add(new Answer(200, null, result(one, "ok") + error(two, "DegraphmalizerException")));
+
+        updater.perform(Arrays.asList(one, two));
+
+        assertThat(one.retries(), is(0));
+        assertThat(two.retries(), is(1));
+        assertThat(updater.getQueueSize(), is(1));
+    }
+
+    public void changeWithoutResultShouldBeRetried() {
+        final Change one = Change.update("t", "1", 1);
+        final Change two = Change.update("t", "2", 1);
+        answers.add(new Answer(200, null, result(one, "ok")));
+
+        updater.perform(Arrays.asList(one, two));
+
+        assertThat(one.retries(), is(0));
+        assertThat(two.retries(), is(1));
+        assertThat(updater.getQueueSize(), is(1));
+    }
+
+    public void resultOfTheLatestChangeShouldSettleEarlierChanges() {
+        final Change older = Change.update("t", "1", 1);
+        final Change latest = Change.update("t", "1", 2);
+        answers.add(new Answer(200, null, result(latest, "ok")));
+
+        updater.perform(Arrays.asList(older, latest));
+
+        assertThat(older.retries(), is(0));
+        assertThat(latest.retries(), is(0));
+        assertThat(updater.getQueueSize(), is(0));
+    }
+
+    public void errorOfTheLatestChangeShouldOnlyRetryThatChange() {
+        final Change older = Change.update("t", "1", 1);
+        final Change latest = Change.update("t", "1", 2);
+        answers.add(new Answer(200, null, error(latest, "DegraphmalizerException")));
+
+        updater.perform(Arrays.asList(older, latest));
+
+        assertThat(older.retries(), is(0));
+        assertThat(latest.retries(), is(1));
+        assertThat(updater.getQueueSize(), is(1));
+    }
+
+    public void overloadedChangeShouldBeSentAgainWithoutCountingARetry() {
+        final Change one = Change.update("t", "1", 1);
+        answers.add(new Answer(200, null, error(one, "Overloaded")));
+
+        updater.perform(Arrays.asList(one));
+
+        assertThat(one.retries(), is(0));
+        assertThat(updater.getQueueSize(), is(1));
+    }
+
+    public void rejectedBatchShouldBeSentAgainAfterRetryAfter() throws InterruptedException {
+        final Change one = Change.update("t", "1", 1);
+        final Change two = Change.update("t", "2", 1);
+        answers.add(new Answer(429, "1", ""));
+
+        updater.startSending();
+        final Thread sender = new Thread(updater);
+        sender.setDaemon(true);
+        sender.start();
+
+        updater.add(one);
+        updater.add(two);
+
+        final String first = batches.poll(5, TimeUnit.SECONDS);
+        final long rejected = System.nanoTime();
+        assertThat(first, notNullValue());
+
+        final String second = batches.poll(5, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - rejected), greaterThanOrEqualTo(900L));
+        assertThat(second, containsString("\"id\":\"1\""));
+        assertThat(second, containsString("\"id\":\"2\""));
+
+        assertThat(one.retries(), is(0));
+        assertThat(two.retries(), is(0));
+    }
+
+    public void changesShouldBeSentOneAtATimeWithoutTheBatchEndpoint() {
+        final Change one = Change.update("t", "1", 1);
+        final Change two = Change.delete("t", "2", 3);
+        answers.add(new Answer(404, null, ""));
+
+        updater.perform(Arrays.asList(one, two));
+        assertThat(documents, contains("GET /test/t/1/1", "DELETE /test/t/2/3"));
+
+        // later batches don't try the batch endpoint again
+        updater.perform(Arrays.asList(Change.update("t", "3", 1)));
+        assertThat(batches.size(), is(1));
+        assertThat(documents, hasItem("GET /test/t/3/1"));
+
+        assertThat(updater.getQueueSize(), is(0));
+        assertThat(one.retries(), is(0));
+        assertThat(two.retries(), is(0));
+    }
+
+    private static String ok(String batch) {
+        final StringBuilder results = new StringBuilder();
+        for (String line : batch.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                results.append(line, 0, line.lastIndexOf('}')).append(",\"status\":\"ok\"}\n");
+            }
+        }
+        return results.toString();
+    }
+
+    private static String result(Change change, String status) {
+        return "{\"action\":\"" + change.action().name().toLowerCase() + "\",\"index\":\"test\",\"type\":\"" + change.type()
+                + "\",\"id\":\"" + change.id() + "\",\"version\":" + change.version() + ",\"status\":\"" + status + "\"}\n";
+    }
+
+    private static String error(Change change, String exceptionClass) {
+        final String ok = result(change, "error");
+        return ok.substring(0, ok.lastIndexOf('}')) + ",\"severity\":\"warn\",\"message\":\"failed\",\"class\":\"" + exceptionClass + "\"}\n";
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final Reader reader = new InputStreamReader(in, "UTF-8");
+        final StringBuilder s = new StringBuilder();
+        final char[] buffer = new char[1024];
+        for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+            s.append(buffer, 0, n);
+        }
+        return s.toString();
+    }
+
+    private static final class Answer {
+        final int status;
+        final String retryAfter;
+        final String body;
+
+        Answer(int status, String retryAfter, String body) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+            this.body = body;
+        }
+    }
+}